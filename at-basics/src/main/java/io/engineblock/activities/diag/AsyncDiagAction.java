@@ -24,7 +24,7 @@ import io.engineblock.activityimpl.ActivityDef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
 
 public class AsyncDiagAction implements AsyncAction, ActivityDefObserver {
 
@@ -47,7 +47,7 @@ public class AsyncDiagAction implements AsyncAction, ActivityDefObserver {
     private long maxAsync =10L;
     private long pendingOps=0L;
 
-    private LinkedList<OpContext> results = new LinkedList<>();
+    private ArrayDeque<OpContext> results = new ArrayDeque<>();
 
     public AsyncDiagAction(int slot, ActivityDef activityDef, DiagActivity diagActivity) {
         this.activityDef = activityDef;
@@ -119,7 +119,7 @@ public class AsyncDiagAction implements AsyncAction, ActivityDefObserver {
         this.maxAsync = diagActivity.getMaxAsync();
     }
 
-    private int runCycle(long value) {
+    protected int runCycle(long value) {
 
         if (logcycle) {
             logger.trace("cycle " + value);
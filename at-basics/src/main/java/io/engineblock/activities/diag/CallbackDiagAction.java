@@ -0,0 +1,38 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activities.diag;
+
+import io.engineblock.activityapi.core.CallbackAsyncAction;
+import io.engineblock.activityapi.core.OpContext;
+import io.engineblock.activityimpl.ActivityDef;
+
+/**
+ * A diag action for the event loop motor. Each op is completed as soon as it is submitted,
+ * by setting its result from the submitting thread. The number of ops in flight is limited
+ * by the motor, so maxasync applies there rather than here.
+ */
+public class CallbackDiagAction extends AsyncDiagAction implements CallbackAsyncAction {
+
+    public CallbackDiagAction(int slot, ActivityDef activityDef, DiagActivity diagActivity) {
+        super(slot, activityDef, diagActivity);
+    }
+
+    @Override
+    public void submit(OpContext opContext) {
+        opContext.setResult(runCycle(opContext.getCycle()));
+    }
+}
@@ -31,7 +31,10 @@ public class DiagActionDispenser implements ActionDispenser {
 
     @Override
     public Action getAction(int slot) {
-        if (activity.isAsync()) {
+        if (activity.isAsync() && activity.isEventLoop()) {
+            logger.trace("creating new CallbackDiagAction instance for slot=" + slot + ", activity=" + activity);
+            return new CallbackDiagAction(slot, activity.getActivityDef(), activity);
+        } else if (activity.isAsync()) {
             logger.trace("creating new DiagAction instance for slot=" + slot + ", activity=" + activity);
             return new AsyncDiagAction(slot, activity.getActivityDef(), activity);
         } else {
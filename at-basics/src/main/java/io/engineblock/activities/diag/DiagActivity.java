@@ -30,6 +30,7 @@ public class DiagActivity extends SimpleActivity implements Activity, ActivityDe
     protected Histogram delayHistogram;
     private RateLimiter diagRateLimiter;
     private boolean async=false;
+    private boolean eventLoop=false;
     private long maxAsync;
     public  Counter pendingOpsCounter;
 
@@ -70,6 +71,9 @@ public class DiagActivity extends SimpleActivity implements Activity, ActivityDe
 
         this.maxAsync = activityDef.getParams()
                 .getOptionalLong("maxasync").orElse(1L);
+
+        this.eventLoop = activityDef.getParams()
+                .getOptionalBoolean("eventloop").orElse(false);
     }
 
 
@@ -77,6 +81,10 @@ public class DiagActivity extends SimpleActivity implements Activity, ActivityDe
         return this.async;
     }
 
+    public boolean isEventLoop() {
+        return this.eventLoop;
+    }
+
     public long getMaxAsync() {
         return this.maxAsync;
     }
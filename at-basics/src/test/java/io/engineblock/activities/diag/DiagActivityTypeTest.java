@@ -2,10 +2,13 @@ package io.engineblock.activities.diag;
 
 import io.engineblock.activityapi.core.Action;
 import io.engineblock.activityapi.core.ActionDispenser;
+import io.engineblock.activityapi.core.CallbackAsyncAction;
 import io.engineblock.activityapi.core.SyncAction;
 import io.engineblock.activityimpl.ActivityDef;
 import org.testng.annotations.Test;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 /*
 *   Copyright 2016 jshook
 *   Licensed under the Apache License, Version 2.0 (the "License");
@@ -35,4 +38,15 @@ public class DiagActivityTypeTest {
         ((SyncAction)action).runCycle(1L);
     }
 
+    @Test
+    public void testEventLoopDiagAction() {
+        DiagActivityType da = new DiagActivityType();
+        ActivityDef ad = ActivityDef.parseActivityDef("type=diag;async=true;eventloop=true;");
+        DiagActivity a = da.getActivity(ad);
+        a.initActivity();
+
+        Action action = da.getActionDispenser(a).getAction(1);
+        assertThat(action).isInstanceOf(CallbackAsyncAction.class);
+    }
+
 }
\ No newline at end of file
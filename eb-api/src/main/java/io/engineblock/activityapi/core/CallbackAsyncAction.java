@@ -0,0 +1,45 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityapi.core;
+
+/**
+ * <p>A CallbackAsyncAction submits operations without blocking, and reports each
+ * completion through {@link OpContext#setResult(int)}, from whatever thread observes
+ * it. Unlike {@link AsyncAction}, there is no dequeue call, so the motor is never
+ * blocked waiting for the oldest operation while newer ones have already completed.
+ * </p>
+ *
+ * <p>Actions of this type are run by an event loop motor, which bounds the number of
+ * operations in flight in each thread with the <em>maxasync</em> activity parameter.
+ * </p>
+ */
+public interface CallbackAsyncAction extends Action {
+
+    /**
+     * <p>Start the operation for the cycle of the given op context, without blocking
+     * for its completion. When the operation is complete, {@link OpContext#setResult(int)}
+     * must be called exactly once. It may be called from any thread, including this one
+     * before this method returns.</p>
+     *
+     * <p>The op context is recycled by the motor once its result is set, so the action
+     * must not use it afterwards.</p>
+     *
+     * @param opContext The carrier for the cycle and its result
+     */
+    void submit(OpContext opContext);
+}
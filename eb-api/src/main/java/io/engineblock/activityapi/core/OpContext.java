@@ -19,12 +19,18 @@ package io.engineblock.activityapi.core;
 
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResult;
 
+/**
+ * A carrier for the cycle, timing, and result of a single operation.
+ * Instances may be recycled by the owning motor, as described in
+ * {@link AsyncAction#dequeue()}, so implementations should not retain
+ * a reference to an OpContext after it has been returned from dequeue.
+ */
 public class OpContext implements CycleResult {
 
-    private final long cycle;
-    private final Sink sink;
+    private long cycle;
+    private Sink sink;
     private int result;
-    private final long delayNanos;
+    private long delayNanos;
     private long startedAtNanos;
     private long endedAtNanos;
 
@@ -36,10 +42,26 @@ public class OpContext implements CycleResult {
 
     }
     public OpContext(Sink sink, long cycle, long delayNanos) {
+        reset(sink, cycle, delayNanos);
+    }
+
+    /**
+     * Re-initialize this carrier for another cycle, so that it can be
+     * reused instead of allocating a new one.
+     *
+     * @param sink The sink to notify when the result is set
+     * @param cycle The cycle number
+     * @param delayNanos The scheduling delay to include in the total latency
+     * @return this OpContext, for method chaining
+     */
+    public OpContext reset(Sink sink, long cycle, long delayNanos) {
         this.sink = sink;
         this.cycle = cycle;
         this.delayNanos = delayNanos;
+        this.result = 0;
+        this.endedAtNanos = 0L;
         this.startedAtNanos = System.nanoTime();
+        return this;
     }
 
     public void setResult(int result) {
@@ -69,6 +91,10 @@ public class OpContext implements CycleResult {
         return cycle;
     }
 
+    public Sink getSink() {
+        return sink;
+    }
+
 
     public static interface Sink {
         void handle(OpContext opContext);
@@ -77,6 +77,21 @@ public abstract class Buffer<T> implements Comparable<Buffer<T>> {
         return this;
     }
 
+    /**
+     * Reset the position and limit so that the buffer may be filled again.
+     * Element references are left in place, to be overwritten by subsequent puts.
+     * @return this Buffer, for method chaining
+     */
+    public Buffer<T> clear() {
+        this.limit=data.length;
+        this.position=0;
+        return this;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
     @Override
     public int compareTo(Buffer<T> other) {
         int lengthDiff = Integer.compare(data.length, other.data.length);
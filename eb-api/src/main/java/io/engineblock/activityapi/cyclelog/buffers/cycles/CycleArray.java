@@ -79,6 +79,11 @@ public class CycleArray implements Input {
             return (offset>=values.length);
         }
 
+        @Override
+        public int getRemainingCycles() {
+            return Math.max(0, values.length - offset);
+        }
+
 
     }
 }
@@ -49,4 +49,13 @@ public interface CycleSegment {
     }
 
     long peekNextCycle();
+
+    /**
+     * Segments which do not track how many cycles are left give a count which is no less
+     * than the real one, so callers must still check {@link #isExhausted()}.
+     * @return the number of cycles which {@link #nextCycle()} will still provide, or more
+     */
+    default int getRemainingCycles() {
+        return isExhausted() ? 0 : Integer.MAX_VALUE;
+    }
 }
@@ -32,11 +32,17 @@ public class CycleResultArray implements CycleResultsSegment, CanSortCycles {
         this.cycleResults = cycleResults;
     }
 
+    /**
+     * Create a cycle result array with a copy of the results in the segment,
+     * so that it remains valid after the source segment is reused.
+     * @param segment The source segment
+     */
     public CycleResultArray(CycleResultsSegment segment) {
         cycleResults = new CycleResult[(int) segment.getCount()];
         Iterator<CycleResult> iterator = segment.iterator();
         for (int i = 0; i < cycleResults.length; i++) {
-            cycleResults[i]=iterator.next();
+            CycleResult cycleResult = iterator.next();
+            cycleResults[i]=new MutableCycleResult(cycleResult.getCycle(), cycleResult.getResult(), 0L);
         }
     }
 
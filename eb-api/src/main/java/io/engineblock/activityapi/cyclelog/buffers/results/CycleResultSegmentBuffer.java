@@ -29,6 +29,7 @@ public class CycleResultSegmentBuffer {
     private ByteBuffer buf;
     private final static int BYTES = Long.BYTES + Byte.BYTES;
     private final Sink sink;
+    private CycleResultsSegmentReadable reader;
 
     public CycleResultSegmentBuffer(Sink sink, int resultCount) {
         this.sink = sink;
@@ -65,6 +66,32 @@ public class CycleResultSegmentBuffer {
         return readable;
     }
 
+    /**
+     * Flip the buffer for reading without giving up ownership of it. Unlike {@link #toReader()},
+     * the returned segment is a view of this buffer which is only valid until {@link #clear()}
+     * is called. This allows a single owner to reuse one buffer and reader for every segment.
+     *
+     * @return a reusable view of the buffered results
+     */
+    public CycleResultsSegment flipReader() {
+        buf.flip();
+        if (reader == null) {
+            reader = new CycleResultsSegmentReadable(buf);
+        }
+        return reader;
+    }
+
+    /**
+     * Make this buffer ready to be filled again, invalidating any view returned by {@link #flipReader()}.
+     */
+    public void clear() {
+        buf.clear();
+    }
+
+    public int getResultCapacity() {
+        return buf.capacity() / BYTES;
+    }
+
     public boolean hasRemaining() {
         return buf.hasRemaining();
     }
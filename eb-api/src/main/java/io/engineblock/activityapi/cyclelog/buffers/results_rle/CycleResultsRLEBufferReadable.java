@@ -53,6 +53,27 @@ public class CycleResultsRLEBufferReadable implements CycleResultSegmentsReadabl
         this.buf = ByteBuffer.wrap(bbuf);
     }
 
+    /**
+     * Decode a sequence of {@link CycleResultsRLECompactCodec} blocks into a readable.
+     * @param blocks The encoded blocks, from the position to the limit
+     * @return a readable of the decoded spans
+     */
+    public static CycleResultsRLEBufferReadable decode(ByteBuffer blocks) {
+        ByteBuffer src = blocks.duplicate();
+        int spanCount = 0;
+        while (src.hasRemaining()) {
+            spanCount += CycleResultsRLECompactCodec.getSpanCount(src);
+            src.position(src.position() + CycleResultsRLECompactCodec.getBlockBytes(src));
+        }
+        src = blocks.duplicate();
+        ByteBuffer spans = ByteBuffer.allocate(spanCount * BYTES);
+        while (src.hasRemaining()) {
+            CycleResultsRLECompactCodec.decode(src, spans);
+        }
+        spans.flip();
+        return new CycleResultsRLEBufferReadable(spans);
+    }
+
     public Iterator<CycleResultsSegment> iterator(Predicate<ResultReadable> filter) {
         return new ResultSpanIterator(buf,filter);
     }
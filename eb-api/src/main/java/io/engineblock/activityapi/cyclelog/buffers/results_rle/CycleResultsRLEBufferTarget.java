@@ -127,6 +127,33 @@ public class CycleResultsRLEBufferTarget implements Output,CanFilterResultValue
         return true;
     }
 
+    /**
+     * Record a span of cycles which all have the same result. A span which continues the current
+     * run with the same result extends it, so adjacent spans are compacted into one RLE segment.
+     *
+     * @param min The first cycle of the span
+     * @param nextMin The cycle after the last cycle of the span
+     * @param result the result ordinal
+     * @return true, as the buffer is resized when needed
+     */
+    public boolean onCycleSpan(long min, long nextMin, int result) {
+        ResultReadableWrapper resultReadableWrapper = new ResultReadableWrapper(result);
+        if ((filter!=null && !filter.test(resultReadableWrapper)) || nextMin <= min) {
+            return true;
+        }
+        if (min != lastCycle + 1 || lastResult != result) {
+            if (lastCycle != Long.MIN_VALUE) {
+                checkpoint(lastCycle + 1 - runlength, lastCycle + 1, lastResult);
+            }
+        }
+
+        lastCycle = nextMin - 1;
+        lastResult = result;
+        runlength += nextMin - min;
+        flushed = false;
+        return true;
+    }
+
     private void checkpoint(long istart, long iend, long lastResult) {
         if (buf.remaining()==0) {
             buf=resize(buf);
@@ -170,6 +197,13 @@ public class CycleResultsRLEBufferTarget implements Output,CanFilterResultValue
         return buf.capacity() / BYTES;
     }
 
+    /**
+     * @return the number of completed RLE segments in the buffer, not including a run in progress
+     */
+    public int getRecordCount() {
+        return buf.position() / BYTES;
+    }
+
     /**
      * Flushes any partial data that was submitted (an incomplete run of results,
      * for example), to the internal ByteBuffer, and marks flushed status.
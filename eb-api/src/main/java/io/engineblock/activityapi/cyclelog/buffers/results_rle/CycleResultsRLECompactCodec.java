@@ -0,0 +1,199 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityapi.cyclelog.buffers.results_rle;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>Encodes blocks of RLE spans more compactly than the (long,long,byte) format of
+ * {@link CycleResultsRLEBufferTarget}. Each span is encoded as the distance from the end of
+ * the previous span to its first cycle, as a zigzag varint, the length of the span as a
+ * varint, and the result byte. Since spans are usually adjacent and short, most spans take
+ * 3 bytes rather than 17. With {@link #DEFLATE}, the varint data is also deflated.</p>
+ *
+ * <p>Each block starts with the encoded length int, the span count int, and the encoding
+ * byte, so that blocks can be read in sequence without an index. The distances in a block
+ * start from cycle 0, so each block can be decoded by itself.</p>
+ */
+public class CycleResultsRLECompactCodec {
+
+    public final static int FIXED = 0;
+    public final static int VARINT = 1;
+    public final static int DEFLATE = 2;
+
+    public final static int BLOCK_HEADER_BYTES = Integer.BYTES + Integer.BYTES + Byte.BYTES;
+    private final static int MAX_SPAN_BYTES = 10 + 10 + 1;
+
+    /**
+     * @param encoding The name of an encoding, fixed, varint or deflate
+     * @return the encoding constant
+     */
+    public static int forName(String encoding) {
+        switch (encoding) {
+            case "fixed":
+                return FIXED;
+            case "varint":
+                return VARINT;
+            case "deflate":
+                return DEFLATE;
+            default:
+                throw new RuntimeException("Unknown cyclelog encoding '" + encoding + "', use fixed, varint or deflate");
+        }
+    }
+
+    /**
+     * @param spanCount The number of spans to encode
+     * @return a block size which is large enough for any encoding of the spans
+     */
+    public static int maxBlockBytes(int spanCount) {
+        int varintBytes = spanCount * MAX_SPAN_BYTES;
+        return BLOCK_HEADER_BYTES + varintBytes + (varintBytes >> 8) + 64;
+    }
+
+    /**
+     * Encode the spans from the position to the limit of a buffer as one block.
+     * @param spans The spans in (long,long,byte) format
+     * @param encoding {@link #VARINT} or {@link #DEFLATE}
+     * @param target The buffer to write the block to, at its position, which must have
+     *               {@link #maxBlockBytes(int)} remaining
+     */
+    public static void encode(ByteBuffer spans, int encoding, ByteBuffer target) {
+        int spanCount = spans.remaining() / CycleResultsRLEBufferReadable.BYTES;
+        int blockStart = target.position();
+        target.position(blockStart + BLOCK_HEADER_BYTES);
+
+        byte[] varints = new byte[spanCount * MAX_SPAN_BYTES];
+        int length = 0;
+        long lastNextMin = 0L;
+        for (int span = 0; span < spanCount; span++) {
+            int offset = spans.position() + span * CycleResultsRLEBufferReadable.BYTES;
+            long min = spans.getLong(offset);
+            long nextMin = spans.getLong(offset + Long.BYTES);
+            long delta = min - lastNextMin;
+            length = putVarLong(varints, length, (delta << 1) ^ (delta >> 63));
+            length = putVarLong(varints, length, nextMin - min);
+            varints[length++] = spans.get(offset + Long.BYTES + Long.BYTES);
+            lastNextMin = nextMin;
+        }
+
+        if (encoding == DEFLATE) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            deflater.setInput(varints, 0, length);
+            deflater.finish();
+            byte[] deflated = new byte[target.remaining()];
+            length = deflater.deflate(deflated);
+            boolean finished = deflater.finished();
+            deflater.end();
+            if (!finished) {
+                throw new RuntimeException("Deflated block of " + spanCount + " spans exceeded " + deflated.length + " bytes");
+            }
+            target.put(deflated, 0, length);
+        } else if (encoding == VARINT) {
+            target.put(varints, 0, length);
+        } else {
+            throw new RuntimeException("Unable to encode a block with encoding " + encoding);
+        }
+
+        target.putInt(blockStart, length);
+        target.putInt(blockStart + Integer.BYTES, spanCount);
+        target.put(blockStart + Integer.BYTES + Integer.BYTES, (byte) encoding);
+    }
+
+    /**
+     * Decode the block at the position of a buffer, and advance past it.
+     * @param block The buffer holding the block
+     * @param target The buffer to write the spans to, in (long,long,byte) format, at its position
+     * @return the number of spans in the block
+     */
+    public static int decode(ByteBuffer block, ByteBuffer target) {
+        int length = block.getInt();
+        int spanCount = block.getInt();
+        int encoding = block.get();
+        byte[] varints;
+        if (encoding == DEFLATE) {
+            byte[] deflated = new byte[length];
+            block.get(deflated);
+            varints = new byte[spanCount * MAX_SPAN_BYTES];
+            Inflater inflater = new Inflater();
+            inflater.setInput(deflated);
+            try {
+                inflater.inflate(varints);
+            } catch (DataFormatException e) {
+                throw new RuntimeException(e);
+            } finally {
+                inflater.end();
+            }
+        } else if (encoding == VARINT) {
+            varints = new byte[length];
+            block.get(varints);
+        } else {
+            throw new RuntimeException("Unable to decode a block with encoding " + encoding);
+        }
+
+        int[] position = new int[1];
+        long lastNextMin = 0L;
+        for (int span = 0; span < spanCount; span++) {
+            long zigzag = getVarLong(varints, position);
+            long min = lastNextMin + ((zigzag >>> 1) ^ -(zigzag & 1));
+            long nextMin = min + getVarLong(varints, position);
+            target.putLong(min).putLong(nextMin).put(varints[position[0]++]);
+            lastNextMin = nextMin;
+        }
+        return spanCount;
+    }
+
+    /**
+     * @param block The buffer holding the block, at the position of the block
+     * @return the number of spans in the block
+     */
+    public static int getSpanCount(ByteBuffer block) {
+        return block.getInt(block.position() + Integer.BYTES);
+    }
+
+    /**
+     * @param block The buffer holding the block, at the position of the block
+     * @return the size of the block, including its header
+     */
+    public static int getBlockBytes(ByteBuffer block) {
+        return BLOCK_HEADER_BYTES + block.getInt(block.position());
+    }
+
+    private static int putVarLong(byte[] bytes, int position, long value) {
+        while ((value & ~0x7FL) != 0L) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    private static long getVarLong(byte[] bytes, int[] position) {
+        long value = 0L;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -44,7 +44,7 @@ public class CycleSpanResults implements CycleResultsSegment, ResultReadable {
 
     @Override
     public long getCount() {
-        return (int) nextMin-min;
+        return nextMin-min;
     }
 
     @Override
@@ -0,0 +1,605 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityapi.cyclelog.inputs.cyclelog;
+
+import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLEBufferReadable;
+import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLECompactCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntPredicate;
+import java.util.zip.CRC32;
+
+/**
+ * <p>A read-only view of a cyclelog file, in any format:</p>
+ * <ul>
+ *     <li><em>version 1</em> - a bare sequence of (long,long,byte) RLE spans</li>
+ *     <li><em>version 2</em> - a header, the same sequence of spans, and a footer which
+ *     indexes the extents that the spans were written in</li>
+ *     <li><em>version 3</em> - the same header and footer as version 2, with each extent
+ *     written as a block of {@link CycleResultsRLECompactCodec} spans</li>
+ * </ul>
+ *
+ * <p>The version 2 header is the {@link #MAGIC} long, the version int and the span size int.
+ * The footer has an entry for each extent, holding the first cycle of the extent, the number
+ * of the first span in the extent, the number of spans, and a CRC32 of the span data. It ends
+ * with a trailer of the total span count, the extent count, flags, and the {@link #MAGIC} long
+ * again. A version 2 file without a trailer was not closed, and its spans are read up to the
+ * last whole span, without CRC checks. Since the writer grows the file in preallocated chunks,
+ * trailing empty spans of an unclosed file are not counted.</p>
+ *
+ * <p>The CRC of a version 3 extent covers its encoded block. When a version 3 file is opened,
+ * only the block headers are read, to find the first span of each block. A block is decoded
+ * when one of its spans is read, into a buffer which is kept for the reading thread until it
+ * reads a span of another block. So a thread holds at most one decoded extent of each file,
+ * and reading the spans in order decodes each block once.</p>
+ *
+ * <p>Spans are numbered from 0 in file order, in all formats. When the writer saw that all spans
+ * were in cycle order, the {@link #ORDERED} flag is set, and {@link #findSpan(long)} uses the
+ * extent index and a binary search to find a cycle. Otherwise it scans the spans.</p>
+ */
+public class CycleLogFile implements AutoCloseable {
+    private final static Logger logger = LoggerFactory.getLogger(CycleLogFile.class);
+
+    /**
+     * "CYCLELOG" in ASCII
+     */
+    public final static long MAGIC = 0x4359434C454C4F47L;
+    public final static int VERSION = 2;
+    public final static int VERSION_COMPACT = 3;
+    public final static int SPAN_BYTES = CycleResultsRLEBufferReadable.BYTES;
+    public final static int HEADER_BYTES = Long.BYTES + Integer.BYTES + Integer.BYTES;
+    public final static int EXTENT_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+    public final static int TRAILER_BYTES = Long.BYTES + Integer.BYTES + Integer.BYTES + Long.BYTES;
+    public final static int ORDERED = 1;
+
+    private final File file;
+    private RandomAccessFile raf;
+    private ByteBuffer spans; // all spans, for versions 1 and 2
+    private ByteBuffer blocks; // the encoded blocks, for version 3
+    private int[] blockOffsets = new int[0];
+    private long[] blockFirstSpans = new long[]{0L}; // with the span count after the last block
+    private final ThreadLocal<DecodedBlock> decodedBlock = new ThreadLocal<>();
+    private int version = 1;
+    private int spanCount;
+    private boolean ordered = false;
+    private long[] extentFirstCycles = new long[0];
+    private long[] extentFirstSpans = new long[0];
+    private int[] extentSpanCounts = new int[0];
+    private int[] extentCrcs = new int[0];
+
+    public CycleLogFile(File file) {
+        this.file = file;
+        MappedByteBuffer mbb;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            mbb = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        int length = mbb.limit();
+        if (length < HEADER_BYTES || mbb.getLong(0) != MAGIC) {
+            this.spanCount = writtenSpans(mbb, 0, length / SPAN_BYTES);
+            this.spans = slice(mbb, 0, spanCount * SPAN_BYTES);
+            return;
+        }
+
+        this.version = mbb.getInt(Long.BYTES);
+        if (version != VERSION && version != VERSION_COMPACT) {
+            throw new RuntimeException("Unsupported cyclelog version " + version + " in " + file);
+        }
+        int spanBytes = mbb.getInt(Long.BYTES + Integer.BYTES);
+        if (spanBytes != SPAN_BYTES) {
+            throw new RuntimeException("Unsupported cyclelog span size " + spanBytes + " in " + file);
+        }
+        if (version == VERSION_COMPACT) {
+            readBlocks(mbb, length);
+            return;
+        }
+
+        if (length < HEADER_BYTES + TRAILER_BYTES || mbb.getLong(length - Long.BYTES) != MAGIC) {
+            this.spanCount = writtenSpans(mbb, HEADER_BYTES, (length - HEADER_BYTES) / SPAN_BYTES);
+            this.spans = slice(mbb, HEADER_BYTES, spanCount * SPAN_BYTES);
+            logger.warn("cyclelog " + file + " has no index, reading " + spanCount + " spans without CRC checks");
+            return;
+        }
+
+        int trailer = length - TRAILER_BYTES;
+        long totalSpans = mbb.getLong(trailer);
+        int extentCount = mbb.getInt(trailer + Long.BYTES);
+        int flags = mbb.getInt(trailer + Long.BYTES + Integer.BYTES);
+        long footer = (long) trailer - (long) extentCount * EXTENT_BYTES;
+        if (extentCount < 0 || totalSpans < 0 || footer != HEADER_BYTES + totalSpans * SPAN_BYTES) {
+            throw new RuntimeException("Corrupt cyclelog index in " + file + ": " + totalSpans + " spans in "
+                    + extentCount + " extents do not fit " + length + " bytes");
+        }
+
+        this.spanCount = (int) totalSpans;
+        this.spans = slice(mbb, HEADER_BYTES, spanCount * SPAN_BYTES);
+        this.ordered = (flags & ORDERED) != 0;
+        readExtents(mbb, (int) footer, extentCount);
+    }
+
+    private void readExtents(ByteBuffer buf, int footer, int extentCount) {
+        this.extentFirstCycles = new long[extentCount];
+        this.extentFirstSpans = new long[extentCount];
+        this.extentSpanCounts = new int[extentCount];
+        this.extentCrcs = new int[extentCount];
+        for (int i = 0; i < extentCount; i++) {
+            int entry = footer + i * EXTENT_BYTES;
+            extentFirstCycles[i] = buf.getLong(entry);
+            extentFirstSpans[i] = buf.getLong(entry + Long.BYTES);
+            extentSpanCounts[i] = buf.getInt(entry + Long.BYTES + Long.BYTES);
+            extentCrcs[i] = buf.getInt(entry + Long.BYTES + Long.BYTES + Integer.BYTES);
+        }
+    }
+
+    /**
+     * Find the blocks of a version 3 file, and the number of the first span in each, without
+     * decoding them.
+     */
+    private void readBlocks(ByteBuffer buf, int length) {
+        boolean indexed = length >= HEADER_BYTES + TRAILER_BYTES && buf.getLong(length - Long.BYTES) == MAGIC;
+        int end = length;
+        long totalSpans = -1L;
+        if (indexed) {
+            int trailer = length - TRAILER_BYTES;
+            totalSpans = buf.getLong(trailer);
+            int extentCount = buf.getInt(trailer + Long.BYTES);
+            int flags = buf.getInt(trailer + Long.BYTES + Integer.BYTES);
+            long footer = (long) trailer - (long) extentCount * EXTENT_BYTES;
+            if (extentCount < 0 || totalSpans < 0 || footer < HEADER_BYTES) {
+                throw new RuntimeException("Corrupt cyclelog index in " + file + ": " + extentCount
+                        + " extents do not fit " + length + " bytes");
+            }
+            this.ordered = (flags & ORDERED) != 0;
+            readExtents(buf, (int) footer, extentCount);
+            end = (int) footer;
+        }
+
+        ByteBuffer blocks = buf.duplicate();
+        blocks.position(HEADER_BYTES).limit(end);
+        int[] offsets = new int[16];
+        long[] firstSpans = new long[17];
+        int blockCount = 0;
+        long foundSpans = 0L;
+        while (blocks.remaining() >= CycleResultsRLECompactCodec.BLOCK_HEADER_BYTES
+                && blocks.getInt(blocks.position()) > 0
+                && CycleResultsRLECompactCodec.getBlockBytes(blocks) <= blocks.remaining()) {
+            if (blockCount == offsets.length) {
+                offsets = Arrays.copyOf(offsets, blockCount * 2);
+                firstSpans = Arrays.copyOf(firstSpans, blockCount * 2 + 1);
+            }
+            offsets[blockCount] = blocks.position();
+            firstSpans[blockCount] = foundSpans;
+            foundSpans += CycleResultsRLECompactCodec.getSpanCount(blocks);
+            blocks.position(blocks.position() + CycleResultsRLECompactCodec.getBlockBytes(blocks));
+            blockCount++;
+        }
+        if (indexed && (blockCount != extentCrcs.length || foundSpans != totalSpans)) {
+            throw new RuntimeException("Corrupt cyclelog index in " + file + ": found " + foundSpans
+                    + " spans in " + blockCount + " blocks, expected " + totalSpans + " in " + extentCrcs.length);
+        }
+        if (foundSpans > Integer.MAX_VALUE) {
+            throw new RuntimeException("Unable to read " + foundSpans + " spans of cyclelog " + file);
+        }
+        if (!indexed) {
+            logger.warn("cyclelog " + file + " has no index, reading " + foundSpans + " spans without CRC checks");
+        }
+
+        firstSpans[blockCount] = foundSpans;
+        this.spanCount = (int) foundSpans;
+        this.blocks = buf;
+        this.blockOffsets = Arrays.copyOf(offsets, blockCount);
+        this.blockFirstSpans = Arrays.copyOf(firstSpans, blockCount + 1);
+    }
+
+    /**
+     * @return the block which holds the span, in a version 3 file
+     */
+    private int blockOf(int span) {
+        int block = Arrays.binarySearch(blockFirstSpans, 0, blockOffsets.length, span);
+        if (block < 0) {
+            block = -block - 2;
+        }
+        // skip any empty blocks which start at the same span
+        while (block + 1 < blockOffsets.length && blockFirstSpans[block + 1] <= span) {
+            block++;
+        }
+        return block;
+    }
+
+    /**
+     * Decode a block of a version 3 file.
+     * @param block The block number
+     * @param target A buffer to decode into, if it is large enough, or null
+     * @return a buffer of the spans of the block, from position 0 to the limit
+     */
+    private ByteBuffer decode(int block, ByteBuffer target) {
+        int spanBytes = (int) (blockFirstSpans[block + 1] - blockFirstSpans[block]) * SPAN_BYTES;
+        if (target == null || target.capacity() < spanBytes) {
+            target = ByteBuffer.allocate(spanBytes);
+        }
+        target.clear();
+        ByteBuffer encoded = blocks.duplicate();
+        encoded.position(blockOffsets[block]);
+        CycleResultsRLECompactCodec.decode(encoded, target);
+        target.flip();
+        return target;
+    }
+
+    /**
+     * @return the decoded block which holds the span, in a version 3 file, decoding it if
+     * it is not the last block read by this thread
+     */
+    private DecodedBlock decodedBlockOf(int span) {
+        DecodedBlock decoded = decodedBlock.get();
+        if (decoded == null) {
+            decoded = new DecodedBlock();
+            decodedBlock.set(decoded);
+        }
+        if (span < decoded.firstSpan || span >= decoded.afterLastSpan) {
+            int block = blockOf(span);
+            decoded.spans = decode(block, decoded.spans);
+            decoded.firstSpan = blockFirstSpans[block];
+            decoded.afterLastSpan = blockFirstSpans[block + 1];
+        }
+        return decoded;
+    }
+
+    /**
+     * Find a cyclelog file by name, with or without the .cyclelog suffix.
+     * @param filename The name of the file
+     * @return the file
+     */
+    public static File resolve(String filename) {
+        File cycleFile = new File(filename);
+        if (!cycleFile.exists()) {
+            cycleFile = new File(filename + ".cyclelog");
+            if (!cycleFile.exists()) {
+                throw new RuntimeException("Cyclelog file does not exist:" + filename);
+            }
+        }
+        return cycleFile;
+    }
+
+    /**
+     * Count the spans which were written before the unused, zeroed, tail of a file.
+     * A written span always has a nextMin greater than its min, so it is never all zero.
+     */
+    private static int writtenSpans(ByteBuffer buf, int offset, int spanCount) {
+        while (spanCount > 0) {
+            int last = offset + (spanCount - 1) * SPAN_BYTES;
+            if (buf.getLong(last) != 0L || buf.getLong(last + Long.BYTES) != 0L) {
+                break;
+            }
+            spanCount--;
+        }
+        return spanCount;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int offset, int length) {
+        ByteBuffer slice = buf.duplicate();
+        slice.position(offset).limit(offset + length);
+        return slice.slice();
+    }
+
+    /**
+     * Check the CRC of every extent.
+     * @throws RuntimeException if the span data of any extent does not match its CRC
+     */
+    public void verify() {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < extentCrcs.length; i++) {
+            crc.reset();
+            if (version == VERSION_COMPACT) {
+                int blockBytes = CycleResultsRLECompactCodec.BLOCK_HEADER_BYTES + blocks.getInt(blockOffsets[i]);
+                crc.update(slice(blocks, blockOffsets[i], blockBytes));
+            } else {
+                crc.update(slice(spans, (int) extentFirstSpans[i] * SPAN_BYTES, extentSpanCounts[i] * SPAN_BYTES));
+            }
+            if ((int) crc.getValue() != extentCrcs[i]) {
+                throw new RuntimeException("CRC mismatch in extent " + i + " of cyclelog " + file
+                        + ", starting at cycle " + extentFirstCycles[i]);
+            }
+        }
+    }
+
+    /**
+     * Read the spans from the given span to the end, in (long,long,byte) format. Versions 1 and 2
+     * are read as one buffer of the mapped file. Each block of version 3 is read as a separate
+     * buffer, which is decoded when the iterator reaches it.
+     * @param firstSpan The span to start at
+     * @return buffers of the spans, each with its own position and limit
+     */
+    public Iterator<ByteBuffer> getSpanBuffers(int firstSpan) {
+        if (firstSpan >= spanCount) {
+            return Collections.emptyIterator();
+        }
+        if (spans != null) {
+            ByteBuffer from = spans.duplicate();
+            from.position(firstSpan * SPAN_BYTES);
+            return Collections.singletonList(from).iterator();
+        }
+        int firstBlock = blockOf(firstSpan);
+        return new Iterator<ByteBuffer>() {
+            private int block = firstBlock;
+
+            @Override
+            public boolean hasNext() {
+                return block < blockOffsets.length;
+            }
+
+            @Override
+            public ByteBuffer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ByteBuffer decoded = decode(block, null);
+                if (block == firstBlock) {
+                    decoded.position((int) (firstSpan - blockFirstSpans[block]) * SPAN_BYTES);
+                }
+                block++;
+                return decoded;
+            }
+        };
+    }
+
+    public int getSpanCount() {
+        return spanCount;
+    }
+
+    public long getMinCycle(int span) {
+        if (spans != null) {
+            return spans.getLong(span * SPAN_BYTES);
+        }
+        DecodedBlock decoded = decodedBlockOf(span);
+        return decoded.spans.getLong(decoded.offsetOf(span));
+    }
+
+    public long getNextMinCycle(int span) {
+        if (spans != null) {
+            return spans.getLong(span * SPAN_BYTES + Long.BYTES);
+        }
+        DecodedBlock decoded = decodedBlockOf(span);
+        return decoded.spans.getLong(decoded.offsetOf(span) + Long.BYTES);
+    }
+
+    public int getResult(int span) {
+        if (spans != null) {
+            return spans.get(span * SPAN_BYTES + Long.BYTES + Long.BYTES);
+        }
+        DecodedBlock decoded = decodedBlockOf(span);
+        return decoded.spans.get(decoded.offsetOf(span) + Long.BYTES + Long.BYTES);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getExtentCount() {
+        return extentCrcs.length;
+    }
+
+    /**
+     * @return true, if the spans are known to be in cycle order
+     */
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * Find the first span which ends after the given cycle. In an ordered file, this is the span
+     * which holds the cycle, or the next span after it if the cycle was not logged.
+     * @param cycle The cycle to find
+     * @return The span number, or the span count if no span ends after the cycle
+     */
+    public int findSpan(long cycle) {
+        if (!ordered) {
+            for (int span = 0; span < spanCount; span++) {
+                if (getNextMinCycle(span) > cycle) {
+                    return span;
+                }
+            }
+            return spanCount;
+        }
+
+        int low = 0;
+        int high = spanCount;
+        int extent = lastExtentStartingAtOrBefore(cycle);
+        if (extent >= 0) {
+            low = (int) extentFirstSpans[extent];
+            high = (int) extentFirstSpans[extent] + extentSpanCounts[extent];
+        }
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getNextMinCycle(mid) > cycle) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Count the logged cycles in a range, for spans with an accepted result. In an ordered file,
+     * only the spans which overlap the range are read. Otherwise all spans are scanned.
+     * @param min The first cycle of the range, inclusive
+     * @param nextMin The first cycle after the range
+     * @param accepted Whether the cycles of a span with the given result are counted
+     * @return the number of accepted cycles in the range
+     */
+    public long countCycles(long min, long nextMin, IntPredicate accepted) {
+        long count = 0L;
+        int span = ordered ? findSpan(min) : 0;
+        for (; span < spanCount; span++) {
+            long spanMin = getMinCycle(span);
+            if (ordered && spanMin >= nextMin) {
+                break;
+            }
+            long from = Math.max(min, spanMin);
+            long to = Math.min(nextMin, getNextMinCycle(span));
+            if (from < to && accepted.test(getResult(span))) {
+                count += to - from;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Find the logged cycles in a range, for spans with an accepted result. In an ordered file,
+     * only the spans which overlap the range are read. Otherwise all spans are scanned.
+     * @param min The first cycle of the range, inclusive
+     * @param nextMin The first cycle after the range
+     * @param accepted Whether the cycles of a span with the given result are included
+     * @return the accepted cycles in the range, as offsets from min
+     */
+    public BitSet getCycles(long min, long nextMin, IntPredicate accepted) {
+        BitSet cycles = new BitSet((int) Math.max(0L, nextMin - min));
+        int span = ordered ? findSpan(min) : 0;
+        for (; span < spanCount; span++) {
+            long spanMin = getMinCycle(span);
+            if (ordered && spanMin >= nextMin) {
+                break;
+            }
+            long from = Math.max(min, spanMin);
+            long to = Math.min(nextMin, getNextMinCycle(span));
+            if (from < to && accepted.test(getResult(span))) {
+                cycles.set((int) (from - min), (int) (to - min));
+            }
+        }
+        return cycles;
+    }
+
+    /**
+     * Remove the cycles outside of a cycle range from the cycles of another range.
+     * @param cycles The cycles of the range [min,nextMin), as offsets from min
+     * @param min The first cycle of the range, inclusive
+     * @param nextMin The first cycle after the range
+     * @param minCycle The first cycle to keep, inclusive
+     * @param maxCycle The first cycle after the cycles to keep
+     * @return the same cycles
+     */
+    static BitSet clearOutside(BitSet cycles, long min, long nextMin, long minCycle, long maxCycle) {
+        if (minCycle > min) {
+            cycles.clear(0, (int) (Math.min(minCycle, nextMin) - min));
+        }
+        if (maxCycle < nextMin) {
+            cycles.clear((int) (Math.max(maxCycle, min) - min), (int) (nextMin - min));
+        }
+        return cycles;
+    }
+
+    private int lastExtentStartingAtOrBefore(long cycle) {
+        int low = 0;
+        int high = extentFirstCycles.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (extentFirstCycles[mid] <= cycle) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Write a version 2 header.
+     * @param buf The buffer to write to, at its position
+     */
+    public static void writeHeader(ByteBuffer buf) {
+        writeHeader(buf, VERSION);
+    }
+
+    /**
+     * Write a header.
+     * @param buf The buffer to write to, at its position
+     * @param version The version of the file format
+     */
+    public static void writeHeader(ByteBuffer buf, int version) {
+        buf.putLong(MAGIC).putInt(version).putInt(SPAN_BYTES);
+    }
+
+    /**
+     * Write a version 2 footer.
+     * @param buf The buffer to write to, at its position
+     * @param firstCycles The first cycle of each extent
+     * @param firstSpans The first span number of each extent
+     * @param spanCounts The number of spans in each extent
+     * @param crcs The CRC32 of the span data of each extent
+     * @param extentCount The number of extents
+     * @param ordered Whether all spans are in cycle order
+     */
+    public static void writeFooter(ByteBuffer buf, long[] firstCycles, long[] firstSpans, int[] spanCounts,
+                                   int[] crcs, int extentCount, boolean ordered) {
+        long totalSpans = 0L;
+        for (int i = 0; i < extentCount; i++) {
+            buf.putLong(firstCycles[i]).putLong(firstSpans[i]).putInt(spanCounts[i]).putInt(crcs[i]);
+            totalSpans += spanCounts[i];
+        }
+        buf.putLong(totalSpans).putInt(extentCount).putInt(ordered ? ORDERED : 0).putLong(MAGIC);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (raf != null) {
+            raf.close();
+            raf = null;
+            spans = null;
+            blocks = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CycleLogFile{" +
+                "file=" + file +
+                ", version=" + version +
+                ", spans=" + spanCount +
+                ", extents=" + extentCrcs.length +
+                ", ordered=" + ordered +
+                '}';
+    }
+
+    /**
+     * The last block of a version 3 file which was decoded by a thread.
+     */
+    private final static class DecodedBlock {
+        private ByteBuffer spans;
+        private long firstSpan = 0L;
+        private long afterLastSpan = 0L;
+
+        private int offsetOf(int span) {
+            return (int) (span - firstSpan) * SPAN_BYTES;
+        }
+    }
+}
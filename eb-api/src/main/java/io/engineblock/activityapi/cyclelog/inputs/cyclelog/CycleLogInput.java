@@ -24,6 +24,7 @@ import io.engineblock.activityapi.cyclelog.buffers.results.CycleResult;
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsSegment;
 import io.engineblock.activityapi.cyclelog.buffers.results.ResultReadable;
 import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLEBufferReadable;
+import io.engineblock.activityapi.input.CanCountCycles;
 import io.engineblock.activityapi.input.Input;
 import io.engineblock.util.SimpleConfig;
 
@@ -31,43 +32,71 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.RandomAccessFile;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.function.Predicate;
 
-public class CycleLogInput implements Input, AutoCloseable, Iterable<CycleResultsSegment>, CanFilterResultValue {
+/**
+ * Provides the cycles of a cyclelog file in either format, as described in {@link CycleLogFile}.
+ * With the <em>cycles</em> option, only the logged cycles in the given range are provided, as in
+ * <em>input=type:cyclelog,file:somelog,cycles:1000..2000</em>. For ordered cyclelogs, reading starts
+ * at the first span in the range, which is found with a binary search.
+ * <p>The cycles which will be provided in any range can be counted, so that ordered outputs
+ * can track them even though they are not contiguous.</p>
+ */
+public class CycleLogInput implements Input, AutoCloseable, Iterable<CycleResultsSegment>, CanFilterResultValue, CanCountCycles {
     private final static Logger logger = LoggerFactory.getLogger(CycleLogInput.class);
     private final Iterator<CycleResultsSegment> cycleResultSegmentIterator;
-    private RandomAccessFile raf;
-    private MappedByteBuffer mbb;
+    private CycleLogFile logFile;
+    private int firstSpan;
     private Iterator<CycleResult> segmentIter;
     private Predicate<ResultReadable> filter;
+    private long minCycle = Long.MIN_VALUE;
+    private long maxCycle = Long.MAX_VALUE;
+    private boolean pastMaxCycle = false;
 
     public CycleLogInput(Activity activity) {
         SimpleConfig conf = new SimpleConfig(activity, "input");
-        mbb = initMappedBuffer(conf.getString("file").orElse(activity.getAlias()) + ".cyclelog");
+        conf.getString("cycles").ifPresent(this::setCycleRange);
+        open(conf.getString("file").orElse(activity.getAlias()) + ".cyclelog");
         cycleResultSegmentIterator = iterator();
-        segmentIter = cycleResultSegmentIterator.next().iterator();
+        segmentIter = nextSegmentIterator();
     }
 
     public CycleLogInput(String filename) {
-        File cycleFile = null;
-        try {
-            cycleFile = new File(filename);
-            if (!cycleFile.exists()) {
-                cycleFile = new File(cycleFile + ".cyclelog");
-                if (!cycleFile.exists()) {
-                    throw new RuntimeException("Cyclelog file does not exist:" + filename);
-                }
-            }
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        this(filename, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Read only the logged cycles in a range.
+     * @param filename The cyclelog file, with or without the .cyclelog suffix
+     * @param minCycle The first cycle to provide, inclusive
+     * @param maxCycle The last cycle to provide, exclusive
+     */
+    public CycleLogInput(String filename, long minCycle, long maxCycle) {
+        this.minCycle = minCycle;
+        this.maxCycle = maxCycle;
+        open(CycleLogFile.resolve(filename).getPath());
+        cycleResultSegmentIterator = iterator();
+        segmentIter = nextSegmentIterator();
+    }
+
+    private void setCycleRange(String cycles) {
+        String[] range = cycles.split("\\.\\.");
+        if (range.length != 2) {
+            throw new RuntimeException("cyclelog input cycles must be in the form min..max, not " + cycles);
+        }
+        this.minCycle = Long.parseLong(range[0]);
+        this.maxCycle = Long.parseLong(range[1]);
+    }
+
+    private Iterator<CycleResult> nextSegmentIterator() {
+        if (cycleResultSegmentIterator.hasNext()) {
+            return cycleResultSegmentIterator.next().iterator();
         }
-        mbb = initMappedBuffer(cycleFile.getPath());
-        cycleResultSegmentIterator = new CycleResultsRLEBufferReadable(mbb).iterator();
-        segmentIter = cycleResultSegmentIterator.next().iterator();
+        return Collections.emptyIterator();
     }
 
     @Override
@@ -75,6 +104,25 @@ public class CycleLogInput implements Input, AutoCloseable, Iterable<CycleResult
         this.filter = filter;
     }
 
+    @Override
+    public long getCycleCount(long min, long nextMin) {
+        Predicate<ResultReadable> filter = this.filter;
+        return logFile.countCycles(Math.max(min, minCycle), Math.min(nextMin, maxCycle),
+                result -> filter == null || filter.test(() -> result));
+    }
+
+    @Override
+    public boolean isInCycleOrder() {
+        return logFile.isOrdered();
+    }
+
+    @Override
+    public BitSet getExpectedCycles(long min, long nextMin) {
+        Predicate<ResultReadable> filter = this.filter;
+        BitSet cycles = logFile.getCycles(min, nextMin, result -> filter == null || filter.test(() -> result));
+        return CycleLogFile.clearOutside(cycles, min, nextMin, minCycle, maxCycle);
+    }
+
     @Override
     public synchronized CycleSegment getInputSegment(int segmentLength) {
 
@@ -82,13 +130,20 @@ public class CycleLogInput implements Input, AutoCloseable, Iterable<CycleResult
 
         while (csb.remaining() > 0) {
 
-            while (!segmentIter.hasNext() && cycleResultSegmentIterator.hasNext()) {
+            while (!segmentIter.hasNext() && !pastMaxCycle && cycleResultSegmentIterator.hasNext()) {
                 segmentIter = cycleResultSegmentIterator.next().iterator();
             }
             if (segmentIter.hasNext()) {
                 CycleResult cycleResult = segmentIter.next();
-                if (filter==null || filter.test(cycleResult)) {
-                    csb.append(cycleResult.getCycle());
+                long cycle = cycleResult.getCycle();
+                if (cycle >= maxCycle && logFile.isOrdered()) {
+                    // no later spans can be in range
+                    pastMaxCycle = true;
+                    segmentIter = Collections.emptyIterator();
+                    continue;
+                }
+                if (cycle >= minCycle && cycle < maxCycle && (filter==null || filter.test(cycleResult))) {
+                    csb.append(cycle);
                 }
             } else {
                 if (csb.remaining() == segmentLength) {
@@ -121,36 +176,49 @@ public class CycleLogInput implements Input, AutoCloseable, Iterable<CycleResult
 //
 //            remaining = csb.remaining();
 
-    private MappedByteBuffer initMappedBuffer(String filename) {
+    private void open(String filename) {
         File filepath = new File(filename);
         if (!filepath.exists()) {
             throw new RuntimeException("file path '" + filename + "' does not exist!");
         }
-        try {
-            raf = new RandomAccessFile(filepath, "r");
-            mbb = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        logFile = new CycleLogFile(filepath);
+        logFile.verify();
+        if (minCycle != Long.MIN_VALUE && logFile.isOrdered()) {
+            firstSpan = logFile.findSpan(minCycle);
         }
-        return mbb;
     }
 
     @Override
     public void close() throws Exception {
-        if (raf != null) {
-            raf.close();
-            mbb = null;
+        if (logFile != null) {
+            logFile.close();
         }
     }
 
 
+    /**
+     * Iterate the spans from the first span in range, one span buffer of the file at a time.
+     */
     @Override
     public Iterator<CycleResultsSegment> iterator() {
-        CycleResultsRLEBufferReadable cycleResultsSegments = new CycleResultsRLEBufferReadable(mbb.duplicate());
-        if (cycleResultsSegments instanceof CanFilterResultValue) {
-            ((CanFilterResultValue)cycleResultsSegments).setFilter(filter);
-        }
-        return cycleResultsSegments.iterator();
+        Iterator<ByteBuffer> spanBuffers = logFile.getSpanBuffers(firstSpan);
+        return new Iterator<CycleResultsSegment>() {
+            private Iterator<CycleResultsSegment> segments = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!segments.hasNext() && spanBuffers.hasNext()) {
+                    segments = new CycleResultsRLEBufferReadable(spanBuffers.next()).iterator();
+                }
+                return segments.hasNext();
+            }
+
+            @Override
+            public CycleResultsSegment next() {
+                hasNext();
+                return segments.next();
+            }
+        };
     }
 
 }
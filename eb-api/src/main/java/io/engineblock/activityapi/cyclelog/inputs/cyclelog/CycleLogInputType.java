@@ -21,6 +21,7 @@ import io.engineblock.activityapi.core.Activity;
 import io.engineblock.activityapi.input.Input;
 import io.engineblock.activityapi.input.InputDispenser;
 import io.engineblock.activityapi.input.InputType;
+import io.engineblock.util.SimpleConfig;
 import io.virtdata.annotations.Service;
 
 @Service(InputType.class)
@@ -42,7 +43,8 @@ public class CycleLogInputType implements InputType {
 
         public Dispenser(Activity activity) {
             this.activity = activity;
-            this.input = new CycleLogInput(activity);
+            boolean parallel = new SimpleConfig(activity, "input").getString("parallel").map(Boolean::valueOf).orElse(false);
+            this.input = parallel ? new ParallelCycleLogInput(activity) : new CycleLogInput(activity);
         }
 
         @Override
@@ -0,0 +1,274 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityapi.cyclelog.inputs.cyclelog;
+
+import io.engineblock.activityapi.core.Activity;
+import io.engineblock.activityapi.cyclelog.buffers.cycles.CycleSegment;
+import io.engineblock.activityapi.cyclelog.buffers.cycles.CycleSegmentBuffer;
+import io.engineblock.activityapi.cyclelog.buffers.results.ResultReadable;
+import io.engineblock.activityapi.input.CanCountCycles;
+import io.engineblock.activityapi.input.Input;
+import io.engineblock.activityimpl.input.InputInterval;
+import io.engineblock.util.SimpleConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * <p>This cyclelog input can be read by many threads without locking. It provides the same
+ * cycles in the same order as {@link CycleLogInput}, but rather than walking one shared
+ * iterator over the RLE spans, each call claims the next range of cycle ordinals with a
+ * single atomic add, and then reads the spans which hold those cycles directly from the
+ * {@link CycleLogFile}. Both cyclelog formats are supported, as described in {@link CycleLogFile}.</p>
+ *
+ * <p>To find the span which holds a given ordinal, the number of cycles before every
+ * {@link #CHECKPOINT_SPANS}th span is indexed when the file is opened, and again when a
+ * filter is set. A lookup is a binary search of the checkpoints followed by a short scan
+ * of the spans after the checkpoint. Since filters only see the result of a span, they are
+ * evaluated once for each possible result value rather than for each span.</p>
+ *
+ * <p>The cycles which will be provided in any range can be counted, so that ordered outputs
+ * can track them even though they are not contiguous.</p>
+ */
+public class ParallelCycleLogInput implements Input, AutoCloseable, CanFilterResultValue, CanCountCycles {
+    private final static Logger logger = LoggerFactory.getLogger(ParallelCycleLogInput.class);
+
+    public final static int CHECKPOINT_SPANS = 64;
+
+    private final AtomicLong cursor = new AtomicLong(0L);
+    private CycleLogFile logFile;
+    private int spans;
+    private long minCycle = Long.MIN_VALUE;
+    private long maxCycle = Long.MAX_VALUE;
+
+    private Predicate<ResultReadable> filter;
+    private boolean[] accepted = new boolean[256];
+    private long[] checkpoints;
+    private long first;
+    private long limit;
+
+    public ParallelCycleLogInput(Activity activity) {
+        SimpleConfig conf = new SimpleConfig(activity, "input");
+        conf.getString("cycles").ifPresent(cycles -> {
+            String[] range = cycles.split("\\.\\.");
+            if (range.length != 2) {
+                throw new RuntimeException("cyclelog input cycles must be in the form min..max, not " + cycles);
+            }
+            this.minCycle = Long.parseLong(range[0]);
+            this.maxCycle = Long.parseLong(range[1]);
+        });
+        open(conf.getString("file").orElse(activity.getAlias()));
+    }
+
+    public ParallelCycleLogInput(String filename) {
+        this(filename, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Read only the logged cycles in a range. This requires an ordered cyclelog.
+     * @param filename The cyclelog file, with or without the .cyclelog suffix
+     * @param minCycle The first cycle to provide, inclusive
+     * @param maxCycle The last cycle to provide, exclusive
+     */
+    public ParallelCycleLogInput(String filename, long minCycle, long maxCycle) {
+        this.minCycle = minCycle;
+        this.maxCycle = maxCycle;
+        open(filename);
+    }
+
+    private void open(String filename) {
+        logFile = new CycleLogFile(CycleLogFile.resolve(filename));
+        logFile.verify();
+        boolean ranged = minCycle != Long.MIN_VALUE || maxCycle != Long.MAX_VALUE;
+        if (ranged && !logFile.isOrdered()) {
+            throw new RuntimeException("Cycle ranges can only be read in parallel from ordered version 2 cyclelogs, not " + logFile);
+        }
+        this.spans = logFile.getSpanCount();
+        Arrays.fill(accepted, true);
+        index();
+    }
+
+    @Override
+    public synchronized void setFilter(Predicate<ResultReadable> filter) {
+        if (filter == this.filter) {
+            return;
+        }
+        if (cursor.get() != first) {
+            throw new RuntimeException("The filter of a cyclelog input can not be changed after it has been read.");
+        }
+        this.filter = filter;
+        boolean[] accepted = new boolean[256];
+        for (int i = 0; i < accepted.length; i++) {
+            int result = (byte) i;
+            accepted[i] = filter == null || filter.test(() -> result);
+        }
+        this.accepted = accepted;
+        index();
+    }
+
+    private void index() {
+        long[] checkpoints = new long[(spans + CHECKPOINT_SPANS - 1) / CHECKPOINT_SPANS];
+        long ordinal = 0L;
+        for (int span = 0; span < spans; span++) {
+            if (span % CHECKPOINT_SPANS == 0) {
+                checkpoints[span / CHECKPOINT_SPANS] = ordinal;
+            }
+            ordinal += count(span);
+        }
+        this.checkpoints = checkpoints;
+        this.first = minCycle == Long.MIN_VALUE ? 0L : ordinalOf(minCycle);
+        this.limit = maxCycle == Long.MAX_VALUE ? ordinal : ordinalOf(maxCycle);
+        this.cursor.set(first);
+        logger.debug("indexed " + spans + " spans with " + ordinal + " cycles, reading " + (limit - first));
+    }
+
+    /**
+     * @return the number of unfiltered cycles before the given cycle, in an ordered cyclelog
+     */
+    private long ordinalOf(long cycle) {
+        if (spans == 0) {
+            return 0L;
+        }
+        int span = logFile.findSpan(cycle);
+        int checkpoint = span / CHECKPOINT_SPANS;
+        if (checkpoint == checkpoints.length) {
+            checkpoint--;
+        }
+        long ordinal = checkpoints[checkpoint];
+        for (int before = checkpoint * CHECKPOINT_SPANS; before < span; before++) {
+            ordinal += count(before);
+        }
+        if (span < spans && count(span) > 0L) {
+            ordinal += Math.max(0L, cycle - logFile.getMinCycle(span));
+        }
+        return ordinal;
+    }
+
+    /**
+     * @return the number of unfiltered cycles in the span
+     */
+    private long count(int span) {
+        if (!accepted[logFile.getResult(span) & 0xFF]) {
+            return 0L;
+        }
+        return logFile.getNextMinCycle(span) - logFile.getMinCycle(span);
+    }
+
+    @Override
+    public long getCycleCount(long min, long nextMin) {
+        boolean[] accepted = this.accepted;
+        return logFile.countCycles(Math.max(min, minCycle), Math.min(nextMin, maxCycle), result -> accepted[result & 0xFF]);
+    }
+
+    @Override
+    public boolean isInCycleOrder() {
+        return logFile.isOrdered();
+    }
+
+    @Override
+    public BitSet getExpectedCycles(long min, long nextMin) {
+        boolean[] accepted = this.accepted;
+        BitSet cycles = logFile.getCycles(min, nextMin, result -> accepted[result & 0xFF]);
+        return CycleLogFile.clearOutside(cycles, min, nextMin, minCycle, maxCycle);
+    }
+
+    @Override
+    public CycleSegment getInputSegment(int segmentLength) {
+        return getInputSegment(segmentLength, null);
+    }
+
+    /**
+     * When the claimed cycles are one contiguous interval, a reusable {@link InputInterval.Segment}
+     * is reset to it. Otherwise the cycles are copied into an array segment.
+     */
+    @Override
+    public CycleSegment getInputSegment(int segmentLength, CycleSegment reusable) {
+        long start = cursor.getAndAdd(segmentLength);
+        if (start >= limit) {
+            return null;
+        }
+        long end = Math.min(start + segmentLength, limit);
+
+        int checkpoint = Arrays.binarySearch(checkpoints, start);
+        if (checkpoint < 0) {
+            checkpoint = -checkpoint - 2;
+        }
+        // checkpoints repeat over filtered spans, so skip ahead to the last one at or before start
+        while (checkpoint + 1 < checkpoints.length && checkpoints[checkpoint + 1] <= start) {
+            checkpoint++;
+        }
+
+        int span = checkpoint * CHECKPOINT_SPANS;
+        long ordinal = checkpoints[checkpoint];
+        long count = count(span);
+        while (ordinal + count <= start) {
+            ordinal += count;
+            count = count(++span);
+        }
+
+        long firstCycle = logFile.getMinCycle(span) + (start - ordinal);
+        if (end <= ordinal + count) {
+            return segmentFor(firstCycle, firstCycle + (end - start), reusable);
+        }
+
+        CycleSegmentBuffer csb = new CycleSegmentBuffer((int) (end - start));
+        long cycle = firstCycle;
+        long next = start;
+        while (next < end) {
+            long spanEnd = logFile.getNextMinCycle(span);
+            while (cycle < spanEnd && next < end) {
+                csb.append(cycle++);
+                next++;
+            }
+            if (next < end) {
+                do {
+                    span++;
+                } while (count(span) == 0L);
+                cycle = logFile.getMinCycle(span);
+            }
+        }
+        return csb.toReadable();
+    }
+
+    private static CycleSegment segmentFor(long start, long afterEnd, CycleSegment reusable) {
+        if (reusable instanceof InputInterval.Segment) {
+            return ((InputInterval.Segment) reusable).reset(start, afterEnd);
+        }
+        return new InputInterval.Segment(start, afterEnd);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (logFile != null) {
+            logFile.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ParallelCycleLogInput{" +
+                "spans=" + spans +
+                ", first=" + first +
+                ", limit=" + limit +
+                ", cursor=" + cursor.get() +
+                '}';
+    }
+}
@@ -62,11 +62,13 @@ public class ReorderingConcurrentResultBuffer implements Output, CanFilterResult
 
     @Override
     public synchronized void onCycleResultSegment(CycleResultsSegment segment) {
+        // The segment is only valid for the duration of this call, so it is copied before buffering
+        segment = new CycleResultArray(segment);
         if (resultFilter!=null) {
             segment = segment.filter(resultFilter);
         }
-        if (!(segment instanceof CanSortCycles)) {
-            segment = new CycleResultArray(segment);
+        if (segment.getCount()==0) {
+            return;
         }
         ((CanSortCycles)segment).sort();
         segments.add(segment);
@@ -0,0 +1,173 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityapi.cyclelog.outputs;
+
+import io.engineblock.activityapi.cyclelog.buffers.results.CycleResult;
+import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultArray;
+import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsSegment;
+import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsSegmentReadable;
+import io.engineblock.activityapi.cyclelog.buffers.results.ResultReadable;
+import io.engineblock.activityapi.cyclelog.inputs.cyclelog.CanFilterResultValue;
+import io.engineblock.activityapi.output.Output;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * <p>A result buffer that puts cycles in order, like {@link ReorderingConcurrentResultBuffer},
+ * but without a shared monitor or a full sort on the producer path. Each producer copies and
+ * sorts its own segment, and adds it to a concurrent skip list window which is ordered by
+ * the first cycle of each segment.</p>
+ *
+ * <p>The buffer tracks a low watermark, which is the next cycle it expects. As soon as the
+ * first segment in the window starts at or before the watermark, it is emitted downstream,
+ * and the watermark moves past it. So, contiguous runs of cycles are emitted as soon as the
+ * segment which fills a gap arrives. If a gap is never filled, as when cycles are filtered,
+ * the first segments are emitted regardless once the window holds more than the threshold
+ * number of cycles.</p>
+ *
+ * <p>Only one producer emits at a time, and only when it can take the emitter lock without
+ * waiting. Other producers leave their segments in the window for it, and check again
+ * after it is done, so downstream outputs see one caller at a time.</p>
+ */
+public class ReorderingWindowResultBuffer implements Output, CanFilterResultValue {
+
+    private final static Logger logger = LoggerFactory.getLogger(ReorderingWindowResultBuffer.class);
+
+    private final ConcurrentSkipListSet<Pending> window = new ConcurrentSkipListSet<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final ReentrantLock emitter = new ReentrantLock();
+    private final Output downstream;
+    private final int threshold;
+    private volatile long nextCycle;
+    private volatile Predicate<ResultReadable> resultFilter;
+
+    public ReorderingWindowResultBuffer(Output downstream) {
+        this(downstream, 1000, 0L);
+    }
+
+    /**
+     * @param downstream The output to emit ordered segments to
+     * @param threshold The number of cycles which may wait for a gap to be filled
+     * @param firstCycle The first cycle which is expected
+     */
+    public ReorderingWindowResultBuffer(Output downstream, int threshold, long firstCycle) {
+        this.downstream = downstream;
+        this.threshold = threshold;
+        this.nextCycle = firstCycle;
+    }
+
+    @Override
+    public boolean onCycleResult(long completedCycle, int result) {
+        this.onCycleResultSegment(CycleResultsSegmentReadable.forCycleResult(completedCycle, result));
+        return true;
+    }
+
+    @Override
+    public void onCycleResultSegment(CycleResultsSegment segment) {
+        // The segment is only valid for the duration of this call, so it is copied before buffering
+        CycleResultsSegment copy = new CycleResultArray(segment);
+        Predicate<ResultReadable> filter = resultFilter;
+        if (filter != null) {
+            copy = copy.filter(filter);
+        }
+        if (copy.getCount() == 0) {
+            return;
+        }
+        ((CanSortCycles) copy).sort();
+        window.add(new Pending(copy, sequence.getAndIncrement()));
+        pendingCount.addAndGet(copy.getCount());
+        emitReady();
+    }
+
+    private boolean isReady() {
+        if (window.isEmpty()) {
+            return false;
+        }
+        return window.first().min <= nextCycle || pendingCount.get() >= threshold;
+    }
+
+    private void emitReady() {
+        while (isReady() && emitter.tryLock()) {
+            try {
+                while (isReady()) {
+                    emit(window.pollFirst());
+                }
+            } finally {
+                emitter.unlock();
+            }
+        }
+    }
+
+    private void emit(Pending pending) {
+        downstream.onCycleResultSegment(pending.segment);
+        pendingCount.addAndGet(-pending.segment.getCount());
+        if (pending.nextMin > nextCycle) {
+            nextCycle = pending.nextMin;
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        emitter.lock();
+        try {
+            logger.trace("closing and flushing " + window.size() + " segments");
+            Pending pending;
+            while ((pending = window.pollFirst()) != null) {
+                emit(pending);
+            }
+        } finally {
+            emitter.unlock();
+        }
+        downstream.close();
+    }
+
+    @Override
+    public void setFilter(Predicate<ResultReadable> filter) {
+        this.resultFilter = filter;
+    }
+
+    private static class Pending implements Comparable<Pending> {
+        private final CycleResultsSegment segment;
+        private final long min;
+        private final long nextMin;
+        private final long sequence;
+
+        Pending(CycleResultsSegment segment, long sequence) {
+            this.segment = segment;
+            this.sequence = sequence;
+            this.min = segment.getMinCycle();
+            long last = min;
+            for (CycleResult cycleResult : segment) {
+                last = cycleResult.getCycle();
+            }
+            this.nextMin = last + 1;
+        }
+
+        @Override
+        public int compareTo(Pending other) {
+            int byMin = Long.compare(min, other.min);
+            return byMin != 0 ? byMin : Long.compare(sequence, other.sequence);
+        }
+    }
+}
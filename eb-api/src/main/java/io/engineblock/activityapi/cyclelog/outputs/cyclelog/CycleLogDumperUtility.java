@@ -20,17 +20,17 @@ package io.engineblock.activityapi.cyclelog.outputs.cyclelog;
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResult;
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsSegment;
 import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLEBufferReadable;
+import io.engineblock.activityapi.cyclelog.inputs.cyclelog.CycleLogFile;
 
 import java.io.File;
-import java.io.RandomAccessFile;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
 
 public class CycleLogDumperUtility {
 
     public static void main(String[] args) {
         if (args.length == 0) {
-            System.out.println("USAGE: CyclesCLI <filename>");
+            System.out.println("USAGE: CyclesCLI <filename> [spans|cycles] [min..max]");
         }
         String filename = args[0];
 
@@ -38,12 +38,21 @@ public class CycleLogDumperUtility {
         if (args.length >= 2) {
             displayType = DisplayType.valueOf(args[1]);
         }
-        new CycleLogDumperUtility().dumpData(filename, displayType);
+        long minCycle = Long.MIN_VALUE;
+        long maxCycle = Long.MAX_VALUE;
+        if (args.length >= 3) {
+            String[] range = args[2].split("\\.\\.");
+            if (range.length != 2) {
+                throw new RuntimeException("The cycle range must be in the form min..max, not " + args[2]);
+            }
+            minCycle = Long.parseLong(range[0]);
+            maxCycle = Long.parseLong(range[1]);
+        }
+        new CycleLogDumperUtility().dumpData(filename, displayType, minCycle, maxCycle);
     }
 
-    private void dumpData(String filename, DisplayType displayType) {
+    private void dumpData(String filename, DisplayType displayType, long minCycle, long maxCycle) {
         File filepath = new File(filename);
-        MappedByteBuffer mbb = null;
         if (!filepath.exists()) {
             if (!filepath.getPath().endsWith(".cyclelog")) {
                 filepath = new File(filename+".cyclelog");
@@ -52,29 +61,44 @@ public class CycleLogDumperUtility {
                 }
             }
         }
-        try {
-            RandomAccessFile raf = new RandomAccessFile(filepath, "rw");
-            mbb = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        CycleLogFile logFile = new CycleLogFile(filepath);
+        logFile.verify();
+
+        // ordered cyclelogs can be read from the first span in range
+        int firstSpan = 0;
+        if (minCycle != Long.MIN_VALUE && logFile.isOrdered()) {
+            firstSpan = logFile.findSpan(minCycle);
         }
 
         int readsize = 100;
 
-        if (mbb.remaining() > 0) {
+        Iterator<ByteBuffer> spanBuffers = logFile.getSpanBuffers(firstSpan);
+        while (spanBuffers.hasNext()) {
+            ByteBuffer mbb = spanBuffers.next();
             CycleResultsRLEBufferReadable readable = null;
             while (mbb.remaining() > 0) {
                 readable = new CycleResultsRLEBufferReadable(readsize, mbb);
 
                 for (CycleResultsSegment segment : readable) {
+                    long segmentMin = segment.getMinCycle();
+                    if (segmentMin >= maxCycle) {
+                        if (logFile.isOrdered()) {
+                            return;
+                        }
+                        continue;
+                    }
                     switch (displayType) {
                         case cycles:
                             for (CycleResult cycleResult : segment) {
-                                System.out.println(cycleResult);
+                                if (cycleResult.getCycle() >= minCycle && cycleResult.getCycle() < maxCycle) {
+                                    System.out.println(cycleResult);
+                                }
                             }
                             break;
                         case spans:
-                            System.out.println(segment.toString());
+                            if (segmentMin + segment.getCount() > minCycle) {
+                                System.out.println(segment.toString());
+                            }
                             break;
 
                     }
@@ -18,6 +18,7 @@
 package io.engineblock.activityapi.cyclelog.outputs.cyclelog;
 
 import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleSpanResults;
+import io.engineblock.activityapi.cyclelog.inputs.cyclelog.CycleLogFile;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -31,19 +32,41 @@ public class CycleLogImporterUtility {
 
     public static void main(String[] args) {
         if (args.length == 0) {
-            System.out.println("USAGE: CyclesCLI <input-textfile>, <output-cyclelog>");
+            System.out.println("USAGE: CyclesCLI <input-textfile|input-cyclelog>, <output-cyclelog> [version]");
         }
         String infile = args[0];
         String outfile = args[1];
+        int version = args.length >= 3 ? Integer.parseInt(args[2]) : CycleLogFile.VERSION;
         try {
-            new CycleLogImporterUtility().convert(infile, outfile);
+            if (infile.endsWith(".cyclelog")) {
+                new CycleLogImporterUtility().rewrite(infile, outfile, version);
+            } else {
+                new CycleLogImporterUtility().convert(infile, outfile, version);
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    private void convert(String infile, String outfile) throws Exception {
-        CycleLogOutput output = new CycleLogOutput(new File(outfile), 1024);
+    /**
+     * Copy the spans of a cyclelog of either format to a new cyclelog, as when converting
+     * between formats.
+     */
+    private void rewrite(String infile, String outfile, int version) throws Exception {
+        CycleLogFile logFile = new CycleLogFile(CycleLogFile.resolve(infile));
+        logFile.verify();
+        CycleLogOutput output = new CycleLogOutput(new File(outfile), 1024, version);
+        for (int span = 0; span < logFile.getSpanCount(); span++) {
+            output.onCycleResultSegment(
+                    new CycleSpanResults(logFile.getMinCycle(span), logFile.getNextMinCycle(span), logFile.getResult(span))
+            );
+        }
+        output.close();
+        logFile.close();
+    }
+
+    private void convert(String infile, String outfile, int version) throws Exception {
+        CycleLogOutput output = new CycleLogOutput(new File(outfile), 1024, version);
         BufferedReader reader = new BufferedReader(new FileReader(infile));
         String line = reader.readLine();
         while (line != null) {
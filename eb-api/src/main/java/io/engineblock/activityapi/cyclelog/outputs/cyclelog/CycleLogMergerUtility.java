@@ -0,0 +1,162 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityapi.cyclelog.outputs.cyclelog;
+
+import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLECompactCodec;
+import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleSpanResults;
+import io.engineblock.activityapi.cyclelog.inputs.cyclelog.CycleLogFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merge several cyclelogs into one cyclelog with all spans in cycle order. Each input is read
+ * in cycle order, and the next span of all inputs is taken from a priority queue, so only the
+ * current span of each input is held in memory. Adjacent spans with the same result are
+ * compacted into one span in the output.
+ *
+ * <p>Inputs which are not marked as ordered are read through a sorted index of their spans.
+ * The output is written with the fixed encoding unless another encoding is given, so that
+ * merged slot cyclelogs can keep the encoding of the slot cyclelogs.</p>
+ */
+public class CycleLogMergerUtility {
+    private final static Logger logger = LoggerFactory.getLogger(CycleLogMergerUtility.class);
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("USAGE: CyclesCLI <output-cyclelog> <input-cyclelog>...");
+            return;
+        }
+        List<File> infiles = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            infiles.add(CycleLogFile.resolve(args[i]));
+        }
+        merge(infiles, new File(args[0]));
+    }
+
+    /**
+     * Merge the input cyclelogs into a version 2 output cyclelog.
+     * @param infiles The cyclelogs to merge
+     * @param outfile The cyclelog to write
+     * @return the number of spans in the merged cyclelog
+     */
+    public static int merge(List<File> infiles, File outfile) {
+        return merge(infiles, outfile, CycleResultsRLECompactCodec.FIXED);
+    }
+
+    /**
+     * Merge the input cyclelogs into the output cyclelog.
+     * @param infiles The cyclelogs to merge
+     * @param outfile The cyclelog to write
+     * @param encoding One of the {@link CycleResultsRLECompactCodec} encodings, which selects
+     *                 version 3 of the file format for any encoding other than fixed
+     * @return the number of spans in the merged cyclelog
+     */
+    public static int merge(List<File> infiles, File outfile, int encoding) {
+        List<CycleLogFile> logFiles = new ArrayList<>();
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(Math.max(1, infiles.size()), Comparator.comparingLong(Cursor::getMinCycle));
+        try {
+            for (File infile : infiles) {
+                CycleLogFile logFile = new CycleLogFile(infile);
+                logFiles.add(logFile);
+                logFile.verify();
+                Cursor cursor = new Cursor(logFile);
+                if (cursor.hasSpan()) {
+                    cursors.add(cursor);
+                }
+            }
+
+            int version = encoding == CycleResultsRLECompactCodec.FIXED ? CycleLogFile.VERSION : CycleLogFile.VERSION_COMPACT;
+            CycleLogOutput output = new CycleLogOutput(outfile, 1024, version, encoding);
+            Cursor cursor;
+            while ((cursor = cursors.poll()) != null) {
+                output.onCycleResultSegment(cursor.getSpan());
+                if (cursor.next()) {
+                    cursors.add(cursor);
+                }
+            }
+            output.close();
+
+            CycleLogFile merged = new CycleLogFile(outfile);
+            int spanCount = merged.getSpanCount();
+            merged.close();
+            logger.debug("merged " + infiles.size() + " cyclelogs into " + spanCount + " spans in " + outfile);
+            return spanCount;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            for (CycleLogFile logFile : logFiles) {
+                try {
+                    logFile.close();
+                } catch (Exception e) {
+                    logger.warn("Error while closing " + logFile + ": " + e);
+                }
+            }
+        }
+    }
+
+    private static class Cursor {
+        private final CycleLogFile logFile;
+        private final int[] order;
+        private int position = 0;
+
+        Cursor(CycleLogFile logFile) {
+            this.logFile = logFile;
+            if (logFile.isOrdered()) {
+                this.order = null;
+            } else {
+                Integer[] spans = new Integer[logFile.getSpanCount()];
+                for (int i = 0; i < spans.length; i++) {
+                    spans[i] = i;
+                }
+                Arrays.sort(spans, Comparator.comparingLong(logFile::getMinCycle));
+                this.order = Arrays.stream(spans).mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        private int span() {
+            return order == null ? position : order[position];
+        }
+
+        boolean hasSpan() {
+            return position < logFile.getSpanCount();
+        }
+
+        boolean next() {
+            position++;
+            return hasSpan();
+        }
+
+        long getMinCycle() {
+            return logFile.getMinCycle(span());
+        }
+
+        CycleSpanResults getSpan() {
+            int span = span();
+            return new CycleSpanResults(logFile.getMinCycle(span), logFile.getNextMinCycle(span), logFile.getResult(span));
+        }
+    }
+}
@@ -22,8 +22,10 @@ import io.engineblock.activityapi.cyclelog.buffers.results.CycleResult;
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsSegment;
 import io.engineblock.activityapi.cyclelog.buffers.results.ResultReadable;
 import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLEBufferTarget;
+import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLECompactCodec;
 import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleSpanResults;
 import io.engineblock.activityapi.cyclelog.inputs.cyclelog.CanFilterResultValue;
+import io.engineblock.activityapi.cyclelog.inputs.cyclelog.CycleLogFile;
 import io.engineblock.activityapi.output.Output;
 import io.engineblock.util.SimpleConfig;
 import org.slf4j.Logger;
@@ -35,7 +37,13 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Predicate;
+import java.util.zip.CRC32;
 
 /**
  * A {@link Output} that writes cycles and results to an RLE-based file format.
@@ -47,6 +55,21 @@ import java.util.function.Predicate;
  *
  * <p>It <em>is</em> valid for RLE segments to be broken apart into contiguous
  * ranges. Any implementation should treat this as normal.
+ *
+ * <p>By default, the file is written in the version 2 format described in
+ * {@link CycleLogFile}, with a header, and an index of the extents with their
+ * CRCs which is written on {@link #close()}. The original headerless format
+ * can be written with <em>version:1</em>. With <em>encoding:varint</em> or
+ * <em>encoding:deflate</em>, extents are encoded with {@link CycleResultsRLECompactCodec}
+ * in the version 3 format, which is usually several times smaller.
+ *
+ * <p>The file is grown in chunks of <em>chunkSize</em> bytes, 16MiB by default,
+ * so that it is rarely remapped, and it is truncated to its content on close.
+ * With <em>async:true</em>, filled extents are handed to a dedicated writer
+ * thread, so that callers only wait when <em>buffers</em> extents are already
+ * waiting to be written. Extents are forced to disk every <em>forceInterval</em>
+ * milliseconds, or after every extent if it is 0. This is 0 by default, or 1000
+ * with async:true.
  */
 public class CycleLogOutput implements Output, CanFilterResultValue {
 
@@ -60,24 +83,125 @@ public class CycleLogOutput implements Output, CanFilterResultValue {
     private File outputFile;
     private Predicate<ResultReadable> filter;
 
+    private int version;
+    private int encoding = CycleResultsRLECompactCodec.FIXED;
+    private ByteBuffer encodedExtent;
+    private int extentCount = 0;
+    private long spanCount = 0L;
+    private long[] extentFirstCycles = new long[16];
+    private long[] extentFirstSpans = new long[16];
+    private int[] extentSpanCounts = new int[16];
+    private int[] extentCrcs = new int[16];
+    private long lastNextMin = Long.MIN_VALUE;
+    private boolean ordered = true;
+    private final CRC32 crc = new CRC32();
+
+    private long chunkSize = DEFAULT_CHUNK_SIZE;
+    private long forceIntervalNanos = 0L;
+    private long lastForceNanos = System.nanoTime();
+    private final Queue<ByteBuffer> freeExtents = new ConcurrentLinkedQueue<>();
+    private BlockingQueue<ByteBuffer> filledExtents;
+    private Thread writer;
+    private volatile Throwable writerError;
+
+    public final static long DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+    private final static ByteBuffer END_OF_EXTENTS = ByteBuffer.allocate(0);
+
     public CycleLogOutput(Activity activity) {
+        this(activity, getOutputFile(activity));
+    }
+
+    /**
+     * Create an output which is configured from the activity, but which writes to the given file.
+     * @param activity The activity which provides the output configuration
+     * @param outputFile The file to write
+     */
+    public CycleLogOutput(Activity activity, File outputFile) {
 
         SimpleConfig conf = new SimpleConfig(activity, "output");
         this.extentSizeInSpans = conf.getInteger("extentSize").orElse(1000);
-        this.outputFile = new File(conf.getString("file").orElse(activity.getAlias()) + ".cyclelog");
+        this.outputFile = outputFile;
+        this.version = conf.getInteger("version").orElse(CycleLogFile.VERSION);
+        this.encoding = conf.getString("encoding").map(CycleResultsRLECompactCodec::forName).orElse(CycleResultsRLECompactCodec.FIXED);
+        if (encoding != CycleResultsRLECompactCodec.FIXED) {
+            this.version = CycleLogFile.VERSION_COMPACT;
+        } else if (version >= CycleLogFile.VERSION_COMPACT) {
+            this.encoding = CycleResultsRLECompactCodec.VARINT;
+        }
+        this.chunkSize = conf.getLong("chunkSize").orElse(DEFAULT_CHUNK_SIZE);
 
+        boolean async = conf.getString("async").map(Boolean::valueOf).orElse(false);
+        long forceIntervalMillis = conf.getLong("forceInterval").orElse(async ? 1000L : 0L);
+        this.forceIntervalNanos = forceIntervalMillis * 1_000_000L;
 
         targetBuffer = new CycleResultsRLEBufferTarget(extentSizeInSpans);
         removeIfPresent(outputFile);
+        if (async) {
+            startWriter(conf.getInteger("buffers").orElse(2));
+        }
     }
 
     public CycleLogOutput(File outputFile, int extentSizeInSpans) {
+        this(outputFile, extentSizeInSpans, CycleLogFile.VERSION);
+    }
+
+    public CycleLogOutput(File outputFile, int extentSizeInSpans, int version) {
         this.extentSizeInSpans = extentSizeInSpans;
         this.outputFile = outputFile;
+        this.version = version;
+        if (version >= CycleLogFile.VERSION_COMPACT) {
+            this.encoding = CycleResultsRLECompactCodec.VARINT;
+        }
         targetBuffer = new CycleResultsRLEBufferTarget(extentSizeInSpans);
         removeIfPresent(outputFile);
     }
 
+    /**
+     * Create an output which writes extents from a background thread.
+     * @param outputFile The file to write
+     * @param extentSizeInSpans The number of spans in each extent
+     * @param version The file format version
+     * @param buffers The number of filled extents which may wait for the writer
+     * @param forceIntervalMillis The minimum time between forcing extents to disk
+     */
+    public CycleLogOutput(File outputFile, int extentSizeInSpans, int version, int buffers, long forceIntervalMillis) {
+        this(outputFile, extentSizeInSpans, version);
+        this.forceIntervalNanos = forceIntervalMillis * 1_000_000L;
+        startWriter(buffers);
+    }
+
+    /**
+     * Create an output which writes extents with the given encoding.
+     * @param outputFile The file to write
+     * @param extentSizeInSpans The number of spans in each extent
+     * @param version The file format version, which must be 3 for an encoding other than fixed
+     * @param encoding One of the {@link CycleResultsRLECompactCodec} encodings
+     */
+    public CycleLogOutput(File outputFile, int extentSizeInSpans, int version, int encoding) {
+        this(outputFile, extentSizeInSpans, version);
+        if ((encoding != CycleResultsRLECompactCodec.FIXED) != (version >= CycleLogFile.VERSION_COMPACT)) {
+            throw new RuntimeException("Cyclelog version " + CycleLogFile.VERSION_COMPACT
+                    + " is required for the varint and deflate encodings, and only for them");
+        }
+        this.encoding = encoding;
+    }
+
+    /**
+     * @return the {@link CycleResultsRLECompactCodec} encoding of the extents
+     */
+    public int getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @param activity The activity which provides the output configuration
+     * @return the cyclelog file named by the output configuration, or by the activity alias
+     */
+    public static File getOutputFile(Activity activity) {
+        SimpleConfig conf = new SimpleConfig(activity, "output");
+        return new File(conf.getString("file").orElse(activity.getAlias()) + ".cyclelog");
+    }
+
     private void removeIfPresent(File filename) {
         try {
             if (Files.deleteIfExists(filename.toPath())) {
@@ -101,41 +225,191 @@ public class CycleLogOutput implements Output, CanFilterResultValue {
 
     @Override
     public void onCycleResultSegment(CycleResultsSegment segment) {
+        if (segment instanceof CycleSpanResults) {
+            onCycleSpan((CycleSpanResults) segment);
+            return;
+        }
         for (CycleResult cycleResult : segment) {
             if (filter == null || filter.test(cycleResult)) {
                 boolean buffered = targetBuffer.onCycleResult(cycleResult);
                 if (!buffered) {
                     flush();
-                    targetBuffer = new CycleResultsRLEBufferTarget(extentSizeInSpans);
+                    targetBuffer = newTargetBuffer();
                     boolean bufferedAfterFlush = targetBuffer.onCycleResult(cycleResult);
                     if (!bufferedAfterFlush) {
                         throw new RuntimeException("Failed to record result in new target buffer");
                     }
+                } else if (targetBuffer.getRecordCount() >= extentSizeInSpans) {
+                    flush();
+                    targetBuffer = newTargetBuffer();
                 }
             }
         }
     }
 
+    /**
+     * Record a whole span at once, rather than cycle by cycle.
+     */
+    private void onCycleSpan(CycleSpanResults span) {
+        if (filter == null || filter.test(span)) {
+            targetBuffer.onCycleSpan(span.getMinCycle(), span.getMinCycle() + span.getCount(), span.getResult());
+            if (targetBuffer.getRecordCount() >= extentSizeInSpans) {
+                flush();
+                targetBuffer = newTargetBuffer();
+            }
+        }
+    }
+
+    private CycleResultsRLEBufferTarget newTargetBuffer() {
+        ByteBuffer free = freeExtents.poll();
+        if (free != null) {
+            return new CycleResultsRLEBufferTarget(free);
+        }
+        return new CycleResultsRLEBufferTarget(extentSizeInSpans);
+    }
+
     private void flush() {
         ByteBuffer nextFileExtent = targetBuffer.toByteBuffer();
         logger.debug("RLE result extent is " + nextFileExtent.remaining() + " bytes ("
                 + (nextFileExtent.remaining() / CycleResultsRLEBufferTarget.BYTES)
                 + ") tuples");
-        int targetCapacity = (mbb == null ? 0 : mbb.capacity()) + nextFileExtent.remaining();
+        if (writer == null) {
+            writeExtent(nextFileExtent);
+            return;
+        }
+        checkWriter();
+        try {
+            filledExtents.put(nextFileExtent);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeExtent(ByteBuffer nextFileExtent) {
+        boolean needsHeader = (mbb == null && version >= 2);
+        if (nextFileExtent.remaining() == 0 && mbb != null) {
+            return;
+        }
+        long targetCapacity = (mbb == null ? 0 : mbb.position()) + nextFileExtent.remaining()
+                + (needsHeader ? CycleLogFile.HEADER_BYTES : 0);
         logger.trace("ensuring capacity for " + targetCapacity);
         this.ensureCapacity(targetCapacity);
-        mbb.put(nextFileExtent);
-        mbb.force();
+        if (needsHeader) {
+            CycleLogFile.writeHeader(mbb, version);
+        }
+        if (nextFileExtent.remaining() > 0) {
+            ByteBuffer written = nextFileExtent;
+            if (encoding != CycleResultsRLECompactCodec.FIXED) {
+                written = encodeExtent(nextFileExtent);
+                ensureCapacity(mbb.position() + written.remaining());
+            }
+            addExtent(nextFileExtent, written);
+            mbb.put(written);
+        }
+        long now = System.nanoTime();
+        if (now - lastForceNanos >= forceIntervalNanos) {
+            mbb.force();
+            lastForceNanos = now;
+        }
         logger.trace("extent appended");
         logger.trace("mbb position now at " + mbb.position());
 
+        nextFileExtent.clear();
+        freeExtents.offer(nextFileExtent);
+    }
+
+    private void startWriter(int buffers) {
+        this.filledExtents = new ArrayBlockingQueue<>(buffers);
+        this.writer = new Thread(() -> {
+            try {
+                ByteBuffer extent;
+                while ((extent = filledExtents.take()) != END_OF_EXTENTS) {
+                    writeExtent(extent);
+                }
+            } catch (Throwable t) {
+                logger.error("Error while writing to " + outputFile + ": " + t, t);
+                writerError = t;
+                filledExtents.clear();
+            }
+        });
+        writer.setName("cyclelog-writer-" + outputFile.getName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void checkWriter() {
+        if (writerError != null) {
+            throw new RuntimeException("The cyclelog writer for " + outputFile + " failed: " + writerError, writerError);
+        }
+    }
+
+    private ByteBuffer encodeExtent(ByteBuffer extent) {
+        int spans = extent.remaining() / CycleResultsRLEBufferTarget.BYTES;
+        int maxBytes = CycleResultsRLECompactCodec.maxBlockBytes(spans);
+        if (encodedExtent == null || encodedExtent.capacity() < maxBytes) {
+            encodedExtent = ByteBuffer.allocate(maxBytes);
+        }
+        encodedExtent.clear();
+        CycleResultsRLECompactCodec.encode(extent, encoding, encodedExtent);
+        encodedExtent.flip();
+        return encodedExtent;
+    }
+
+    /**
+     * Record the index entry of an extent, and check that its spans are in order.
+     * @param extent The spans of the extent
+     * @param written The bytes of the extent as written to the file, which the CRC covers
+     */
+    private void addExtent(ByteBuffer extent, ByteBuffer written) {
+        int spans = extent.remaining() / CycleResultsRLEBufferTarget.BYTES;
+        if (extentCount == extentCrcs.length) {
+            int size = extentCount * 2;
+            extentFirstCycles = Arrays.copyOf(extentFirstCycles, size);
+            extentFirstSpans = Arrays.copyOf(extentFirstSpans, size);
+            extentSpanCounts = Arrays.copyOf(extentSpanCounts, size);
+            extentCrcs = Arrays.copyOf(extentCrcs, size);
+        }
+        for (int span = 0; span < spans; span++) {
+            int offset = extent.position() + span * CycleResultsRLEBufferTarget.BYTES;
+            long min = extent.getLong(offset);
+            if (min < lastNextMin) {
+                ordered = false;
+            }
+            lastNextMin = extent.getLong(offset + Long.BYTES);
+        }
+        crc.reset();
+        crc.update(written.duplicate());
+        extentFirstCycles[extentCount] = extent.getLong(extent.position());
+        extentFirstSpans[extentCount] = spanCount;
+        extentSpanCounts[extentCount] = spans;
+        extentCrcs[extentCount] = (int) crc.getValue();
+        extentCount++;
+        spanCount += spans;
+    }
+
+    private void writeFooter() {
+        int footerBytes = extentCount * CycleLogFile.EXTENT_BYTES + CycleLogFile.TRAILER_BYTES;
+        ensureCapacity(mbb.position() + footerBytes);
+        CycleLogFile.writeFooter(mbb, extentFirstCycles, extentFirstSpans, extentSpanCounts, extentCrcs, extentCount, ordered);
+        mbb.force();
     }
 
     @Override
     public synchronized void close() throws Exception {
         try {
             flush();
+            if (writer != null) {
+                filledExtents.put(END_OF_EXTENTS);
+                writer.join();
+                writer = null;
+                checkWriter();
+            }
+            if (version >= 2 && file != null) {
+                writeFooter();
+            }
             if (file != null) {
+                mbb.force();
+                file.setLength(mbb.position());
                 file.getFD().sync();
                 file.close();
                 file = null;
@@ -147,7 +421,14 @@ public class CycleLogOutput implements Output, CanFilterResultValue {
 
     }
 
-    private synchronized void ensureCapacity(long newCapacity) {
+    /**
+     * Grow the file to at least the given size, or by at least a chunk.
+     */
+    private void ensureCapacity(long requiredCapacity) {
+        if (mbb != null && mbb.capacity() >= requiredCapacity) {
+            return;
+        }
+        long newCapacity = Math.max(requiredCapacity, (mbb == null ? 0 : mbb.capacity()) + chunkSize);
         try {
             logger.info("resizing marking file from " + (mbb == null ? 0 : mbb.capacity()) + " to " + newCapacity);
             if (file == null) {
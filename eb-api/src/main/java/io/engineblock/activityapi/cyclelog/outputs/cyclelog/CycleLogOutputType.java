@@ -18,15 +18,24 @@
 package io.engineblock.activityapi.cyclelog.outputs.cyclelog;
 
 import io.engineblock.activityapi.core.Activity;
-import io.engineblock.activityapi.cyclelog.outputs.ReorderingConcurrentResultBuffer;
+import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLECompactCodec;
+import io.engineblock.activityapi.cyclelog.outputs.ReorderingWindowResultBuffer;
 import io.engineblock.activityapi.input.Input;
 import io.engineblock.activityapi.output.Output;
 import io.engineblock.activityapi.output.OutputDispenser;
 import io.engineblock.activityapi.output.OutputType;
+import io.engineblock.util.SimpleConfig;
 import io.virtdata.annotations.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
 @Service(OutputType.class)
 public class CycleLogOutputType implements OutputType {
 
@@ -37,6 +46,10 @@ public class CycleLogOutputType implements OutputType {
 
     @Override
     public OutputDispenser getOutputDispenser(Activity activity) {
+        boolean perslot = new SimpleConfig(activity, "output").getString("perslot").map(Boolean::valueOf).orElse(false);
+        if (perslot) {
+            return new PerSlotDispenser(activity);
+        }
         return new Dispenser(activity);
     }
 
@@ -60,8 +73,8 @@ public class CycleLogOutputType implements OutputType {
 //            }
 //            else {
                 logger.debug("pre-buffering output extents with best-effort before RLE buffering");
-                ReorderingConcurrentResultBuffer prebuffer =
-                        new ReorderingConcurrentResultBuffer(rleFileWriter);
+                ReorderingWindowResultBuffer prebuffer =
+                        new ReorderingWindowResultBuffer(rleFileWriter, 1000, activity.getActivityDef().getStartCycle());
                 this.output=prebuffer;
 //            }
             activity.registerAutoCloseable(output);
@@ -72,4 +85,65 @@ public class CycleLogOutputType implements OutputType {
             return output;
         }
     }
+
+    /**
+     * Provides each slot with its own cyclelog, so that slots do not share a lock when
+     * recording results. When the activity is closed, the slot cyclelogs are merged into
+     * one ordered cyclelog with the same encoding, and are then removed.
+     */
+    public static class PerSlotDispenser implements OutputDispenser, AutoCloseable {
+        private final static Logger logger = LoggerFactory.getLogger(PerSlotDispenser.class);
+
+        private final Activity activity;
+        private final File outputFile;
+        private final Map<Long, Output> outputs = new TreeMap<>();
+        private final Map<Long, File> slotFiles = new TreeMap<>();
+        private int encoding = CycleResultsRLECompactCodec.FIXED;
+
+        public PerSlotDispenser(Activity activity) {
+            this.activity = activity;
+            this.outputFile = CycleLogOutput.getOutputFile(activity);
+            activity.registerAutoCloseable(this);
+        }
+
+        @Override
+        public synchronized Output getOutput(long slot) {
+            return outputs.computeIfAbsent(slot, s -> {
+                File slotFile = getSlotFile(outputFile, s);
+                slotFiles.put(s, slotFile);
+                CycleLogOutput slotOutput = new CycleLogOutput(activity, slotFile);
+                encoding = slotOutput.getEncoding();
+                return new ReorderingWindowResultBuffer(slotOutput, 1000,
+                        activity.getActivityDef().getStartCycle());
+            });
+        }
+
+        /**
+         * @param outputFile The merged cyclelog
+         * @param slot The slot number
+         * @return the cyclelog of the given slot, as <em>name.slotN.cyclelog</em>
+         */
+        public static File getSlotFile(File outputFile, long slot) {
+            String path = outputFile.getPath();
+            if (path.endsWith(".cyclelog")) {
+                path = path.substring(0, path.length() - ".cyclelog".length());
+            }
+            return new File(path + ".slot" + slot + ".cyclelog");
+        }
+
+        @Override
+        public synchronized void close() throws Exception {
+            for (Output output : outputs.values()) {
+                output.close();
+            }
+            outputs.clear();
+            List<File> files = new ArrayList<>(slotFiles.values());
+            slotFiles.clear();
+            int spans = CycleLogMergerUtility.merge(files, outputFile, encoding);
+            logger.info("merged " + files.size() + " slot cyclelogs into " + outputFile + " with " + spans + " spans");
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
 }
@@ -0,0 +1,63 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityapi.input;
+
+import java.util.BitSet;
+
+/**
+ * An input which can tell ahead of time how many cycles it will provide in
+ * any range of cycles. Outputs which put cycles back in order use this to know
+ * when every cycle in a range has been marked, even when the input is not contiguous.
+ */
+public interface CanCountCycles {
+
+    /**
+     * @param min The first cycle of the range, inclusive
+     * @param nextMin The first cycle after the range
+     * @return the number of cycles in the range which this input will provide
+     */
+    long getCycleCount(long min, long nextMin);
+
+    /**
+     * Outputs which put cycles back in order only buffer a few extents past the first
+     * unmarked cycle, so they can not be used with inputs which may provide a cycle long
+     * before the cycles which come before it.
+     * @return true, if this input provides its cycles in cycle order
+     */
+    default boolean isInCycleOrder() {
+        return true;
+    }
+
+    /**
+     * Find the cycles in a range which this input will provide. Outputs use this to reject
+     * cycles which were not expected. By default, each cycle of the range is counted by
+     * itself, so inputs which can find their cycles more directly should override this.
+     * @param min The first cycle of the range, inclusive
+     * @param nextMin The first cycle after the range
+     * @return the cycles in the range which this input will provide, as offsets from min
+     */
+    default BitSet getExpectedCycles(long min, long nextMin) {
+        BitSet expected = new BitSet((int) (nextMin - min));
+        for (long cycle = min; cycle < nextMin; cycle++) {
+            if (getCycleCount(cycle, cycle + 1) > 0L) {
+                expected.set((int) (cycle - min));
+            }
+        }
+        return expected;
+    }
+}
@@ -30,6 +30,20 @@ public interface Input {
      */
     CycleSegment getInputSegment(int segmentLength);
 
+    /**
+     * Return the next InputSegment available, or null if none were available,
+     * reusing the provided segment instance if the input supports it. The reusable
+     * segment must have been returned by this input previously, and must no longer
+     * be in use by the caller. Inputs which can not reuse segments will simply
+     * return a new one, as with {@link #getInputSegment(int)}.
+     * @param segmentLength The number of cycles (not necessarily contiguous) in the segment.
+     * @param reusable A segment which may be recycled by the input, or null
+     * @return a segment, or null if none available.
+     */
+    default CycleSegment getInputSegment(int segmentLength, CycleSegment reusable) {
+        return getInputSegment(segmentLength);
+    }
+
     default boolean isContiguous() {
         return false;
     }
@@ -42,6 +42,16 @@ public interface Output extends AutoCloseable {
         return this.onCycleResult(result.getCycle(),result.getResult());
     }
 
+    /**
+     * Mark the results of a segment of cycles.
+     *
+     * <p>The segment is owned by the caller, and is only valid for the duration of
+     * this call. Callers, such as motors, may reuse the segment and its backing
+     * buffer for subsequent results as soon as this method returns. Implementations
+     * which need to keep any results beyond this call must copy them.</p>
+     *
+     * @param segment The cycle results, valid only until this method returns
+     */
     default void onCycleResultSegment(CycleResultsSegment segment) {
         segment.forEach(s -> onCycleResult(s.getCycle(),s.getResult()));
     }
@@ -17,12 +17,6 @@
 
 package io.engineblock.activityapi.planning;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.function.ToLongFunction;
-import java.util.stream.Collectors;
-
 /**
  * <h2>Introduction</h2>
  * This class allows you to create a cyclic schedule that will maintain a mix
@@ -57,64 +51,32 @@ import java.util.stream.Collectors;
  */
 public class BucketSequencer<T> implements ElementSequencer<T> {
 
-    private List<T> elems;
-    private ToLongFunction<T> ratioFunc;
-
     @Override
-    public int[] seqIndexByRatioFunc(List<T> elems, ToLongFunction<T> ratioFunc) {
-
-        List<Long> ratios = new ArrayList<>();
-        for (int i = 0; i< elems.size(); i++) {
-            T elem = elems.get(i);
-            ratios.add(ratioFunc.applyAsLong(elem));
+    public int[] seqIndexesByRatios(long[] ratios) {
+        int[] sequence = new int[ElementSequencer.sequenceLength(ratios)];
+        long[] counts = ratios.clone();
+
+        int[] buckets = new int[counts.length];
+        int bucketCount = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                buckets[bucketCount++] = i;
+            }
         }
-        return seqIndexesByRatios(elems,ratios);
-    }
-
-    @Override
-    public int[] seqIndexesByRatios(List<T> elems, List<Long> ratios) {
-        List<OpBucket<T>> buckets = new ArrayList<>();
-        List<Integer> sequence = new ArrayList<>();
 
-        if (elems.size()!=ratios.size()) {
-            throw new RuntimeException("Elements and Ratios must be pair-wise.");
+        int position = 0;
+        while (bucketCount > 0) {
+            int remaining = 0;
+            for (int b = 0; b < bucketCount; b++) {
+                int rank = buckets[b];
+                sequence[position++] = rank;
+                if (--counts[rank] > 0) {
+                    buckets[remaining++] = rank;
+                }
+            }
+            bucketCount = remaining;
         }
-
-        for (int i = 0; i < elems.size(); i++) {
-            T elem = elems.get(i);
-            long ratio = ratios.get(i);
-            buckets.add(new OpBucket<>(elem,i,ratio));
-        }
-
-        while(!buckets.isEmpty()) {
-            buckets.forEach(b -> sequence.add(b.dispenseRank()));
-            buckets = buckets.stream().filter(b -> b.count>0).collect(Collectors.toCollection(LinkedList::new));
-        }
-        return sequence.stream().mapToInt(i -> (int)i).toArray();
-
+        return sequence;
     }
 
-    private final static class OpBucket<T> {
-
-        private final int rank;
-        private T elem;
-        private long count;
-
-        OpBucket(T elem, int rank, long ratio) {
-            this.elem = elem;
-            this.rank = rank;
-            this.count = ratio;
-        }
-
-        public boolean isEmpty() {
-            return (count==0);
-        }
-
-        int dispenseRank() {
-            count--;
-            return rank;
-        }
-    }
-
-
 }
@@ -17,10 +17,6 @@
 
 package io.engineblock.activityapi.planning;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.ToLongFunction;
-
 /**
  * This sequencer just repeats a number of elements, one element after
  * another.
@@ -30,29 +26,14 @@ import java.util.function.ToLongFunction;
 public class ConcatSequencer<T> implements ElementSequencer<T> {
 
     @Override
-    public int[] seqIndexByRatioFunc(List<T> elems, ToLongFunction<T> ratioFunc) {
-
-        List<Integer> sequence = new ArrayList<>();
-
-        for (int elemIndex = 0; elemIndex < elems.size(); elemIndex++) {
-            long runLength = ratioFunc.applyAsLong(elems.get(elemIndex));
-            for (int i = 0; i < runLength; i++) {
-                sequence.add(i);
-            }
-        }
-        return sequence.stream().mapToInt(i -> (int)i).toArray();
-    }
-
-    @Override
-    public int[] seqIndexesByRatios(List<T> elems, List<Long> ratios) {
-        List<Integer> sequence = new ArrayList<>();
-
-        for (int elemIndex = 0; elemIndex < elems.size(); elemIndex++) {
-            long runLength = ratios.get(elemIndex);
-            for (int i = 0; i< runLength; i++) {
-                sequence.add(elemIndex);
+    public int[] seqIndexesByRatios(long[] ratios) {
+        int[] sequence = new int[ElementSequencer.sequenceLength(ratios)];
+        int position = 0;
+        for (int elemIndex = 0; elemIndex < ratios.length; elemIndex++) {
+            for (long i = 0; i < ratios[elemIndex]; i++) {
+                sequence[position++] = elemIndex;
             }
         }
-        return sequence.stream().mapToInt(i -> (int)i).toArray();
+        return sequence;
     }
 }
@@ -24,8 +24,33 @@ import java.util.stream.Collectors;
 
 public interface ElementSequencer<T> {
 
-    int[] seqIndexByRatioFunc(List<T> elems, ToLongFunction<T> ratioFunc);
-    int[] seqIndexesByRatios(List<T> elems, List<Long> ratios);
+    /**
+     * Plan a sequence of element indexes from primitive ratios. Elements with a ratio
+     * of zero do not appear in the sequence.
+     *
+     * @param ratios The ratio of each element, by index
+     * @return The planned sequence of element indexes
+     */
+    int[] seqIndexesByRatios(long[] ratios);
+
+    default int[] seqIndexByRatioFunc(List<T> elems, ToLongFunction<T> ratioFunc) {
+        long[] ratios = new long[elems.size()];
+        for (int i = 0; i < ratios.length; i++) {
+            ratios[i] = ratioFunc.applyAsLong(elems.get(i));
+        }
+        return seqIndexesByRatios(ratios);
+    }
+
+    default int[] seqIndexesByRatios(List<T> elems, List<Long> ratios) {
+        if (elems.size()!=ratios.size()) {
+            throw new RuntimeException("Elements and Ratios must be pair-wise.");
+        }
+        long[] primitiveRatios = new long[ratios.size()];
+        for (int i = 0; i < primitiveRatios.length; i++) {
+            primitiveRatios[i] = ratios.get(i);
+        }
+        return seqIndexesByRatios(primitiveRatios);
+    }
 
     default List<T> seqElementsByRatioFunc(List<T> elems, ToLongFunction<T> ratioFunc) {
         int[] ints = seqIndexByRatioFunc(elems, ratioFunc);
@@ -37,4 +62,23 @@ public interface ElementSequencer<T> {
                 .stream().map(String::valueOf).collect(Collectors.joining(delim));
     }
 
+    /**
+     * @param ratios The ratio of each element
+     * @return the length of a sequence with the given ratios
+     * @throws RuntimeException if a ratio is negative, or the sequence would be too long for an array
+     */
+    static int sequenceLength(long[] ratios) {
+        long length = 0L;
+        for (long ratio : ratios) {
+            if (ratio < 0L) {
+                throw new RuntimeException("Ratios must not be negative, but " + ratio + " was given.");
+            }
+            length += ratio;
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new RuntimeException("The sum of ratios is too large to plan a sequence: " + Arrays.toString(ratios));
+            }
+        }
+        return (int) length;
+    }
+
 }
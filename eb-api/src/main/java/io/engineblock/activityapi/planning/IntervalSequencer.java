@@ -17,11 +17,6 @@
 
 package io.engineblock.activityapi.planning;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.function.ToLongFunction;
-
 /**
  * <h2>Introduction</h2>
  * This class allows you to create a cyclic schedule that will maintain a mix
@@ -67,70 +62,66 @@ import java.util.function.ToLongFunction;
  */
 public class IntervalSequencer<T> implements ElementSequencer<T> {
 
-    private List<T> elems;
-    private ToLongFunction<T> ratioFunc;
-
+    /**
+     * Each element's occurrences are already in position order, so the sequence is a merge of
+     * these per-element schedules. A heap of element indexes, ordered by the position of each
+     * element's next occurrence and then by index, yields them in sequence order.
+     */
     @Override
-    public int[] seqIndexByRatioFunc(List<T> elements, ToLongFunction<T> ratioFunc) {
-
-        List<Long> ratios = new ArrayList<>();
-        for (int i = 0; i < elements.size(); i++) {
-            T elem = elements.get(i);
-            ratios.add(ratioFunc.applyAsLong(elem));
+    public int[] seqIndexesByRatios(long[] ratios) {
+        int[] sequence = new int[ElementSequencer.sequenceLength(ratios)];
+        long[] dispensed = new long[ratios.length];
+
+        // Every first occurrence is at position 0.0, so index order is already a valid heap
+        int[] heap = new int[ratios.length];
+        int heapSize = 0;
+        for (int i = 0; i < ratios.length; i++) {
+            if (ratios[i] > 0) {
+                heap[heapSize++] = i;
+            }
         }
-        return seqIndexesByRatios(elements, ratios);
-    }
 
-    @Override
-    public int[] seqIndexesByRatios(List<T> elems, List<Long> ratios) {
-        List<IntervalSequencer.OpSlot<T>> ops = new ArrayList<>();
-
-        for (int i = 0; i < elems.size(); i++) {
-            T elem = elems.get(i);
-            long freq = ratios.get(i);
-            for (int p = 0; p < freq; p++) {
-                double pos = (double) p / (double) freq;
-                ops.add(new IntervalSequencer.OpSlot<>(elem, pos, i));
+        for (int position = 0; position < sequence.length; position++) {
+            int rank = heap[0];
+            sequence[position] = rank;
+            if (++dispensed[rank] >= ratios[rank]) {
+                heap[0] = heap[--heapSize];
             }
+            siftDown(heap, heapSize, ratios, dispensed);
         }
-
-        ops.sort(new IntervalSequencer.OpComparator());
-
-        return ops.stream().mapToInt(IntervalSequencer.OpSlot::getElementRank).toArray();
+        return sequence;
     }
 
-    private final static class OpSlot<T> {
-
-        private T elem;
-        private double position;
-        private int rank;
-
-        public OpSlot(T elem, double position, int rank) {
-            this.elem = elem;
-            this.position = position;
-            this.rank = rank;
-        }
-
-        public T getElement() {
-            return elem;
-        }
-
-        public int getElementRank() {
-            return rank;
+    private static void siftDown(int[] heap, int heapSize, long[] ratios, long[] dispensed) {
+        int parent = 0;
+        while (true) {
+            int least = parent;
+            int left = 2 * parent + 1;
+            int right = left + 1;
+            if (left < heapSize && isBefore(heap[left], heap[least], ratios, dispensed)) {
+                least = left;
+            }
+            if (right < heapSize && isBefore(heap[right], heap[least], ratios, dispensed)) {
+                least = right;
+            }
+            if (least == parent) {
+                return;
+            }
+            int swap = heap[parent];
+            heap[parent] = heap[least];
+            heap[least] = swap;
+            parent = least;
         }
     }
 
-
-    private final static class OpComparator implements Comparator<OpSlot> {
-
-        @Override
-        public int compare(OpSlot o1, OpSlot o2) {
-            int timeOrder = Double.compare(o1.position, o2.position);
-            if (timeOrder != 0) {
-                return timeOrder;
-            }
-            return Integer.compare(o1.rank, o2.rank);
+    private static boolean isBefore(int rank1, int rank2, long[] ratios, long[] dispensed) {
+        double position1 = (double) dispensed[rank1] / (double) ratios[rank1];
+        double position2 = (double) dispensed[rank2] / (double) ratios[rank2];
+        int timeOrder = Double.compare(position1, position2);
+        if (timeOrder != 0) {
+            return timeOrder < 0;
         }
+        return rank1 < rank2;
     }
 
 }
@@ -21,6 +21,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Function;
 import java.util.function.ToLongFunction;
@@ -30,7 +31,7 @@ public class SequencePlanner<T> {
     private final static Logger logger = LoggerFactory.getLogger(SequencePlanner.class);
     private SequencerType sequencerType;
     private List<T> elements = new ArrayList<>();
-    private List<Long> ratios = new ArrayList<>();
+    private long[] ratios = new long[16];
     private int[] elementIndex;
 
     public SequencePlanner(SequencerType sequencerType) {
@@ -38,49 +39,74 @@ public class SequencePlanner<T> {
     }
 
     public void addOp(T elem, ToLongFunction<T> ratioFunc) {
-        this.elements.add(elem);
-        this.ratios.add(ratioFunc.applyAsLong(elem));
+        addOp(elem, ratioFunc.applyAsLong(elem));
     }
 
     public void addOp(T elem, long func) {
+        if (elements.size() == ratios.length) {
+            ratios = Arrays.copyOf(ratios, ratios.length * 2);
+        }
+        this.ratios[elements.size()] = func;
         this.elements.add(elem);
-        this.ratios.add(func);
     }
 
     public OpSequence<T> resolve() {
+        long[] ratios = Arrays.copyOf(this.ratios, elements.size());
         switch (sequencerType) {
             case bucket:
                 logger.trace("sequencing elements by simple round-robin");
-                this.elementIndex = new BucketSequencer<T>().seqIndexesByRatios(elements, ratios);
+                this.elementIndex = new BucketSequencer<T>().seqIndexesByRatios(ratios);
                 break;
             case interval:
                 logger.trace("sequencing elements by interval and position");
-                this.elementIndex = new IntervalSequencer<T>().seqIndexesByRatios(elements, ratios);
+                this.elementIndex = new IntervalSequencer<T>().seqIndexesByRatios(ratios);
                 break;
             case concat:
                 logger.trace("sequencing elements by concatenation");
-                this.elementIndex = new ConcatSequencer<T>().seqIndexesByRatios(elements, ratios);
+                this.elementIndex = new ConcatSequencer<T>().seqIndexesByRatios(ratios);
         }
         this.elements = elements;
         return new Sequence<>(sequencerType, elements, elementIndex);
     }
 
+    /**
+     * <p>A planned sequence, with the op for each position in the sequence resolved ahead of
+     * time into a flat table. Selecting the op for a cycle is then a single array load. When
+     * the sequence length is a power of two, the position is found with a mask instead of a
+     * modulo.</p>
+     *
+     * <p>The table is not padded or repeated to reach a power-of-two length, since a cycle
+     * would then select a different op than the planned sequence gives for it, unless the
+     * planned length is already a power of two. Ratios which sum to a power of two, like
+     * A:8,B:4,C:2,D:2, get the fast path.</p>
+     *
+     * @param <T> The type of op in the sequence
+     */
     public static class Sequence<T> implements OpSequence<T> {
         private final SequencerType type;
         private final List<T> elems;
         private final int[] seq;
+        private final Object[] opTable;
+        private final int mask;
 
         Sequence(SequencerType type, List<T> elems, int[] seq) {
             this.type = type;
             this.elems = elems;
             this.seq = seq;
+            this.opTable = new Object[seq.length];
+            for (int i = 0; i < seq.length; i++) {
+                opTable[i] = elems.get(seq[i]);
+            }
+            this.mask = (seq.length > 0 && (seq.length & (seq.length - 1)) == 0) ? seq.length - 1 : -1;
         }
 
         @Override
+        @SuppressWarnings("unchecked")
         public T get(long selector) {
-            int index = (int) (selector % seq.length);
-            index = seq[index];
-            return elems.get(index);
+            if (mask >= 0) {
+                return (T) opTable[(int) (selector & mask)];
+            }
+            return (T) opTable[(int) (selector % opTable.length)];
         }
 
         @Override
@@ -97,6 +123,13 @@ public class SequencePlanner<T> {
             return type;
         }
 
+        /**
+         * @return true if ops are selected by mask, since the sequence length is a power of two
+         */
+        public boolean isMasked() {
+            return mask >= 0;
+        }
+
         @Override
         public <U> Sequence<U> transform(Function<T,U> func) {
             return new Sequence<U>(type, elems.stream().map(func).collect(Collectors.toList()), seq);
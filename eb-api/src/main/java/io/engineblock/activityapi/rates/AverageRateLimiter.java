@@ -64,21 +64,20 @@ import java.util.concurrent.locks.LockSupport;
  */
 public class AverageRateLimiter implements Startable, RateLimiter {
     private static final Logger logger = LoggerFactory.getLogger(AverageRateLimiter.class);
-    private String label;
-    private ActivityDef activityDef;
+    protected String label;
+    protected ActivityDef activityDef;
     private RateSpec rateSpec;
     private long opTicks = 0L; // Number of nanos representing one grant at target rate
     protected final AtomicLong ticksTimeline = new AtomicLong(0L);
     private final AtomicLong accumulatedDelayNanos = new AtomicLong(0L);
     
     private State state = State.Idle;
-    private boolean reportCoDelay = false;
+    protected boolean reportCoDelay = false;
 
     //private Counter fastpathCounter;
     //private Counter sleepCounter;
     private Gauge<Long> delayGauge;
     private Gauge<Double> avgRateGauge;
-    //private Gauge<Double> burstRateGauge;
 
     protected AverageRateLimiter() {
     }
@@ -110,7 +109,6 @@ public class AverageRateLimiter implements Startable, RateLimiter {
         //this.sleepCounter = ActivityMetrics.counter(activityDef, label + "_ratelogic.sleep_counter");
         //this.fastpathCounter = ActivityMetrics.counter(activityDef, label + "_ratelogic.fast_counter");
         this.avgRateGauge = ActivityMetrics.gauge(activityDef, label + ".avg_targetrate_gauge", new RateLimiters.RateGauge(this));
-        //this.burstRateGauge = ActivityMetrics.gauge(activityDef, label + "_ratelogic.burst_targetrate_gauge", new RateLimiters.BurstRateGauge(this));
         start();
     }
 
@@ -127,8 +125,41 @@ public class AverageRateLimiter implements Startable, RateLimiter {
      */
     @Override
     public long acquire(long nanos) {
+        return awaitSchedule(ticksTimeline.getAndAdd(nanos));
+    }
 
-        long opScheduleTimeNs = ticksTimeline.getAndAdd(nanos);
+    @Override
+    public long acquire() {
+        return acquire(opTicks);
+    }
+
+    /**
+     * Reserve the time for a number of ops at once, with a single update to the
+     * ticks accumulator. This avoids contention on the accumulator when many
+     * threads share a rate limiter, since each only touches it once per batch.
+     *
+     * @param permits The number of ops to reserve schedule time for
+     * @return the scheduled time of the first permit
+     */
+    @Override
+    public long reserve(int permits) {
+        return ticksTimeline.getAndAdd(opTicks * permits);
+    }
+
+    @Override
+    public boolean isEvenlySpaced() {
+        return true;
+    }
+
+    @Override
+    public void release(long nextScheduledTime, int permits) {
+        if (permits > 0) {
+            ticksTimeline.compareAndSet(nextScheduledTime + getOpNanos() * permits, nextScheduledTime);
+        }
+    }
+
+    @Override
+    public long awaitSchedule(long opScheduleTimeNs) {
         long delayNs = opScheduleTimeNs - getNanoClockTime();
         // event is in the past, return immediately
         if (delayNs <= 0) {
@@ -144,11 +175,6 @@ public class AverageRateLimiter implements Startable, RateLimiter {
         return reportCoDelay ? -delayNs : 0L;
     }
 
-    @Override
-    public long acquire() {
-        return acquire(opTicks);
-    }
-
     public long getOpNanos() {
         return opTicks;
     }
@@ -0,0 +1,167 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityapi.rates;
+
+import com.codahale.metrics.Gauge;
+import io.engineblock.activityimpl.ActivityDef;
+import io.engineblock.metrics.ActivityMetrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>This rate limiter schedules grants on the same ticks accumulator as
+ * the {@link AverageRateLimiter}, but it also limits how quickly callers
+ * may catch up to the average rate after falling behind it. Without this,
+ * a caller which stalls for some time will find the whole stalled time
+ * span open, and will be granted ops at an unbounded rate until the ticks
+ * accumulator catches up with the clock.
+ *
+ * <p>The catch-up speed is set by the burst ratio of the {@link RateSpec}.
+ * A burst ratio of 1.1 allows callers which are behind schedule to proceed
+ * at up to 110% of the target rate until they are caught up. This is
+ * tracked with a second timeline, which holds the earliest time that the
+ * next late op may be released. An op which is already behind its average
+ * schedule time when it is awaited is released at the later of its schedule
+ * time and this burst time, and each such release moves the burst time to one
+ * burst interval after the release. A burst ratio of 0.0 disables the burst
+ * limit, which behaves the same as the average rate limiter.
+ *
+ * <p>Ops which are awaited before their schedule time are released at their
+ * schedule time, as with the average rate limiter, and do not move the burst
+ * time. Motors reserve the schedule a stride at a time, and may await a slot
+ * far ahead of the ops of other motors. If that moved the burst time, the
+ * ops of other motors would be held back behind it, out of schedule order.
+ *
+ * <p>The scheduling delay reported for each op is always measured from
+ * its average schedule time, so any time that an op is held back by the
+ * burst limit is accounted for as delay.
+ */
+public class BurstRateLimiter extends AverageRateLimiter {
+
+    private final AtomicLong burstTimeline = new AtomicLong(Long.MIN_VALUE);
+    // These are set by the super constructor through setRateSpec, so they must not have initializers
+    private double burstRatio;
+    private long burstOpTicks; // Number of nanos representing one grant at burst rate
+    private Gauge<Double> burstRateGauge;
+
+    protected BurstRateLimiter() {
+    }
+
+    /**
+     * Create a burst rate limiter.
+     *
+     * @param def The activity definition for this rate limiter
+     * @param label The label for the rate limiting facet within the activity
+     * @param rateSpec the rate limiter configuration
+     */
+    public BurstRateLimiter(ActivityDef def, String label, RateSpec rateSpec) {
+        super(def, label, rateSpec);
+    }
+
+    @Override
+    protected void init() {
+        this.burstRateGauge = ActivityMetrics.gauge(activityDef, label + ".burst_targetrate_gauge", new RateLimiters.BurstRateGauge(this));
+        super.init();
+    }
+
+    @Override
+    public long acquire(long nanos) {
+        long opScheduleTimeNs = ticksTimeline.getAndAdd(nanos);
+        return awaitSchedule(opScheduleTimeNs, burstRatio == 0.0D ? 0L : (long) (nanos / burstRatio));
+    }
+
+    @Override
+    public long acquire() {
+        return awaitSchedule(ticksTimeline.getAndAdd(getOpNanos()), burstOpTicks);
+    }
+
+    @Override
+    public long awaitSchedule(long opScheduleTimeNs) {
+        return awaitSchedule(opScheduleTimeNs, burstOpTicks);
+    }
+
+    private long awaitSchedule(long opScheduleTimeNs, long burstNanos) {
+        if (burstNanos == 0L) {
+            return super.awaitSchedule(opScheduleTimeNs);
+        }
+
+        long now = getNanoClockTime();
+        if (opScheduleTimeNs >= now) {
+            // not behind schedule, so there is nothing to catch up on
+            return super.awaitSchedule(opScheduleTimeNs);
+        }
+
+        long releaseTimeNs;
+        while (true) {
+            long burstTimeNs = burstTimeline.get();
+            releaseTimeNs = Math.max(opScheduleTimeNs, burstTimeNs);
+            if (burstTimeline.compareAndSet(burstTimeNs, Math.max(releaseTimeNs, now) + burstNanos)) {
+                break;
+            }
+        }
+
+        long delayNs = releaseTimeNs - now;
+        while (delayNs > 0) {
+            LockSupport.parkNanos(delayNs);
+            // threads can spuriously unpark, must retest on wakeup.
+            now = getNanoClockTime();
+            delayNs = releaseTimeNs - now;
+        }
+
+        return reportCoDelay ? now - opScheduleTimeNs : 0L;
+    }
+
+    @Override
+    public void setRateSpec(RateSpec updatingRateSpec) {
+        super.setRateSpec(updatingRateSpec);
+        this.burstRatio = updatingRateSpec.getBurstRatio();
+        this.burstOpTicks = updatingRateSpec.getCalculatedBurstNanos();
+    }
+
+    /**
+     * @return the rate at which callers may catch up to the average rate, in ops/s, or 0.0 if disabled
+     */
+    public double getBurstRate() {
+        return burstRatio * getRate();
+    }
+
+    /**
+     * @return the burst rate while callers are behind the average schedule and catching up,
+     * or the average rate otherwise, in ops/s
+     */
+    public double getEffectiveBurstRate() {
+        if (burstOpTicks > 0L && ticksTimeline.get() < getNanoClockTime()) {
+            return getBurstRate();
+        }
+        return getRate();
+    }
+
+    /**
+     * visible for testing
+     *
+     * @return the earliest time that the next op may be released by the burst limit
+     */
+    public long getBurstTime() {
+        return burstTimeline.get();
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + ", burstTime=" + burstTimeline.get();
+    }
+}
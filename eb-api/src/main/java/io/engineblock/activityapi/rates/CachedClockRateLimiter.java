@@ -0,0 +1,123 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityapi.rates;
+
+import io.engineblock.activityimpl.ActivityDef;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>This rate limiter schedules grants on the same ticks accumulator as
+ * the {@link AverageRateLimiter}, but it avoids calling the system timer
+ * on every grant. Instead, it keeps a shared <em>last-seen nanotime</em>
+ * register, as described in RateLimiterInternals.md. A caller whose
+ * scheduled time is at or before the last-seen nanotime can proceed
+ * without reading the clock at all. Only a caller which is not yet
+ * unblocked by the last-seen nanotime reads the system timer, and in
+ * doing so it publishes a newer view of time for subsequent callers.
+ *
+ * <p>The last-seen nanotime never runs ahead of the system timer, so no
+ * grant is ever released before its scheduled time. The only cost of
+ * the cached view is that a caller may learn it is behind schedule later
+ * than it would with a fresh clock read. For this reason, when reporting
+ * of coordinated omission delay is enabled, the clock is read for every
+ * grant so that the reported delay remains accurate.
+ *
+ * <p>The last-seen register is kept on its own cache line, away from the
+ * ticks accumulator which is written on every grant, so that the read-mostly
+ * fast path does not contend with the accumulator.
+ */
+public class CachedClockRateLimiter extends AverageRateLimiter {
+
+    // The register value sits in the middle of the array, with 64 bytes of padding on either side
+    private static final int LAST_SEEN = 8;
+    private final AtomicLongArray lastSeenNanoTime = new AtomicLongArray(LAST_SEEN * 2 + 1);
+
+    {
+        // System.nanoTime() may be negative, so no time has been seen until the clock is first read
+        lastSeenNanoTime.set(LAST_SEEN, Long.MIN_VALUE);
+    }
+
+    protected CachedClockRateLimiter() {
+    }
+
+    /**
+     * Create a cached clock rate limiter.
+     *
+     * @param def The activity definition for this rate limiter
+     * @param label The label for the rate limiting facet within the activity
+     * @param rateSpec the rate limiter configuration
+     */
+    public CachedClockRateLimiter(ActivityDef def, String label, RateSpec rateSpec) {
+        super(def, label, rateSpec);
+    }
+
+    /**
+     * See {@link CachedClockRateLimiter} for interface docs.
+     *
+     * @param opScheduleTimeNs the scheduled time of this event
+     * @return nanoseconds that have already elapsed since this event's ideal time
+     */
+    @Override
+    public long awaitSchedule(long opScheduleTimeNs) {
+        if (!reportCoDelay && opScheduleTimeNs <= lastSeenNanoTime.get(LAST_SEEN)) {
+            // already unblocked by a view of time which some other caller paid for
+            return 0L;
+        }
+
+        long delayNs = opScheduleTimeNs - updateLastSeen();
+        if (delayNs <= 0) {
+            return reportCoDelay ? -delayNs : 0L;
+        }
+
+        do {
+            LockSupport.parkNanos(delayNs);
+            // threads can spuriously unpark, must retest on wakeup.
+            delayNs = opScheduleTimeNs - updateLastSeen();
+        } while (delayNs > 0);
+
+        return reportCoDelay ? -delayNs : 0L;
+    }
+
+    /**
+     * Read the clock, and publish it as the last-seen nanotime. Concurrent updates
+     * may leave a slightly older value in place, which is safe, since it only means
+     * that a later caller will read the clock again.
+     *
+     * @return the current clock time
+     */
+    private long updateLastSeen() {
+        long now = getNanoClockTime();
+        lastSeenNanoTime.lazySet(LAST_SEEN, now);
+        return now;
+    }
+
+    /**
+     * visible for testing
+     *
+     * @return the last-seen nanotime shared by callers
+     */
+    public long getLastSeenNanoTime() {
+        return lastSeenNanoTime.get(LAST_SEEN);
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + ", lastSeen=" + getLastSeenNanoTime();
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityapi.rates;
+
+import io.engineblock.activityimpl.ActivityDef;
+import io.engineblock.util.EngineBlockFiles;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>This rate limiter schedules ops as an open model arrival process, rather
+ * than at perfectly even intervals. Each call to {@link #acquire()} draws
+ * the gap to the next arrival from an inter-arrival distribution, and
+ * consumes that many nanoseconds from the ticks accumulator. The average
+ * gap is the op time of the target rate, so the long-term rate is the
+ * same as for the {@link AverageRateLimiter}, but ops arrive in the bursts
+ * and lulls that real user traffic has.
+ *
+ * <p>The inter-arrival distribution is selected by the rate limiter type:
+ * <ul>
+ *     <li>{@link RateLimiterType#poisson} - exponentially distributed gaps, as in a Poisson process</li>
+ *     <li>{@link RateLimiterType#uniform} - gaps which are uniformly distributed around the average
+ *     gap, with the jitter given as a fraction of the average gap by the type option (default 1.0)</li>
+ *     <li>{@link RateLimiterType#replay} - gaps which are replayed from a file of arrival timestamps,
+ *     named by the type option. The file has one timestamp in milliseconds per line. It is scaled
+ *     to the target rate, and repeats when it is exhausted.</li>
+ * </ul>
+ *
+ * <p>Since the scheduled time of each op is still taken from the ticks
+ * accumulator, the scheduling delay reported with reportCoDelay is still
+ * measured from the intended start time of each op.
+ *
+ * <p>Batches of permits reserved with {@link #reserve(int)} span the total of
+ * their drawn gaps, but are evenly spaced within the batch, so callers which
+ * need the arrival distribution per op should acquire them one at a time.
+ * See {@link #isEvenlySpaced()}.
+ */
+public class OpenModelRateLimiter extends AverageRateLimiter {
+
+    private LongSupplier arrivalGaps;
+
+    protected OpenModelRateLimiter() {
+    }
+
+    /**
+     * Create an open model rate limiter.
+     *
+     * @param def The activity definition for this rate limiter
+     * @param label The label for the rate limiting facet within the activity
+     * @param rateSpec the rate limiter configuration
+     */
+    public OpenModelRateLimiter(ActivityDef def, String label, RateSpec rateSpec) {
+        super(def, label, rateSpec);
+    }
+
+    @Override
+    public long acquire() {
+        return awaitSchedule(ticksTimeline.getAndAdd(arrivalGaps.getAsLong()));
+    }
+
+    @Override
+    public long reserve(int permits) {
+        long nanos = 0L;
+        for (int i = 0; i < permits; i++) {
+            nanos += arrivalGaps.getAsLong();
+        }
+        return ticksTimeline.getAndAdd(nanos);
+    }
+
+    @Override
+    public boolean isEvenlySpaced() {
+        return false;
+    }
+
+    @Override
+    public void setRateSpec(RateSpec updatingRateSpec) {
+        RateSpec oldRateSpec = getRateSpec();
+        super.setRateSpec(updatingRateSpec);
+        if (arrivalGaps != null && updatingRateSpec.equals(oldRateSpec)) {
+            return;
+        }
+
+        long opNanos = updatingRateSpec.getCalculatedNanos();
+        switch (updatingRateSpec.getType()) {
+            case poisson:
+                this.arrivalGaps = new ExponentialGaps(opNanos);
+                break;
+            case uniform:
+                double jitter = updatingRateSpec.getTypeOption().isEmpty() ? 1.0D : Double.valueOf(updatingRateSpec.getTypeOption());
+                this.arrivalGaps = new UniformGaps(opNanos, jitter);
+                break;
+            case replay:
+                long[] replayGaps = (arrivalGaps instanceof ReplayGaps && updatingRateSpec.getTypeOption().equals(oldRateSpec.getTypeOption()))
+                        ? ((ReplayGaps) arrivalGaps).sourceGaps
+                        : ReplayGaps.readGaps(updatingRateSpec.getTypeOption());
+                this.arrivalGaps = new ReplayGaps(replayGaps, opNanos);
+                break;
+            default:
+                throw new RuntimeException("Rate limiter type " + updatingRateSpec.getType() + " is not an open model arrival process.");
+        }
+    }
+
+    /**
+     * Exponentially distributed gaps, with the given average.
+     */
+    private static class ExponentialGaps implements LongSupplier {
+        private final double opNanos;
+
+        ExponentialGaps(long opNanos) {
+            this.opNanos = opNanos;
+        }
+
+        @Override
+        public long getAsLong() {
+            return (long) (-Math.log(1.0D - ThreadLocalRandom.current().nextDouble()) * opNanos);
+        }
+    }
+
+    /**
+     * Uniformly distributed gaps, within opNanos * (1.0 +/- jitter)
+     */
+    private static class UniformGaps implements LongSupplier {
+        private final double opNanos;
+        private final double jitter;
+
+        UniformGaps(long opNanos, double jitter) {
+            if (jitter < 0.0D || jitter > 1.0D) {
+                throw new RuntimeException("Uniform arrival jitter must be between 0.0 and 1.0, not " + jitter);
+            }
+            this.opNanos = opNanos;
+            this.jitter = jitter;
+        }
+
+        @Override
+        public long getAsLong() {
+            double offset = jitter * (2.0D * ThreadLocalRandom.current().nextDouble() - 1.0D);
+            return (long) (opNanos * (1.0D + offset));
+        }
+    }
+
+    /**
+     * Gaps which are replayed in order from a file of timestamps, scaled to the average gap.
+     * When many threads share the rate limiter, neighboring gaps may be applied in a
+     * different order than they were recorded, but every gap is applied in turn.
+     */
+    private static class ReplayGaps implements LongSupplier {
+        private final long[] sourceGaps;
+        private final long[] gaps;
+        private final AtomicLong index = new AtomicLong(0L);
+
+        ReplayGaps(long[] sourceGaps, long opNanos) {
+            this.sourceGaps = sourceGaps;
+            double sourceMean = (double) Arrays.stream(sourceGaps).sum() / sourceGaps.length;
+            double scale = sourceMean == 0.0D ? 0.0D : opNanos / sourceMean;
+            this.gaps = Arrays.stream(sourceGaps).map(g -> (long) (g * scale)).toArray();
+        }
+
+        @Override
+        public long getAsLong() {
+            return gaps[(int) (index.getAndIncrement() % gaps.length)];
+        }
+
+        /**
+         * Read a file of arrival timestamps in milliseconds, one per line, ignoring blank lines and lines
+         * starting with '#'. The gap after the last arrival, before the file repeats, is the average gap.
+         */
+        static long[] readGaps(String filename) {
+            if (filename.isEmpty()) {
+                throw new RuntimeException("A replayed arrival schedule requires a file name, as in 1000:0.0:false:replay:arrivals.txt");
+            }
+            long[] times = Arrays.stream(EngineBlockFiles.readFile(filename).split("\n"))
+                    .map(String::trim)
+                    .filter(l -> !l.isEmpty() && !l.startsWith("#"))
+                    .mapToLong(l -> (long) (Double.valueOf(l) * 1_000_000.0D))
+                    .toArray();
+            if (times.length < 2) {
+                throw new RuntimeException("A replayed arrival schedule needs at least two timestamps in " + filename);
+            }
+            long[] gaps = new long[times.length];
+            for (int i = 1; i < times.length; i++) {
+                gaps[i - 1] = times[i] - times[i - 1];
+                if (gaps[i - 1] < 0) {
+                    throw new RuntimeException("Arrival timestamps must be in order, but " + times[i] + " follows "
+                            + times[i - 1] + " in " + filename);
+                }
+            }
+            gaps[times.length - 1] = (times[times.length - 1] - times[0]) / (times.length - 1);
+            return gaps;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityapi.rates;
+
+import io.engineblock.activityimpl.ActivityDef;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>This rate limiter changes its target rate over time according to a
+ * {@link RateProfile}, given as the type option of the rate spec, as in
+ * <em>1000,0.0,false,profile,ramp(100,1000,60)</em>. The rate field of the
+ * spec is not used while a profile is set.
+ *
+ * <p>The profile is evaluated on the ticks timeline rather than on the
+ * clock, so the schedule of ops depends only on the profile. Profile time
+ * starts when the rate limiter is started. The timeline is divided into
+ * fixed intervals of {@link #EVALUATION_NANOS}, and the op time for each
+ * interval is calculated from the profile rate at the start of it by
+ * whichever caller first schedules an op within it. All other calls only
+ * compare their scheduled time to the end of the current interval, so
+ * following a profile costs no more per op than a fixed rate.
+ *
+ * <p>Rates below 1 op/s are treated as 1 op/s.
+ */
+public class ProfileRateLimiter extends AverageRateLimiter {
+
+    /**
+     * The length of the timeline intervals at which the profile is evaluated.
+     */
+    public final static long EVALUATION_NANOS = 1_000_000L;
+
+    private RateProfile profile;
+    private long profileStartNanos;
+    // not initialized in the declaration, since it is first used by the super constructor
+    private AtomicLong nextEvaluationNanos;
+    private volatile long profileOpTicks;
+    private volatile double profileRate;
+
+    protected ProfileRateLimiter() {
+    }
+
+    /**
+     * Create a profile rate limiter.
+     *
+     * @param def The activity definition for this rate limiter
+     * @param label The label for the rate limiting facet within the activity
+     * @param rateSpec the rate limiter configuration
+     */
+    public ProfileRateLimiter(ActivityDef def, String label, RateSpec rateSpec) {
+        super(def, label, rateSpec);
+    }
+
+    @Override
+    public synchronized void start() {
+        super.start();
+        this.profileStartNanos = ticksTimeline.get();
+        evaluate(profileStartNanos);
+    }
+
+    @Override
+    public long acquire() {
+        long opScheduleTimeNs = ticksTimeline.getAndAdd(profileOpTicks);
+        if (opScheduleTimeNs >= nextEvaluationNanos.get()) {
+            evaluate(opScheduleTimeNs);
+        }
+        return awaitSchedule(opScheduleTimeNs);
+    }
+
+    @Override
+    public long reserve(int permits) {
+        long opScheduleTimeNs = ticksTimeline.getAndAdd(profileOpTicks * permits);
+        if (opScheduleTimeNs >= nextEvaluationNanos.get()) {
+            evaluate(opScheduleTimeNs);
+        }
+        return opScheduleTimeNs;
+    }
+
+    /**
+     * Calculate the op time for the timeline interval which contains the given time,
+     * unless some other caller already has.
+     */
+    private void evaluate(long timelineNanos) {
+        long next = nextEvaluationNanos.get();
+        if (timelineNanos < next) {
+            return;
+        }
+        long intervalStart = timelineNanos - Math.floorMod(timelineNanos - profileStartNanos, EVALUATION_NANOS);
+        if (nextEvaluationNanos.compareAndSet(next, intervalStart + EVALUATION_NANOS)) {
+            double seconds = (double) (intervalStart - profileStartNanos) / 1_000_000_000D;
+            double rate = Math.max(1.0D, profile.rateAt(seconds));
+            this.profileRate = rate;
+            this.profileOpTicks = (long) (1_000_000_000D / rate);
+        }
+    }
+
+    /**
+     * The op time can change between ops, so callers should acquire each op.
+     * @return false
+     */
+    @Override
+    public boolean isEvenlySpaced() {
+        return false;
+    }
+
+    @Override
+    public long getOpNanos() {
+        return profileOpTicks;
+    }
+
+    /**
+     * @return the current rate of the profile, in ops/s
+     */
+    @Override
+    public double getRate() {
+        return profileRate;
+    }
+
+    @Override
+    public void setRateSpec(RateSpec updatingRateSpec) {
+        RateSpec oldRateSpec = getRateSpec();
+        super.setRateSpec(updatingRateSpec);
+        if (oldRateSpec == null || !updatingRateSpec.getTypeOption().equals(oldRateSpec.getTypeOption())) {
+            this.profile = RateProfiles.parse(updatingRateSpec.getTypeOption());
+            if (nextEvaluationNanos == null) {
+                nextEvaluationNanos = new AtomicLong(Long.MIN_VALUE);
+            }
+            this.nextEvaluationNanos.set(Long.MIN_VALUE);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + ", profileRate=" + profileRate + ", profileStart=" + profileStartNanos;
+    }
+}
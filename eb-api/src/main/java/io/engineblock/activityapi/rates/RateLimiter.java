@@ -19,6 +19,8 @@ package io.engineblock.activityapi.rates;
 
 import io.engineblock.activityapi.core.Startable;
 
+import java.util.concurrent.locks.LockSupport;
+
 public interface RateLimiter extends Startable {
 
     /**
@@ -36,6 +38,65 @@ public interface RateLimiter extends Startable {
      */
     long acquire();
 
+    /**
+     * Reserve schedule time for a batch of ops in a single update of the rate limiter,
+     * rather than one update per op. Permit <em>i</em> of the batch, counting from 0,
+     * is scheduled at the returned time plus <em>i</em> times {@link #getOpNanos()}.
+     * Callers should then use {@link #awaitSchedule(long)} to block until the scheduled
+     * time of each permit as it is used.
+     *
+     * <p>Rate limiters which do not support reservation acquire each permit in turn,
+     * and return a schedule which has already passed for every permit of the batch.</p>
+     * @param permits The number of ops to reserve schedule time for
+     * @return the scheduled time of the first permit, in nanos
+     */
+    default long reserve(int permits) {
+        for (int i = 0; i < permits; i++) {
+            acquire();
+        }
+        return System.nanoTime() - Math.max(0, permits - 1) * getOpNanos();
+    }
+
+    /**
+     * Block until the scheduled time of a permit which was previously reserved
+     * with {@link #reserve(int)}.
+     * @param scheduledTime The scheduled time of the permit, in nanos
+     * @return the number of nanos behind schedule when this method returns
+     */
+    default long awaitSchedule(long scheduledTime) {
+        long delayNs = scheduledTime - System.nanoTime();
+        while (delayNs > 0) {
+            LockSupport.parkNanos(delayNs);
+            delayNs = scheduledTime - System.nanoTime();
+        }
+        return -delayNs;
+    }
+
+    /**
+     * Return permits which were reserved with {@link #reserve(int)} but will not be used,
+     * as when a motor stops before the end of its stride. The returned time is taken off
+     * the end of the shared schedule, so that later ops are not held back by ops which
+     * never ran. This is only possible while nothing has been reserved after the batch,
+     * since other callers may already be waiting for the later slots. Otherwise, the
+     * unused slots stay in the schedule, and are not given to any op.
+     * Rate limiters which do not support reservation have nothing to return.
+     * @param nextScheduledTime The scheduled time of the first unused permit, in nanos
+     * @param permits The number of unused permits, from the end of the reserved batch
+     */
+    default void release(long nextScheduledTime, int permits) {
+    }
+
+    /**
+     * Rate limiters which schedule ops at irregular intervals can not describe
+     * the schedule of a batch reserved by {@link #reserve(int)} with a single op time.
+     * Callers which need the schedule of each op should use {@link #acquire()} for
+     * each op when this returns false, as it does unless a rate limiter supports reservation.
+     * @return true, if the ops of a reserved batch are scheduled at {@link #getOpNanos()} intervals
+     */
+    default boolean isEvenlySpaced() {
+        return false;
+    }
+
     /**
      * Return the total number of nanoseconds behind schedule
      * that this rate limiter is, including the full history across all
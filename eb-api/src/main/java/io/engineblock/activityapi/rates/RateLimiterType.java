@@ -0,0 +1,45 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityapi.rates;
+
+/**
+ * Rate limiter types select the implementation which is created for a {@link RateSpec}
+ * by {@link RateLimiters}.
+ */
+public enum RateLimiterType {
+
+    /** Read the system timer on every grant. See {@link AverageRateLimiter}. */
+    average,
+
+    /** Share a last-seen view of the system timer across callers. See {@link CachedClockRateLimiter}. */
+    cached,
+
+    /** Limit the speed of catching up to the average rate by the burst ratio. See {@link BurstRateLimiter}. */
+    burst,
+
+    /** Schedule ops with exponentially distributed gaps. See {@link OpenModelRateLimiter}. */
+    poisson,
+
+    /** Schedule ops with uniformly jittered gaps. See {@link OpenModelRateLimiter}. */
+    uniform,
+
+    /** Schedule ops with gaps replayed from a file of arrival times. See {@link OpenModelRateLimiter}. */
+    replay,
+
+    /** Change the rate over time according to a rate profile. See {@link ProfileRateLimiter}. */
+    profile
+}
@@ -28,9 +28,32 @@ public class RateLimiters {
     public static synchronized RateLimiter createOrUpdate(ActivityDef def, String label, RateLimiter extant, RateSpec spec) {
 
         if (extant == null) {
-            logger.info("Using average rate limiter for speed: " + spec);
-            return new AverageRateLimiter(def, label, spec);
+            switch (spec.getType()) {
+                case cached:
+                    logger.info("Using cached clock rate limiter for speed: " + spec);
+                    return new CachedClockRateLimiter(def, label, spec);
+                case burst:
+                    logger.info("Using burst rate limiter for speed: " + spec);
+                    return new BurstRateLimiter(def, label, spec);
+                case poisson:
+                case uniform:
+                case replay:
+                    logger.info("Using open model rate limiter for speed: " + spec);
+                    return new OpenModelRateLimiter(def, label, spec);
+                case profile:
+                    logger.info("Using profile rate limiter for speed: " + spec);
+                    return new ProfileRateLimiter(def, label, spec);
+                case average:
+                default:
+                    logger.info("Using average rate limiter for speed: " + spec);
+                    return new AverageRateLimiter(def, label, spec);
+            }
         } else {
+            if (extant.getRateSpec().getType() != spec.getType()) {
+                logger.warn("Rate limiter type can not be changed while running, keeping " +
+                        extant.getRateSpec().getType() + " for " + label + ": " + spec);
+                spec = spec.withType(extant.getRateSpec().getType());
+            }
             extant.setRateSpec(spec);
             return extant;
         }
@@ -63,20 +86,20 @@ public class RateLimiters {
 
         @Override
         public Double getValue() {
-            return rateLimiter.getRateSpec().opsPerSec;
+            return rateLimiter.getRate();
         }
     }
 
     public static class BurstRateGauge implements Gauge<Double> {
-        private final RateLimiter rateLimiter;
+        private final BurstRateLimiter rateLimiter;
 
-        public BurstRateGauge(RateLimiter rateLimiter) {
+        public BurstRateGauge(BurstRateLimiter rateLimiter) {
             this.rateLimiter = rateLimiter;
         }
 
         @Override
         public Double getValue() {
-            return rateLimiter.getRateSpec().getBurstRatio() * rateLimiter.getRateSpec().getRate();
+            return rateLimiter.getEffectiveBurstRate();
         }
     }
 
@@ -0,0 +1,31 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityapi.rates;
+
+/**
+ * A rate profile describes how the target rate of a rate limiter changes over time.
+ * See {@link RateProfiles} for the available profiles.
+ */
+public interface RateProfile {
+
+    /**
+     * @param seconds The time since the start of the profile, in seconds
+     * @return The target rate at that time, in ops/s
+     */
+    double rateAt(double seconds);
+}
@@ -0,0 +1,155 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityapi.rates;
+
+import io.engineblock.util.EngineBlockFiles;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Rate profiles are specified in the form <em>name(arg,...)</em>. Times are in seconds from
+ * the start of the profile, and rates are in ops/s. The available profiles are:
+ * <ul>
+ *     <li><em>ramp(from,to,seconds)</em> - change linearly from one rate to another, and then hold</li>
+ *     <li><em>step(t0,r0,t1,r1,...)</em> - change to rate r<sub>n</sub> at time t<sub>n</sub>, holding each rate until the next</li>
+ *     <li><em>linear(t0,r0,t1,r1,...)</em> - change linearly between each pair of points, holding the first and last rate</li>
+ *     <li><em>sine(mean,amplitude,period)</em> - vary around the mean rate with the given period in seconds</li>
+ *     <li><em>csv(filename)</em> - as with linear, but with one <em>seconds,rate</em> point per line of a file</li>
+ * </ul>
+ */
+public class RateProfiles {
+
+    private final static Pattern profilePattern = Pattern.compile("(?<name>\\w+)\\((?<args>.*)\\)");
+
+    public static RateProfile parse(String spec) {
+        Matcher matcher = profilePattern.matcher(spec.trim());
+        if (!matcher.matches()) {
+            throw new RuntimeException("Rate profiles must be in the form name(arg,...), as in ramp(100,1000,60), not '" + spec + "'");
+        }
+        String name = matcher.group("name");
+        String args = matcher.group("args");
+
+        switch (name) {
+            case "ramp":
+                double[] ramp = numbers(args, 3, spec);
+                return new Linear(new double[]{0.0D, ramp[0], ramp[2], ramp[1]});
+            case "step":
+                return new Step(points(numbers(args, -1, spec), spec));
+            case "linear":
+                return new Linear(points(numbers(args, -1, spec), spec));
+            case "sine":
+                double[] sine = numbers(args, 3, spec);
+                return new Sine(sine[0], sine[1], sine[2]);
+            case "csv":
+                String[] lines = EngineBlockFiles.readFile(args.trim()).split("\n");
+                String csvPoints = Arrays.stream(lines).map(String::trim)
+                        .filter(l -> !l.isEmpty() && !l.startsWith("#"))
+                        .reduce((a, b) -> a + "," + b).orElse("");
+                return new Linear(points(numbers(csvPoints, -1, spec), spec));
+            default:
+                throw new RuntimeException("Unknown rate profile '" + name + "', use one of ramp, step, linear, sine, or csv");
+        }
+    }
+
+    private static double[] numbers(String args, int count, String spec) {
+        double[] numbers = Arrays.stream(args.split(",")).map(String::trim).mapToDouble(Double::valueOf).toArray();
+        if (count >= 0 && numbers.length != count) {
+            throw new RuntimeException("Expected " + count + " numbers for rate profile " + spec);
+        }
+        return numbers;
+    }
+
+    private static double[] points(double[] numbers, String spec) {
+        if (numbers.length < 2 || numbers.length % 2 != 0) {
+            throw new RuntimeException("Expected pairs of time and rate for rate profile " + spec);
+        }
+        for (int i = 2; i < numbers.length; i += 2) {
+            if (numbers[i] < numbers[i - 2]) {
+                throw new RuntimeException("Times must be in order for rate profile " + spec);
+            }
+        }
+        return numbers;
+    }
+
+    /**
+     * Hold each rate from its time until the time of the next point.
+     */
+    public static class Step implements RateProfile {
+        private final double[] points;
+
+        public Step(double[] points) {
+            this.points = points;
+        }
+
+        @Override
+        public double rateAt(double seconds) {
+            double rate = points[1];
+            for (int i = 2; i < points.length && points[i] <= seconds; i += 2) {
+                rate = points[i + 1];
+            }
+            return rate;
+        }
+    }
+
+    /**
+     * Interpolate linearly between points, and hold the first and last rate outside of them.
+     */
+    public static class Linear implements RateProfile {
+        private final double[] points;
+
+        public Linear(double[] points) {
+            this.points = points;
+        }
+
+        @Override
+        public double rateAt(double seconds) {
+            if (seconds <= points[0]) {
+                return points[1];
+            }
+            for (int i = 2; i < points.length; i += 2) {
+                if (seconds < points[i]) {
+                    double fraction = (seconds - points[i - 2]) / (points[i] - points[i - 2]);
+                    return points[i - 1] + fraction * (points[i + 1] - points[i - 1]);
+                }
+            }
+            return points[points.length - 1];
+        }
+    }
+
+    /**
+     * Vary the rate around a mean, starting at the mean and rising first.
+     */
+    public static class Sine implements RateProfile {
+        private final double mean;
+        private final double amplitude;
+        private final double period;
+
+        public Sine(double mean, double amplitude, double period) {
+            this.mean = mean;
+            this.amplitude = amplitude;
+            this.period = period;
+        }
+
+        @Override
+        public double rateAt(double seconds) {
+            return mean + amplitude * Math.sin(2.0D * Math.PI * seconds / period);
+        }
+    }
+}
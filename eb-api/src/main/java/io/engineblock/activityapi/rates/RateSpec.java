@@ -20,6 +20,8 @@ package io.engineblock.activityapi.rates;
 import io.engineblock.activityimpl.ParameterMap;
 import io.engineblock.util.Unit;
 
+import java.util.Arrays;
+
 public class RateSpec {
     /**
      * Target rate in Operations Per Second
@@ -33,6 +35,17 @@ public class RateSpec {
      */
     public boolean reportCoDelay = false;
 
+    /**
+     * The type of rate limiter to create for this spec.
+     */
+    public RateLimiterType type = RateLimiterType.average;
+
+    /**
+     * An option for the type of rate limiter, such as the jitter of a uniform
+     * arrival schedule, or the file name of a replayed arrival schedule.
+     */
+    public String typeOption = "";
+
     public RateSpec(double opsPerSec) {
         this(opsPerSec, 0.0d, false);
     }
@@ -40,9 +53,17 @@ public class RateSpec {
         this(opsPerSec, burstRatio, false);
     }
     public RateSpec(double opsPerSec, double burstRatio, boolean reportCoDelay) {
+        this(opsPerSec, burstRatio, reportCoDelay, RateLimiterType.average);
+    }
+    public RateSpec(double opsPerSec, double burstRatio, boolean reportCoDelay, RateLimiterType type) {
+        this(opsPerSec, burstRatio, reportCoDelay, type, "");
+    }
+    public RateSpec(double opsPerSec, double burstRatio, boolean reportCoDelay, RateLimiterType type, String typeOption) {
         this.opsPerSec = opsPerSec;
         this.burstRatio = burstRatio;
         this.reportCoDelay = reportCoDelay;
+        this.type = type;
+        this.typeOption = typeOption;
     }
 
     public RateSpec(ParameterMap.NamedParameter tuple) {
@@ -53,8 +74,18 @@ public class RateSpec {
     }
 
     public RateSpec(String spec) {
-        String[] specs = spec.split("[,:;]");
+        // The type option is kept whole, since it may be a file name or URL
+        String[] specs = spec.split("[,:;]", 5);
         switch (specs.length) {
+            case 5:
+                typeOption = specs[4];
+            case 4:
+                try {
+                    type = RateLimiterType.valueOf(specs[3].toLowerCase());
+                } catch (IllegalArgumentException e) {
+                    throw new RuntimeException("Unknown rate limiter type '" + specs[3] + "', use one of "
+                            + Arrays.toString(RateLimiterType.values()));
+                }
             case 3:
                 reportCoDelay = (specs[2].toLowerCase().matches("co|true|report"));
             case 2:
@@ -63,26 +94,43 @@ public class RateSpec {
                 opsPerSec = Unit.doubleCountFor(specs[0]).orElseThrow(() -> new RuntimeException("Unparsable:" + specs[0]));
                 break;
             default:
-                throw new RuntimeException("Rate specs must be either '<rate>' or '<rate>:<burstRatio>' as in 5000.0 or 5000.0:1.0");
+                throw new RuntimeException("Rate specs must be either '<rate>', '<rate>:<burstRatio>', " +
+                        "'<rate>:<burstRatio>:<report>', '<rate>:<burstRatio>:<report>:<type>' or '<rate>:<burstRatio>:<report>:<type>:<option>'" +
+                        " as in 5000.0 or 5000.0:1.0 or 5000.0:1.0:false:cached or 5000.0:0.0:false:uniform:0.5");
         }
     }
 
     public String toString() {
         return "rate:" + opsPerSec
                 + ", burst:" + burstRatio
-                + ", report:" + reportCoDelay;
+                + ", report:" + reportCoDelay
+                + ", type:" + type
+                + (typeOption.isEmpty() ? "" : ", option:" + typeOption);
+    }
+
+    /**
+     * @return this rate spec in the parameter form which {@link #RateSpec(String)} parses, as in
+     * 5000.0,1.1,false,average
+     */
+    public String toSpec() {
+        return opsPerSec + "," + burstRatio + "," + reportCoDelay + "," + type
+                + (typeOption.isEmpty() ? "" : "," + typeOption);
     }
 
     public RateSpec withOpsPerSecond(double rate) {
-        return new RateSpec(rate,this.burstRatio,this.reportCoDelay);
+        return new RateSpec(rate,this.burstRatio,this.reportCoDelay,this.type,this.typeOption);
     }
 
     public RateSpec withReportCoDelay(boolean reportCoDelay) {
-        return new RateSpec(this.opsPerSec,this.burstRatio,reportCoDelay);
+        return new RateSpec(this.opsPerSec,this.burstRatio,reportCoDelay,this.type,this.typeOption);
     }
 
     public RateSpec withBurstRatio(double burstRatio) {
-        return new RateSpec(this.opsPerSec, burstRatio, this.reportCoDelay);
+        return new RateSpec(this.opsPerSec, burstRatio, this.reportCoDelay,this.type,this.typeOption);
+    }
+
+    public RateSpec withType(RateLimiterType type) {
+        return new RateSpec(this.opsPerSec, this.burstRatio, this.reportCoDelay, type, this.typeOption);
     }
 
 
@@ -117,7 +165,9 @@ public class RateSpec {
 
         if (Double.compare(rateSpec.opsPerSec, opsPerSec) != 0) return false;
         if (Double.compare(rateSpec.burstRatio, burstRatio) != 0) return false;
-        return reportCoDelay == rateSpec.reportCoDelay;
+        if (reportCoDelay != rateSpec.reportCoDelay) return false;
+        if (type != rateSpec.type) return false;
+        return typeOption.equals(rateSpec.typeOption);
     }
 
     @Override
@@ -129,10 +179,20 @@ public class RateSpec {
         temp = Double.doubleToLongBits(burstRatio);
         result = 31 * result + (int) (temp ^ (temp >>> 32));
         result = 31 * result + (reportCoDelay ? 1 : 0);
+        result = 31 * result + type.hashCode();
+        result = 31 * result + typeOption.hashCode();
         return result;
     }
 
     public boolean getReportCoDelay() {
         return reportCoDelay;
     }
+
+    public RateLimiterType getType() {
+        return type;
+    }
+
+    public String getTypeOption() {
+        return typeOption;
+    }
 }
@@ -21,11 +21,15 @@ import io.engineblock.activityapi.core.RunState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Holds the state of a slot, allows only valid transitions, and shares the
  * slot state as
+ *
+ * <p>Each transition notifies any threads waiting in {@link #awaitSlotState(long, RunState...)},
+ * so that callers which need a motor to reach a state are released as soon as it does.</p>
  */
 public class SlotStateTracker {
     private final AtomicReference<RunState> slotState = new AtomicReference<>(RunState.Uninitialized);
@@ -65,7 +69,42 @@ public class SlotStateTracker {
             logger.trace("retrying transition from:" + from + " to:" + to);
         }
         logger.trace("TRANSITION[" + slotId + "]: " + from + " ==> " + to);
+        notifyAll();
+    }
 
+    /**
+     * Wait for the slot to enter any of the given states. This returns as soon as the
+     * state is entered, rather than polling for it.
+     *
+     * @param millisToWait The maximum time to wait, in milliseconds
+     * @param awaitingState Any of the states to wait for
+     * @return true, if the slot is in one of the given states
+     */
+    public synchronized boolean awaitSlotState(long millisToWait, RunState... awaitingState) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millisToWait);
+        while (!isInState(awaitingState)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                wait(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return isInState(awaitingState);
+            }
+        }
+        return true;
+    }
+
+    private boolean isInState(RunState... states) {
+        RunState current = slotState.get();
+        for (RunState state : states) {
+            if (current == state) {
+                return true;
+            }
+        }
+        return false;
     }
 
 
@@ -60,6 +60,11 @@ public class AtomicInput implements Input, ActivityDefObserver, ProgressCapable
 
     @Override
     public CycleSegment getInputSegment(int stride) {
+        return getInputSegment(stride, null);
+    }
+
+    @Override
+    public CycleSegment getInputSegment(int stride, CycleSegment reusable) {
         while (true) {
             long current = this.cycleValue.get();
             long next = current + stride;
@@ -71,16 +76,23 @@ public class AtomicInput implements Input, ActivityDefObserver, ProgressCapable
                     if (cycleValue.compareAndSet(current,min.get()+stride)) {
                         recycleValue.getAndIncrement();
                         logger.trace("recycling input  for " + activityDef.getAlias() + " recycle:" + recycleValue.get());
-                        return new InputInterval.Segment(min.get(), min.get()+stride);
+                        return segmentFor(min.get(), min.get()+stride, reusable);
                     }
                 }
             }
             if (cycleValue.compareAndSet(current, next)) {
-                return new InputInterval.Segment(current, next);
+                return segmentFor(current, next, reusable);
             }
         }
     }
 
+    private static InputInterval.Segment segmentFor(long start, long afterEnd, CycleSegment reusable) {
+        if (reusable instanceof InputInterval.Segment) {
+            return ((InputInterval.Segment) reusable).reset(start, afterEnd);
+        }
+        return new InputInterval.Segment(start, afterEnd);
+    }
+
     @Override
     public double getProgress() {
         return (double) (cycleValue.get() - min.get());
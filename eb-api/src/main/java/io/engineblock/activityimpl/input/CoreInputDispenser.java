@@ -30,21 +30,29 @@ public class CoreInputDispenser implements InputDispenser, ActivitiesAware {
 
     private Activity activity;
     private Map<String, Activity> activities;
-    private Input input;
+    private volatile InputDispenser inputDispenser;
 
     public CoreInputDispenser(Activity activity) {
         this.activity = activity;
     }
 
+    /**
+     * The input type's dispenser is kept rather than the first input it provides,
+     * so that input types which provide an input per slot, like workstealing,
+     * are asked for the input of each slot.
+     */
     @Override
     public Input getInput(long slot) {
-        if (this.input == null) {
-            this.input = createInput(slot);
+        if (this.inputDispenser == null) {
+            createInputDispenser();
         }
-        return input;
+        return inputDispenser.getInput(slot);
     }
 
-    private synchronized Input createInput(long slot) {
+    private synchronized void createInputDispenser() {
+        if (this.inputDispenser != null) {
+            return;
+        }
         SimpleConfig conf = new SimpleConfig(activity, "input");
         String inputType = conf.getString("type").orElse("targetrate");
         InputType inputTypeImpl = InputType.FINDER.getOrThrow(inputType);
@@ -52,8 +60,7 @@ public class CoreInputDispenser implements InputDispenser, ActivitiesAware {
         if (inputDispenser instanceof ActivitiesAware) {
             ((ActivitiesAware)inputDispenser).setActivitiesMap(activities);
         }
-        Input input = inputDispenser.getInput(slot);
-        return input;
+        this.inputDispenser = inputDispenser;
     }
 
     @Override
@@ -36,6 +36,11 @@ public class InputInterval implements Input {
 
     @Override
     public CycleSegment getInputSegment(int segmentLength) {
+        return getInputSegment(segmentLength, null);
+    }
+
+    @Override
+    public CycleSegment getInputSegment(int segmentLength, CycleSegment reusable) {
         while (true) {
             int current = next.intValue();
             int nextCurrent = current + segmentLength;
@@ -43,6 +48,9 @@ public class InputInterval implements Input {
                 return null;
             }
             if (next.compareAndSet(current,nextCurrent)) {
+                if (reusable instanceof Segment) {
+                    return ((Segment) reusable).reset(current,nextCurrent);
+                }
                 return new Segment(current,nextCurrent);
             }
             // in all other cases, there was a CAS race condition, and we want to retry
@@ -55,8 +63,8 @@ public class InputInterval implements Input {
 
     public static class Segment implements CycleSegment {
 
-        private final long afterEnd;
-        private final long start;
+        private long afterEnd;
+        private long start;
         private long next;
 
         public Segment(long start, long afterEnd) {
@@ -65,6 +73,19 @@ public class InputInterval implements Input {
             this.next = start;
         }
 
+        /**
+         * Reuse this segment for another interval.
+         * @param start The first cycle, inclusive
+         * @param afterEnd The last cycle, exclusive
+         * @return this Segment, for method chaining
+         */
+        public Segment reset(long start, long afterEnd) {
+            this.start = start;
+            this.afterEnd = afterEnd;
+            this.next = start;
+            return this;
+        }
+
         @Override
         public long nextCycle() {
             if (next < afterEnd) {
@@ -87,6 +108,11 @@ public class InputInterval implements Input {
             return next >= afterEnd;
         }
 
+        @Override
+        public int getRemainingCycles() {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0L, afterEnd - next));
+        }
+
 
         public String toString() {
             return "InputInterval.Segment(" + start + "," + afterEnd + "]: next=" + next;
@@ -0,0 +1,304 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityimpl.input;
+
+import io.engineblock.activityapi.core.ActivityDefObserver;
+import io.engineblock.activityapi.cyclelog.buffers.cycles.CycleSegment;
+import io.engineblock.activityapi.input.CanCountCycles;
+import io.engineblock.activityapi.input.Input;
+import io.engineblock.activityimpl.ActivityDef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * <p>This input divides the cycle range of an activity into one range per motor slot,
+ * so that each motor takes segments from its own range without contending with other
+ * motors. When a motor has used up its range, it steals the upper half of the largest
+ * remaining range of another motor. This keeps all motors busy until the end of the
+ * run, even when the service times of ops vary widely between motors.</p>
+ *
+ * <p>Each slot sees its own {@link Input} view, provided by {@link #forSlot(long)}.
+ * Ranges are divided on stride boundaries relative to the first cycle, so that every
+ * segment is a whole stride, except possibly the last one before the end cycle.
+ * Since cycles are not handed out in order across motors, this input is not
+ * contiguous, but it can count its cycles, since every cycle in the range is
+ * provided once. Recycles are not supported.</p>
+ *
+ * <p>Steals are made one at a time, and the stolen cycles are moved with the locks of
+ * both ranges held, so that a slot which looks for work never sees them in neither range
+ * and finishes early.</p>
+ */
+public class WorkStealingInput implements ActivityDefObserver, ProgressCapable, CanCountCycles {
+    private final static Logger logger = LoggerFactory.getLogger(WorkStealingInput.class);
+
+    private final ActivityDef activityDef;
+    private final Object stealLock = new Object();
+    private volatile Range[] ranges = new Range[0];
+    private volatile long min = 0L;
+    private volatile long max = Long.MIN_VALUE;
+
+    public WorkStealingInput(ActivityDef activityDef) {
+        this.activityDef = activityDef;
+        onActivityDefUpdate(activityDef);
+    }
+
+    /**
+     * @param slot The motor slot
+     * @return an input which takes segments from the range of the given slot first
+     */
+    public synchronized Input forSlot(long slot) {
+        if (slot >= ranges.length) {
+            Range[] grown = Arrays.copyOf(ranges, (int) slot + 1);
+            for (int i = ranges.length; i < grown.length; i++) {
+                grown[i] = new Range(i, max, max);
+            }
+            ranges = grown;
+        }
+        return new SlotInput(ranges[(int) slot]);
+    }
+
+    private CycleSegment getInputSegment(Range own, int segmentLength, CycleSegment reusable) {
+        while (true) {
+            long start;
+            long afterEnd;
+            synchronized (own) {
+                start = own.next;
+                afterEnd = Math.min(start + segmentLength, own.end);
+                own.next = afterEnd;
+            }
+            if (start < afterEnd) {
+                return segmentFor(start, afterEnd, reusable);
+            }
+            if (!steal(own, segmentLength)) {
+                logger.debug("Exhausted input for " + activityDef.getAlias());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Move the upper half of the largest other range to the given range. If the largest
+     * range has only one segment left, it is moved whole.
+     * @return true, if any cycles were moved
+     */
+    private boolean steal(Range own, int segmentLength) {
+        synchronized (stealLock) {
+            Range[] snapshot = this.ranges;
+            while (true) {
+                Range victim = null;
+                long largest = 0L;
+                for (Range range : snapshot) {
+                    long remaining = range.remaining();
+                    if (range != own && remaining > largest) {
+                        victim = range;
+                        largest = remaining;
+                    }
+                }
+                if (victim == null) {
+                    return false;
+                }
+
+                // both ranges are locked, in slot order, so the moved cycles are always in one of them
+                Range first = victim.slot < own.slot ? victim : own;
+                Range second = first == victim ? own : victim;
+                synchronized (first) {
+                    synchronized (second) {
+                        long remaining = victim.end - victim.next;
+                        if (remaining <= 0) {
+                            continue;
+                        }
+                        long keptSegments = ((remaining + segmentLength - 1) / segmentLength) / 2;
+                        long start = victim.next + keptSegments * segmentLength;
+                        own.next = start;
+                        own.end = victim.end;
+                        victim.end = start;
+                        return true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static InputInterval.Segment segmentFor(long start, long afterEnd, CycleSegment reusable) {
+        if (reusable instanceof InputInterval.Segment) {
+            return ((InputInterval.Segment) reusable).reset(start, afterEnd);
+        }
+        return new InputInterval.Segment(start, afterEnd);
+    }
+
+    /**
+     * Divide the cycle range into a range per slot, on stride boundaries.
+     */
+    private synchronized void partition(int slots) {
+        long stride = activityDef.getParams().getOptionalInteger("stride").orElse(1);
+        long strides = (max - min + stride - 1) / stride;
+        Range[] partitioned = new Range[Math.max(slots, ranges.length)];
+        for (int i = 0; i < partitioned.length; i++) {
+            long start = Math.min(max, min + (strides * i / slots) * stride);
+            long afterEnd = i + 1 >= slots ? max : Math.min(max, min + (strides * (i + 1) / slots) * stride);
+            if (i < ranges.length) {
+                Range range = ranges[i];
+                synchronized (range) {
+                    range.next = start;
+                    range.end = afterEnd;
+                }
+                partitioned[i] = range;
+            } else {
+                partitioned[i] = new Range(i, start, afterEnd);
+            }
+        }
+        this.ranges = partitioned;
+    }
+
+    @Override
+    public double getProgress() {
+        long remaining = 0L;
+        for (Range range : ranges) {
+            remaining += Math.max(0L, range.remaining());
+        }
+        return (double) (max - min - remaining);
+    }
+
+    @Override
+    public double getTotal() {
+        return (double) (max - min);
+    }
+
+    @Override
+    public long getCycleCount(long min, long nextMin) {
+        return Math.max(0L, Math.min(nextMin, max) - Math.max(min, this.min));
+    }
+
+    @Override
+    public BitSet getExpectedCycles(long min, long nextMin) {
+        BitSet expected = new BitSet((int) (nextMin - min));
+        if (getCycleCount(min, nextMin) > 0L) {
+            expected.set((int) (Math.max(min, this.min) - min), (int) (Math.min(nextMin, max) - min));
+        }
+        return expected;
+    }
+
+    @Override
+    public synchronized void onActivityDefUpdate(ActivityDef activityDef) {
+        if (activityDef.getCycleCount() == 0) {
+            if (activityDef.getParams().containsKey("cycles")) {
+                throw new RuntimeException("You specified cycles, but the range specified means zero cycles: " + activityDef.getParams().get("cycles"));
+            }
+        }
+        if (activityDef.getParams().getOptionalString("recycles").isPresent()) {
+            throw new RuntimeException("recycles is not supported with the workstealing input type");
+        }
+
+        long startCycle = activityDef.getStartCycle();
+        long endCycle = activityDef.getEndCycle();
+        if (startCycle > endCycle) {
+            throw new InvalidParameterException("min (" + startCycle + ") must be less than or equal to max (" + endCycle + ")");
+        }
+
+        if (startCycle != min || endCycle != max) {
+            this.min = startCycle;
+            this.max = endCycle;
+            partition(Math.max(1, activityDef.getThreads()));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WorkStealingInput{" +
+                "min=" + min +
+                ", max=" + max +
+                ", ranges=" + Arrays.toString(ranges) +
+                ", activity=" + activityDef.getAlias() +
+                '}';
+    }
+
+    private final static class Range {
+        private final int slot;
+        private volatile long next;
+        private volatile long end;
+
+        private Range(int slot, long next, long end) {
+            this.slot = slot;
+            this.next = next;
+            this.end = end;
+        }
+
+        /**
+         * @return the number of cycles remaining, which is only approximate unless synchronized
+         */
+        private long remaining() {
+            return end - next;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "[" + next + "," + end + ")";
+        }
+    }
+
+    private class SlotInput implements Input, ActivityDefObserver, ProgressCapable, CanCountCycles {
+        private final Range own;
+
+        private SlotInput(Range own) {
+            this.own = own;
+        }
+
+        @Override
+        public CycleSegment getInputSegment(int segmentLength) {
+            return WorkStealingInput.this.getInputSegment(own, segmentLength, null);
+        }
+
+        @Override
+        public CycleSegment getInputSegment(int segmentLength, CycleSegment reusable) {
+            return WorkStealingInput.this.getInputSegment(own, segmentLength, reusable);
+        }
+
+        @Override
+        public void onActivityDefUpdate(ActivityDef activityDef) {
+            WorkStealingInput.this.onActivityDefUpdate(activityDef);
+        }
+
+        @Override
+        public double getProgress() {
+            return WorkStealingInput.this.getProgress();
+        }
+
+        @Override
+        public double getTotal() {
+            return WorkStealingInput.this.getTotal();
+        }
+
+        @Override
+        public long getCycleCount(long min, long nextMin) {
+            return WorkStealingInput.this.getCycleCount(min, nextMin);
+        }
+
+        @Override
+        public BitSet getExpectedCycles(long min, long nextMin) {
+            return WorkStealingInput.this.getExpectedCycles(min, nextMin);
+        }
+
+        @Override
+        public String toString() {
+            return "WorkStealingInput.SlotInput{" + own + " of " + WorkStealingInput.this + "}";
+        }
+    }
+}
@@ -18,17 +18,33 @@
 package io.engineblock.activityimpl.marker;
 
 import io.engineblock.activityapi.cyclelog.buffers.CycleResultSegmentsReadable;
+import io.engineblock.activityapi.cyclelog.buffers.results.CycleResult;
+import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultArray;
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsIntervalSegment;
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsSegment;
+import io.engineblock.activityapi.cyclelog.buffers.results.MutableCycleResult;
+import io.engineblock.activityapi.input.CanCountCycles;
 
 
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A simple bytebuffer marker implementation
+ * <p>
+ * A sparse extent is used when only some of the cycles in its range will be marked, as
+ * with cyclelog or filtered inputs. It is sized to the number of cycles which the input
+ * will provide in the range, rather than to the range itself. The expected cycles are
+ * kept as a bitmap of the range, and each mark clears the bit of its cycle, so that a
+ * cycle which was not expected, or which was already marked, is rejected. Each mark
+ * then claims the next slot, and records the offset of the cycle along with its result. The extent is filled
+ * when every expected cycle is marked, and the marked cycles are put in order when the
+ * extent is handed off.
  */
 public class ByteTrackerExtent implements CycleResultSegmentsReadable {
 
@@ -37,6 +53,11 @@ public class ByteTrackerExtent implements CycleResultSegmentsReadable {
     private final AtomicInteger totalServed; // the total number of served values
     byte[] markerData;
     private int size; // max-min
+    private final int capacity; // the number of cycles which will be marked
+    private final int[] offsets; // the cycle offset of each slot, for sparse extents only
+    private final AtomicInteger claimed; // the number of claimed slots, for sparse extents only
+    private final AtomicLongArray unmarked; // the expected cycles which are not yet marked, for sparse extents only
+    private final CanCountCycles counter;
     private AtomicReference<ByteTrackerExtent> nextExtent = new AtomicReference<>();
     private boolean filled = false;
 
@@ -49,6 +70,11 @@ public class ByteTrackerExtent implements CycleResultSegmentsReadable {
     public ByteTrackerExtent(long min, long nextMin) {
         this.min = min;
         this.size = (int) (nextMin - min);
+        this.capacity = size;
+        this.offsets = null;
+        this.claimed = null;
+        this.unmarked = null;
+        this.counter = null;
         markerData = new byte[size];
         totalMarked = new AtomicInteger(0);
         totalServed = new AtomicInteger(0);
@@ -56,6 +82,31 @@ public class ByteTrackerExtent implements CycleResultSegmentsReadable {
 //        currentValue = new AtomicLong(min);
     }
 
+    /**
+     * Create a sparse marker extent, which holds only the cycles that the counter
+     * expects in the range. Extents which are added after it are also sparse.
+     *
+     * @param min     the first logical cycle of the range
+     * @param nextMin the first logical cycle of the next range
+     * @param counter the source of the expected cycle count in each range
+     */
+    public ByteTrackerExtent(long min, long nextMin, CanCountCycles counter) {
+        this.min = min;
+        this.size = (int) (nextMin - min);
+        BitSet expected = counter.getExpectedCycles(min, nextMin);
+        if (expected.length() > size) {
+            throw new RuntimeException("Unable to expect cycle " + (min + expected.length() - 1) + " in the range [" + min + "," + nextMin + ")");
+        }
+        this.capacity = expected.cardinality();
+        this.offsets = new int[capacity];
+        this.claimed = new AtomicInteger(0);
+        this.unmarked = new AtomicLongArray(Arrays.copyOf(expected.toLongArray(), (size + 63) / 64));
+        this.counter = counter;
+        markerData = new byte[capacity];
+        totalMarked = new AtomicInteger(0);
+        totalServed = new AtomicInteger(0);
+    }
+
     public ByteTrackerExtent(long min, int[] ints) {
         this(min, min + ints.length);
         for (int i = 0; i < ints.length; i++) {
@@ -89,12 +140,25 @@ public class ByteTrackerExtent implements CycleResultSegmentsReadable {
             if (next != null) {
                 return next.markResult(cycle, result);
             } else {
-                return (min + size) - cycle; // how long were we? ( a negative number )
+                return (min + size) - cycle - 1; // how long were we? ( a negative number, even just past the end )
             }
         }
 
         int position = (int) (cycle - min);
         byte resultCode = (byte) (result & 127);
+        if (offsets != null) {
+            if (!claimUnmarked(position)) {
+                throw new RuntimeException("Unable to mark cycle " + cycle + ", since it is not one of the expected cycles in "
+                        + rangeSummary() + ", or it was already marked.");
+            }
+            int slot = claimed.getAndIncrement();
+            if (slot >= capacity) {
+                throw new RuntimeException("Unable to mark cycle " + cycle + ", since all " + capacity
+                        + " expected cycles in " + rangeSummary() + " were already marked.");
+            }
+            offsets[slot] = position;
+            position = slot;
+        }
         try {
             markerData[position] = resultCode;
         } catch (Exception e) {
@@ -102,10 +166,40 @@ public class ByteTrackerExtent implements CycleResultSegmentsReadable {
         }
         int i = totalMarked.incrementAndGet();
 
-        return (size - i);
+        return (capacity - i);
+    }
+
+    /**
+     * Clear the bit of an expected cycle, if it is still set.
+     * @param position The offset of the cycle in the range
+     * @return true, if the cycle was expected and not yet marked
+     */
+    private boolean claimUnmarked(int position) {
+        int word = position >>> 6;
+        long bit = 1L << position;
+        while (true) {
+            long bits = unmarked.get(word);
+            if ((bits & bit) == 0L) {
+                return false;
+            }
+            if (unmarked.compareAndSet(word, bits, bits & ~bit)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true if this extent holds only the expected cycles of its range
+     */
+    public boolean isSparse() {
+        return offsets != null;
     }
 
-    public CycleResultsIntervalSegment getRemainingSegment() {
+    /**
+     * @return the marked results which have not been served yet, in cycle order, or null if there are none.
+     * For sparse extents, this is only valid after all marking threads are done with the extent.
+     */
+    public CycleResultsSegment getRemainingSegment() {
 
 //        if (!filled) {
 //            filled = isFullyFilled(); // eagerly evaluate fill until it is known to be filled
@@ -120,12 +214,28 @@ public class ByteTrackerExtent implements CycleResultSegmentsReadable {
             return null;
         }
         if (totalServed.compareAndSet(current, next)) {
-            return CycleResultsIntervalSegment.forData(current + min, markerData, current, next);
+            if (offsets != null) {
+                return getSortedSegment(current, next);
+            }
+            return CycleResultsIntervalSegment.forData(current + min, markerData, current, next - current);
         } else {
             throw new RuntimeException("error while attempting to consume remainder of data in extent from position " + current);
         }
     }
 
+    private CycleResultsSegment getSortedSegment(int fromSlot, int toSlot) {
+        long[] marks = new long[toSlot - fromSlot];
+        for (int slot = fromSlot; slot < toSlot; slot++) {
+            marks[slot - fromSlot] = ((long) offsets[slot] << 8) | markerData[slot];
+        }
+        Arrays.sort(marks);
+        CycleResult[] cycleResults = new CycleResult[marks.length];
+        for (int i = 0; i < marks.length; i++) {
+            cycleResults[i] = new MutableCycleResult(min + (marks[i] >>> 8), (int) (marks[i] & 0xFF));
+        }
+        return new CycleResultArray(cycleResults);
+    }
+
 //    @Override
 //    public CycleResultsIntervalSegment getCycleResultsSegment(int stride) {
 //        if (!filled) {
@@ -153,6 +263,7 @@ public class ByteTrackerExtent implements CycleResultSegmentsReadable {
         StringBuilder sb = new StringBuilder();
         sb.append("(").append(min).append(",").append(min + size).append("): ")
                 .append(", getCount=").append(this.size)
+                .append(", expected=").append(this.capacity)
                 .append(", marked=").append(this.totalMarked.get())
                 .append(", served=").append(this.totalServed.get());
         sb.append(" data=");
@@ -175,7 +286,7 @@ public class ByteTrackerExtent implements CycleResultSegmentsReadable {
     }
 
     public boolean isFullyFilled() {
-        return (totalMarked.get() == size);
+        return (totalMarked.get() == capacity);
     }
 
 //    public boolean isFullyServed() {
@@ -200,15 +311,32 @@ public class ByteTrackerExtent implements CycleResultSegmentsReadable {
      * @return The new extent that was created.
      */
     public ByteTrackerExtent extend() {
+        return extend(Long.MAX_VALUE);
+    }
+
+    /**
+     * Add another extent after the last known extent, as in {@link #extend()}, but
+     * do not extend past the given limit. The last extent before the limit may be
+     * shorter than this one.
+     *
+     * @param limit The first cycle which may not be included in any extent
+     * @return The new extent that was created, or null if the last extent already reaches the limit
+     */
+    public ByteTrackerExtent extend(long limit) {
 
         ByteTrackerExtent lastExtent = this;
         while (lastExtent.getNextExtent().get() != null) {
             lastExtent = lastExtent.getNextExtent().get();
         }
 
-        ByteTrackerExtent newLastExtent = new ByteTrackerExtent(
-                lastExtent.getMin() + size, lastExtent.getMin() + (size * 2)
-        );
+        long nextMin = lastExtent.getMin() + lastExtent.getSize();
+        if (nextMin >= limit) {
+            return null;
+        }
+        long newNextMin = Math.min(nextMin + size, limit);
+        ByteTrackerExtent newLastExtent = (counter != null)
+                ? new ByteTrackerExtent(nextMin, newNextMin, counter)
+                : new ByteTrackerExtent(nextMin, newNextMin);
 
         if (!lastExtent.getNextExtent().compareAndSet(null, newLastExtent)) {
             throw new RuntimeException("There should be no contention for extending the extents. If this occurs, then" +
@@ -226,6 +354,13 @@ public class ByteTrackerExtent implements CycleResultSegmentsReadable {
         return size;
     }
 
+    /**
+     * @return the number of cycles which will be marked in this extent, which is the size unless it is sparse
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
     public int getChainSize() {
         return 1 + ((nextExtent.get() == null) ? 0 : nextExtent.get().getChainSize());
     }
@@ -237,6 +372,9 @@ public class ByteTrackerExtent implements CycleResultSegmentsReadable {
 
     @Override
     public Iterator<CycleResultsSegment> iterator() {
+        if (offsets != null) {
+            return Collections.singletonList(getSortedSegment(0, totalMarked.get())).iterator();
+        }
         return new SegmentIterator(min, this.markerData);
     }
 
@@ -19,19 +19,18 @@ package io.engineblock.activityimpl.marker;
 
 import io.engineblock.activityapi.core.Activity;
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResult;
-import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsIntervalSegment;
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsSegment;
+import io.engineblock.activityapi.input.CanCountCycles;
+import io.engineblock.activityapi.input.Input;
 import io.engineblock.activityapi.output.Output;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This is the default cycle output implementation for EngineBlock when
@@ -39,46 +38,84 @@ import java.util.concurrent.locks.ReentrantLock;
  * <p>
  * This cycle marker wraps another tracking structure in order to
  * allow for flexible buffering methods. The extents are buffer segments
- * which can be managed atomically. They are chained here in two chains:
- * The marking chain and the tracking chain. When the atomic marking head
- * is non-null, then marking is possible, but marking calls block otherwise.
- * The same is true for the tracking head element.
+ * which can be managed atomically. They are chained from the atomic marking
+ * head, with up to maxExtents extents after the head.
  * <p>
- * The nowMarking and nowTracking conditions are meant to be locked and awaited
- * by marking and tracking calls respectively. Conversely, they are expected
- * to be signaled by tracking and marking calls.
+ * Marking a cycle is a byte write and an atomic increment in the extent which
+ * holds the cycle, with no lock. The thread which completes an extent hands off
+ * the filled extents at the head of the chain to the readers, in order. If another
+ * thread is already handing off extents, it leaves them to that thread, which
+ * checks the head again before it is done. A cycle which is past the last extent
+ * waits, without locking, until the head has been handed off and the chain extended.
  * <p>
- * This implementation needs to be adapted to handle early exit of either
- * marker or tracker threads with no deadlock.
+ * Extents need not evenly divide the cycle range. The last extent of the range is
+ * shortened to end at the end of the range.
+ * <p>
+ * Inputs which are not contiguous, like cyclelog inputs or filtered inputs, may still
+ * be used if they can count the cycles they will provide in a range, as with
+ * {@link CanCountCycles}, and they provide their cycles in cycle order. Then each extent is sparse, and holds only the expected cycles
+ * of its range, so it is filled when those are marked. Extents in which no cycles are
+ * expected are handed off as soon as they reach the head, with nothing to emit.
  */
 public class ContiguousOutputChunker implements Output {
 
     private final static Logger logger = LoggerFactory.getLogger(ContiguousOutputChunker.class);
+    public final static int DEFAULT_EXTENT_SIZE = 1_000_000;
+
     private final int extentSize;
     private final int maxExtents;
-    private List<Output> readers = new ArrayList<>();
+    private final long limit;
+    private final CanCountCycles counter;
+    private List<Output> readers = new CopyOnWriteArrayList<>();
     private AtomicLong min;
     private AtomicLong nextMin;
     private AtomicReference<ByteTrackerExtent> markingExtents = new AtomicReference<>();
-    private ReentrantLock lock = new ReentrantLock(false);
-    private Condition nowMarking = lock.newCondition();
-    private Semaphore mutex = new Semaphore(1, false);
+    private AtomicBoolean handingOff = new AtomicBoolean(false);
 
     public ContiguousOutputChunker(long min, long nextRangeMin, int extentSize, int maxExtents) {
+        this(min, nextRangeMin, extentSize, maxExtents, false);
+    }
+
+    /**
+     * @param bounded If true, no extent extends past nextRangeMin, and cycles past it may not be marked
+     */
+    ContiguousOutputChunker(long min, long nextRangeMin, int extentSize, int maxExtents, boolean bounded) {
+        this.min = new AtomicLong(min);
+        this.nextMin = new AtomicLong(nextRangeMin);
+        this.extentSize = extentSize;
+        this.maxExtents = maxExtents;
+        this.limit = bounded ? nextRangeMin : Long.MAX_VALUE;
+        this.counter = null;
+        initExtents();
+    }
+
+    /**
+     * Track only the cycles which the counter expects, in sparse extents. The range is bounded.
+     * @param counter The source of the expected cycle count in each extent
+     */
+    ContiguousOutputChunker(long min, long nextRangeMin, int extentSize, int maxExtents, CanCountCycles counter) {
+        requireCycleOrder(counter);
         this.min = new AtomicLong(min);
         this.nextMin = new AtomicLong(nextRangeMin);
         this.extentSize = extentSize;
         this.maxExtents = maxExtents;
+        this.limit = nextRangeMin;
+        this.counter = counter;
         initExtents();
     }
 
     public ContiguousOutputChunker(Activity activity) {
 
-        if (!(activity.getInputDispenserDelegate().getInput(0).isContiguous())) {
-            throw new RuntimeException("This type of output may not be used with non-contiguous inputs yet.");
-            // If you are looking at this code, it's because we count updates to extents to provide
-            // efficient marker extent handling. The ability to use segmented inputs with markers will
-            // come in a future append.
+        Input input = activity.getInputDispenserDelegate().getInput(0);
+        if (input.isContiguous()) {
+            this.counter = null;
+        } else if (input instanceof CanCountCycles) {
+            this.counter = requireCycleOrder((CanCountCycles) input);
+        } else {
+            throw new RuntimeException("This type of output may only be used with inputs which are contiguous or" +
+                    " which can count their cycles, not " + input);
+            // Extents are filled when all of their expected cycles are marked, so a sparse input has to
+            // tell how many cycles it will provide in each extent.
         }
         this.min = new AtomicLong(activity.getActivityDef().getStartCycle());
         this.nextMin = new AtomicLong(activity.getActivityDef().getEndCycle());
@@ -90,77 +127,127 @@ public class ContiguousOutputChunker implements Output {
         }
         this.extentSize = calculateExtentSize(cycleCount, stride);
         this.maxExtents = 3;
+        this.limit = nextMin.get();
         initExtents();
     }
 
-    private synchronized void initExtents() {
-        ByteTrackerExtent extent = new ByteTrackerExtent(min.get(), (min.get() + extentSize));
+    /**
+     * A cycle which is more than maxExtents extents past the first unmarked cycle waits for
+     * the head extent to be handed off, so an input which is out of cycle order could leave
+     * every motor waiting for a cycle which no motor will mark.
+     */
+    private static CanCountCycles requireCycleOrder(CanCountCycles counter) {
+        if (!counter.isInCycleOrder()) {
+            throw new RuntimeException("This type of output may only be used with sparse inputs which provide their" +
+                    " cycles in order, not " + counter + ". A cyclelog which is not in order may be put in order" +
+                    " with --merge-cycle-logs.");
+        }
+        return counter;
+    }
+
+    private void initExtents() {
+        long firstNextMin = Math.min(min.get() + extentSize, limit);
+        ByteTrackerExtent extent = (counter != null)
+                ? new ByteTrackerExtent(min.get(), firstNextMin, counter)
+                : new ByteTrackerExtent(min.get(), firstNextMin);
         this.markingExtents.set(extent);
-        for (int i = 0; i < maxExtents; i++) {
-            extent = extent.extend();
-            logger.debug("added tracker extent " + extent.rangeSummary());
+        for (int i = 0; i < maxExtents && extent != null; i++) {
+            extent = extent.extend(limit);
+            if (extent != null) {
+                logger.debug("added tracker extent " + extent.rangeSummary());
+            }
         }
-        logger.info("using max " + maxExtents + " extents with getCount: " + extentSize);
+        logger.info("using max " + maxExtents + " extents with getCount: " + extentSize
+                + (counter != null ? ", sparse from " + counter : ""));
+        // Leading extents may have no expected cycles, and no mark would ever hand them off
+        handOffFilledExtents();
     }
 
 
     @Override
-    public synchronized void onCycleResultSegment(CycleResultsSegment segment) {
-        logger.trace("on-cycle-result-segment: (" + segment + ")");
+    public void onCycleResultSegment(CycleResultsSegment segment) {
+        if (logger.isTraceEnabled()) {
+            logger.trace("on-cycle-result-segment: (" + segment + ")");
+        }
         for (CycleResult cr : segment) {
             onCycleResult(cr.getCycle(), cr.getResult());
         }
     }
 
     @Override
-    public synchronized boolean onCycleResult(long completedCycle, int result) {
-        logger.trace("on-cycle-result: (" + completedCycle + "," + result + ")");
+    public boolean onCycleResult(long completedCycle, int result) {
+        if (logger.isTraceEnabled()) {
+            logger.trace("on-cycle-result: (" + completedCycle + "," + result + ")");
+        }
 
-        try {
-            while (true) {
-                ByteTrackerExtent extent = this.markingExtents.get();
-                long unmarked = extent.markResult(completedCycle, result);
-
-                if (unmarked > 0) {
-                    return true;
-                } else if (unmarked == 0) {
-                    try {
-                        mutex.acquire();
-                        ByteTrackerExtent head = this.markingExtents.get();
-                        while (head.isFullyFilled()) {
-                            head.extend();
-                            if (!this.markingExtents.compareAndSet(head, head.getNextExtent().get())) {
-                                throw new RuntimeException("Unable to swap head extent.");
-                            }
-                            onFullyFilled(head);
-                            head = this.markingExtents.get();
-                        }
-                        mutex.release();
-                    } catch (InterruptedException ignored) {
-                    } catch (Throwable t) {
-                        throw t;
+        while (true) {
+            ByteTrackerExtent head = this.markingExtents.get();
+            if (completedCycle < head.getMin()) {
+                throw new RuntimeException("Unable to mark cycle " + completedCycle
+                        + ", since it was already handed off in an extent before " + head.rangeSummary());
+            }
+            long unmarked = head.markResult(completedCycle, result);
+            if (unmarked > 0) {
+                return true;
+            } else if (unmarked == 0) {
+                handOffFilledExtents();
+                return true;
+            } else if (completedCycle >= limit) {
+                throw new RuntimeException("Unable to mark cycle " + completedCycle + ", which is past the end of the range at " + limit);
+            }
+            // The cycle is past the last extent, so wait for the head extent to be handed off
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Hand off every filled extent at the head of the chain, and extend the chain, unless
+     * another thread is already doing so. After releasing the hand-off, check the head again,
+     * in case it was filled after the last check and its filling thread found the hand-off taken.
+     */
+    private void handOffFilledExtents() {
+        while (isHeadFilled() && handingOff.compareAndSet(false, true)) {
+            try {
+                while (isHeadFilled()) {
+                    ByteTrackerExtent head = this.markingExtents.get();
+                    head.extend(limit);
+                    ByteTrackerExtent next = head.getNextExtent().get();
+                    if (next == null) {
+                        // The end of the range, so leave an empty extent at the head
+                        next = new ByteTrackerExtent(limit, limit);
+                        head.getNextExtent().set(next);
+                    }
+                    onFullyFilled(head);
+                    if (!this.markingExtents.compareAndSet(head, next)) {
+                        throw new RuntimeException("Unable to swap head extent.");
                     }
-                    return true;
-                } else {
-                    System.out.println("whoops");
                 }
+            } finally {
+                handingOff.set(false);
             }
-        } catch (Throwable t) {
-            throw t; // for debugging
         }
     }
 
+    private boolean isHeadFilled() {
+        ByteTrackerExtent head = this.markingExtents.get();
+        return head.getMin() < limit && head.isFullyFilled();
+    }
+
     @Override
-    public synchronized void close() throws Exception {
+    public void close() throws Exception {
         try {
-
-            mutex.acquire();
-            ByteTrackerExtent e = this.markingExtents.get();
-            while (e != null) {
-                onFullyFilled(e);
-                e = e.getNextExtent().get();
+            while (!handingOff.compareAndSet(false, true)) {
+                Thread.yield();
+            }
+            try {
+                ByteTrackerExtent e = this.markingExtents.get();
+                while (e != null) {
+                    onFullyFilled(e);
+                    e = e.getNextExtent().get();
+                }
+            } finally {
+                handingOff.set(false);
             }
-            mutex.release();
 
             for (Output reader : this.readers) {
                 logger.debug("closing downstream reader: " + reader);
@@ -177,7 +264,7 @@ public class ContiguousOutputChunker implements Output {
     private void onFullyFilled(ByteTrackerExtent extent) {
         logger.trace("MARKER>: fully filled: " + extent);
         for (Output reader : readers) {
-            CycleResultsIntervalSegment remainingSegment = extent.getRemainingSegment();
+            CycleResultsSegment remainingSegment = extent.getRemainingSegment();
             if (remainingSegment != null) {
                 reader.onCycleResultSegment(remainingSegment);
             }
@@ -188,24 +275,27 @@ public class ContiguousOutputChunker implements Output {
         logger.debug("TRACKER: fully tracked: " + firstReadable);
     }
 
-    public synchronized void addExtentReader(Output reader) {
+    public void addExtentReader(Output reader) {
         this.readers.add(reader);
     }
 
-    public synchronized void removeExtentReader(Output reader) {
+    public void removeExtentReader(Output reader) {
         this.readers.remove(reader);
     }
 
-    private int calculateExtentSize(long cycleCount, long stride) {
-        if (cycleCount <= 2000000) {
+    /**
+     * Use the whole range as one extent when it is small, or otherwise the largest
+     * whole number of strides which fits in {@link #DEFAULT_EXTENT_SIZE}. The last
+     * extent is shortened to fit the range.
+     */
+    static int calculateExtentSize(long cycleCount, long stride) {
+        if (cycleCount <= DEFAULT_EXTENT_SIZE) {
             return (int) cycleCount;
         }
-        for (int cs = 2000000; cs > 500000; cs--) {
-            if ((cycleCount % cs) == 0 && (cs % stride) == 0) {
-                return cs;
-            }
+        if (stride > DEFAULT_EXTENT_SIZE) {
+            throw new RuntimeException("stride=" + stride + " is larger than the maximum extent size of " + DEFAULT_EXTENT_SIZE);
         }
-        throw new RuntimeException("no even divisor of cycleCount and Stride between 500K and 2M, with cycles=" + cycleCount + ",  and stride=" + stride);
+        return (int) (DEFAULT_EXTENT_SIZE - (DEFAULT_EXTENT_SIZE % stride));
     }
 
 
@@ -218,6 +308,7 @@ public class ContiguousOutputChunker implements Output {
                 ", min=" + min +
                 ", nextMin=" + nextMin +
                 ", markingExtents/Chain=" + markingExtents.get().getChainSize() +
+                ", sparse=" + (counter != null) +
                 '}';
     }
 
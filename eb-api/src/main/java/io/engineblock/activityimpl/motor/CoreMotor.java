@@ -19,7 +19,6 @@ package io.engineblock.activityimpl.motor;
 import com.codahale.metrics.Timer;
 import io.engineblock.activityapi.core.*;
 import io.engineblock.activityapi.cyclelog.buffers.cycles.CycleSegment;
-import io.engineblock.activityapi.cyclelog.buffers.results.CycleResult;
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultSegmentBuffer;
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsSegment;
 import io.engineblock.activityapi.input.Input;
@@ -31,7 +30,9 @@ import io.engineblock.metrics.ActivityMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static io.engineblock.activityapi.core.RunState.*;
@@ -43,6 +44,11 @@ import static io.engineblock.activityapi.core.RunState.*;
  * the provided LongConsumer to it on each cycle. These two parameters are called
  * input and action, respectively.
  * </p>
+ *
+ * <p>The timers which are updated for each stride, cycle and phase are selected with the
+ * <em>instrument</em> activity parameter, as described in {@link InstrumentationLevel}.
+ * Synchronous actions which are instrumented below the cycle level run in a separate
+ * loop which does not read the clock for each cycle.</p>
  */
 public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResultBuffer.Sink<OpContext> {
 
@@ -62,7 +68,18 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
     private RateLimiter strideRateLimiter;
     private RateLimiter cycleRateLimiter;
     private RateLimiter phaseRateLimiter;
+    private boolean recycleOps = false;
+    private boolean reserveStrides = false;
+    private InstrumentationLevel instrumentation = InstrumentationLevel.phase;
+    private boolean timeCycles;
+    private boolean timeStrides;
+    private final ArrayBlockingQueue<StrideResultBuffer> strideBufferPool = new ArrayBlockingQueue<>(STRIDE_POOL_SIZE);
 
+    /**
+     * The most completed stride buffers that will be retained for reuse
+     * by a motor, when op recycling is enabled.
+     */
+    private final static int STRIDE_POOL_SIZE = 128;
 
     /**
      * Create an ActivityMotor.
@@ -209,6 +226,22 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
             long cycleDelay = 0L;
             long phaseDelay = 0L;
 
+            // With reservestrides=true, the cycle rate limiter schedule is reserved a stride at
+            // a time, so that the shared rate limiter is only updated once per stride rather than
+            // once per cycle. Only the cycles in each segment are reserved, and any which are not
+            // run are released, so a short or abandoned stride does not hold back other motors.
+            // Rate limiters which schedule ops at irregular intervals are acquired per cycle.
+            boolean reserveCycleStrides = reserveStrides && cycleRateLimiter != null && cycleRateLimiter.isEvenlySpaced();
+            long cycleSchedule = 0L;
+            long cycleOpNanos = 0L;
+            int reservedPermits = 0;
+
+            InstrumentationLevel instrumentation = this.instrumentation;
+            boolean timeInput = instrumentation.includes(InstrumentationLevel.cycle);
+            boolean timePhases = instrumentation.includes(InstrumentationLevel.phase);
+            timeCycles = timeInput;
+            timeStrides = instrumentation.includes(InstrumentationLevel.stride);
+
             // Reviewer Note: This separate of code paths was used to avoid impacting the
             // previously logic for the SyncAction type. It may be consolidated later once
             // the async action is proven durable
@@ -219,7 +252,11 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
 
                     CycleSegment cycleSegment = null;
 
-                    try (Timer.Context inputTime = inputTimer.time()) {
+                    if (timeInput) {
+                        long inputStart = System.nanoTime();
+                        cycleSegment = input.getInputSegment(stride);
+                        inputTimer.update(System.nanoTime() - inputStart, TimeUnit.NANOSECONDS);
+                    } else {
                         cycleSegment = input.getInputSegment(stride);
                     }
 
@@ -234,7 +271,16 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
                         strideDelay = strideRateLimiter.acquire();
                     }
 
-                    StrideResultBuffer strideResultBuffer = new StrideResultBuffer(cyclesTimer, strideDelay, cycleSegment.peekNextCycle(), this, stride);
+                    if (reserveCycleStrides) {
+                        // reserve the schedule for the cycles of the whole stride at once
+                        reservedPermits = Math.min(stride, cycleSegment.getRemainingCycles());
+                        cycleSchedule = cycleRateLimiter.reserve(reservedPermits);
+                        cycleOpNanos = cycleRateLimiter.getOpNanos();
+                    }
+
+                    StrideResultBuffer strideResultBuffer = recycleOps
+                            ? acquireStrideBuffer(strideDelay, cycleSegment.peekNextCycle())
+                            : new StrideResultBuffer(timeCycles ? cyclesTimer : null, strideDelay, cycleSegment.peekNextCycle(), this, stride);
 
 
 //                try (Timer.Context stridesTime = stridesTimer.time()) {
@@ -255,18 +301,31 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
                             continue;
                         }
 
-                        if (cycleRateLimiter != null) {
+                        if (reserveCycleStrides) {
+                            // Block for this cycle's slot in the stride schedule
+                            cycleDelay = cycleRateLimiter.awaitSchedule(cycleSchedule);
+                            cycleSchedule += cycleOpNanos;
+                            reservedPermits--;
+                        } else if (cycleRateLimiter != null) {
                             // Block for cycle rate limiter
                             cycleDelay = cycleRateLimiter.acquire();
                         }
 
                         //try (Timer.Context cycleTime = cyclesTimer.time()) {
                         try {
-                            if (!async.enqueue(new OpContext(strideResultBuffer, cyclenum, cycleDelay))) {
-                                logger.trace("Action queue full at cycle=" + cyclenum);
+                            OpContext opContext = recycleOps
+                                    ? strideResultBuffer.nextOpContext(cyclenum, cycleDelay)
+                                    : new OpContext(strideResultBuffer, cyclenum, cycleDelay);
+                            if (!async.enqueue(opContext)) {
+                                if (logger.isTraceEnabled()) {
+                                    logger.trace("Action queue full at cycle=" + cyclenum);
+                                }
 
-                                OpContext opContext = async.dequeue();
-                                cyclesTimer.update(opContext.getTotalLatency(), TimeUnit.NANOSECONDS);
+                                OpContext completed = async.dequeue();
+                                if (timeCycles) {
+                                    cyclesTimer.update(completed.getTotalLatency(), TimeUnit.NANOSECONDS);
+                                }
+                                onDequeued(completed);
                             }
 
 //                                // runCycle
@@ -296,10 +355,15 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
                         }
                     }
 
+                    if (reservedPermits > 0) {
+                        // return the schedule of cycles which were not run, as when stopped
+                        cycleRateLimiter.release(cycleSchedule, reservedPermits);
+                        reservedPermits = 0;
+                    }
 
                 }
 
-                CycleResult result = async.dequeue();
+                OpContext result = async.dequeue();
                 while (result != null) {
                     if (output != null) {
                         try {
@@ -309,6 +373,7 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
                             throw t;
                         }
                     }
+                    onDequeued(result);
                     result = async.dequeue();
                 }
 
@@ -317,18 +382,29 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
                 }
 
 
+            } else if (action instanceof SyncAction && !instrumentation.includes(InstrumentationLevel.cycle)) {
+                runSyncWithoutCycleTimers((SyncAction) action, multiPhaseAction, instrumentation.includes(InstrumentationLevel.stride));
+
             } else if (action instanceof SyncAction) {
                 SyncAction sync = (SyncAction) action;
 
-                while (slotState.get() == Running) {
+                // The input segment and result buffer are reused for every stride, since
+                // outputs may not retain a segment beyond onCycleResultSegment(...)
+                CycleSegment cycleSegment = null;
+                CycleResultSegmentBuffer segBuffer = null;
 
-                    CycleSegment cycleSegment = null;
-                    CycleResultSegmentBuffer segBuffer = new CycleResultSegmentBuffer(stride);
+                while (slotState.get() == Running) {
 
-                    try (Timer.Context inputTime = inputTimer.time()) {
-                        cycleSegment = input.getInputSegment(stride);
+                    if (segBuffer == null || segBuffer.getResultCapacity() != stride) {
+                        segBuffer = new CycleResultSegmentBuffer(stride);
+                    } else {
+                        segBuffer.clear();
                     }
 
+                    long inputStart = System.nanoTime();
+                    cycleSegment = input.getInputSegment(stride, cycleSegment);
+                    inputTimer.update(System.nanoTime() - inputStart, TimeUnit.NANOSECONDS);
+
                     if (cycleSegment == null) {
                         logger.debug("input exhausted (input " + input + ") via null segment, stopping motor thread " + slotId);
                         slotStateTracker.enterState(Finished);
@@ -341,6 +417,13 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
                         strideDelay = strideRateLimiter.acquire();
                     }
 
+                    if (reserveCycleStrides) {
+                        // reserve the schedule for the cycles of the whole stride at once
+                        reservedPermits = Math.min(stride, cycleSegment.getRemainingCycles());
+                        cycleSchedule = cycleRateLimiter.reserve(reservedPermits);
+                        cycleOpNanos = cycleRateLimiter.getOpNanos();
+                    }
+
 //                try (Timer.Context stridesTime = stridesTimer.time()) {
                     long strideStart = System.nanoTime();
                     try {
@@ -361,7 +444,12 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
                             }
                             int result = -1;
 
-                            if (cycleRateLimiter != null) {
+                            if (reserveCycleStrides) {
+                                // Block for this cycle's slot in the stride schedule
+                                cycleDelay = cycleRateLimiter.awaitSchedule(cycleSchedule);
+                                cycleSchedule += cycleOpNanos;
+                                reservedPermits--;
+                            } else if (cycleRateLimiter != null) {
                                 // Block for cycle rate limiter
                                 cycleDelay = cycleRateLimiter.acquire();
                             }
@@ -369,27 +457,33 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
                             //try (Timer.Context cycleTime = cyclesTimer.time()) {
                             long cycleStart = System.nanoTime();
                             try {
-                                logger.trace("cycle " + cyclenum);
+                                if (logger.isTraceEnabled()) {
+                                    logger.trace("cycle " + cyclenum);
+                                }
 
                                 // runCycle
-                                long phaseStart = System.nanoTime();
+                                long phaseStart = timePhases ? System.nanoTime() : 0L;
                                 if (phaseRateLimiter != null) {
                                     phaseDelay = phaseRateLimiter.acquire();
                                 }
                                 result = sync.runCycle(cyclenum);
-                                long phaseEnd = System.nanoTime();
-                                phasesTimer.update((phaseEnd - phaseStart) + phaseDelay, TimeUnit.NANOSECONDS);
+                                if (timePhases) {
+                                    long phaseEnd = System.nanoTime();
+                                    phasesTimer.update((phaseEnd - phaseStart) + phaseDelay, TimeUnit.NANOSECONDS);
+                                }
 
                                 // ... runPhase ...
                                 if (multiPhaseAction != null) {
                                     while (multiPhaseAction.incomplete()) {
-                                        phaseStart = System.nanoTime();
+                                        phaseStart = timePhases ? System.nanoTime() : 0L;
                                         if (phaseRateLimiter != null) {
                                             phaseDelay = phaseRateLimiter.acquire();
                                         }
                                         result = multiPhaseAction.runPhase(cyclenum);
-                                        phaseEnd = System.nanoTime();
-                                        phasesTimer.update((phaseEnd - phaseStart) + phaseDelay, TimeUnit.NANOSECONDS);
+                                        if (timePhases) {
+                                            long phaseEnd = System.nanoTime();
+                                            phasesTimer.update((phaseEnd - phaseStart) + phaseDelay, TimeUnit.NANOSECONDS);
+                                        }
                                     }
                                 }
 
@@ -405,8 +499,14 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
                         stridesTimer.update((strideEnd - strideStart) + strideDelay, TimeUnit.NANOSECONDS);
                     }
 
+                    if (reservedPermits > 0) {
+                        // return the schedule of cycles which were not run, as when stopped
+                        cycleRateLimiter.release(cycleSchedule, reservedPermits);
+                        reservedPermits = 0;
+                    }
+
                     if (output != null) {
-                        CycleResultsSegment outputBuffer = segBuffer.toReader();
+                        CycleResultsSegment outputBuffer = segBuffer.flipReader();
                         try {
                             output.onCycleResultSegment(outputBuffer);
                         } catch (Exception t) {
@@ -431,6 +531,112 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
         }
     }
 
+    /**
+     * Run a synchronous action without reading the clock for each cycle. This is the same
+     * as the synchronous motor loop, except that the cycles, phases and read_input timers
+     * are not updated, and the strides timer is only updated if timeStrides is set.
+     * Rate limiters are still applied.
+     */
+    private void runSyncWithoutCycleTimers(SyncAction sync, MultiPhaseAction multiPhaseAction, boolean timeStrides) {
+        boolean reserveCycleStrides = reserveStrides && cycleRateLimiter != null && cycleRateLimiter.isEvenlySpaced();
+        long cycleSchedule = 0L;
+        long cycleOpNanos = 0L;
+        int reservedPermits = 0;
+        long strideDelay = 0L;
+
+        CycleSegment cycleSegment = null;
+        CycleResultSegmentBuffer segBuffer = null;
+
+        while (slotState.get() == Running) {
+
+            if (segBuffer == null || segBuffer.getResultCapacity() != stride) {
+                segBuffer = new CycleResultSegmentBuffer(stride);
+            } else {
+                segBuffer.clear();
+            }
+
+            cycleSegment = input.getInputSegment(stride, cycleSegment);
+            if (cycleSegment == null) {
+                logger.debug("input exhausted (input " + input + ") via null segment, stopping motor thread " + slotId);
+                slotStateTracker.enterState(Finished);
+                continue;
+            }
+
+            if (strideRateLimiter != null) {
+                strideDelay = strideRateLimiter.acquire();
+            }
+
+            if (reserveCycleStrides) {
+                reservedPermits = Math.min(stride, cycleSegment.getRemainingCycles());
+                cycleSchedule = cycleRateLimiter.reserve(reservedPermits);
+                cycleOpNanos = cycleRateLimiter.getOpNanos();
+            }
+
+            long strideStart = timeStrides ? System.nanoTime() : 0L;
+
+            while (!cycleSegment.isExhausted()) {
+                long cyclenum = cycleSegment.nextCycle();
+                if (cyclenum < 0) {
+                    if (cycleSegment.isExhausted()) {
+                        logger.trace("input exhausted (input " + input + ") via negative read, stopping motor thread " + slotId);
+                        slotStateTracker.enterState(Finished);
+                        continue;
+                    }
+                }
+
+                if (slotState.get() != Running) {
+                    logger.trace("motor stopped after input (input " + cyclenum + "), stopping motor thread " + slotId);
+                    continue;
+                }
+
+                if (reserveCycleStrides) {
+                    cycleRateLimiter.awaitSchedule(cycleSchedule);
+                    cycleSchedule += cycleOpNanos;
+                    reservedPermits--;
+                } else if (cycleRateLimiter != null) {
+                    cycleRateLimiter.acquire();
+                }
+
+                if (phaseRateLimiter != null) {
+                    phaseRateLimiter.acquire();
+                }
+                int result = sync.runCycle(cyclenum);
+                if (multiPhaseAction != null) {
+                    while (multiPhaseAction.incomplete()) {
+                        if (phaseRateLimiter != null) {
+                            phaseRateLimiter.acquire();
+                        }
+                        result = multiPhaseAction.runPhase(cyclenum);
+                    }
+                }
+                segBuffer.append(cyclenum, result);
+            }
+
+            if (reservedPermits > 0) {
+                cycleRateLimiter.release(cycleSchedule, reservedPermits);
+                reservedPermits = 0;
+            }
+
+            if (timeStrides) {
+                stridesTimer.update((System.nanoTime() - strideStart) + strideDelay, TimeUnit.NANOSECONDS);
+            }
+
+            if (output != null) {
+                CycleResultsSegment outputBuffer = segBuffer.flipReader();
+                try {
+                    output.onCycleResultSegment(outputBuffer);
+                } catch (Exception t) {
+                    logger.error("Error while feeding result segment " + outputBuffer + " to output '" + output + "', error:" + t);
+                    throw t;
+                }
+            }
+        }
+
+        if (slotState.get() == Stopping) {
+            slotStateTracker.enterState(Stopped);
+        }
+    }
+
 
     @Override
     public String toString() {
@@ -446,6 +652,10 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
         }
 
         this.stride = activityDef.getParams().getOptionalInteger("stride").orElse(1);
+        this.recycleOps = activityDef.getParams().getOptionalBoolean("recycleops").orElse(false);
+        this.reserveStrides = activityDef.getParams().getOptionalBoolean("reservestrides").orElse(false);
+        this.instrumentation = activityDef.getParams().getOptionalString("instrument")
+                .map(InstrumentationLevel::forParam).orElse(InstrumentationLevel.phase);
     }
 
     @Override
@@ -471,10 +681,14 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
 
     @Override
     public void handle(OpResultBuffer<OpContext> strideResults) {
-        OpContext strideOps = strideResults.get();
+        OpContext strideOps = strideResults.getContext();
         strideOps.stop();
-        stridesTimer.update(strideOps.getTotalLatency(), TimeUnit.NANOSECONDS);
-        logger.trace("completed stride with first result cycle (" + strideOps.getCycle() + ")");
+        if (timeStrides) {
+            stridesTimer.update(strideOps.getTotalLatency(), TimeUnit.NANOSECONDS);
+        }
+        if (logger.isTraceEnabled()) {
+            logger.trace("completed stride with first result cycle (" + strideOps.getCycle() + ")");
+        }
         if (output != null) {
             int remaining = strideResults.remaining();
             for (int i = 0; i < remaining; i++) {
@@ -482,20 +696,112 @@ public class CoreMotor implements ActivityDefObserver, Motor, Stoppable, OpResul
                 output.onCycleResult(opContext.getCycle(), opContext.getResult());
             }
         }
+        if (strideResults instanceof StrideResultBuffer) {
+            recycle((StrideResultBuffer) strideResults);
+        }
     }
 
+    /**
+     * Account for an op which the action has returned from dequeue. Its stride buffer
+     * may only be reused once this has been done for every op of the stride, since an
+     * action may complete ops by callback while they are still waiting to be dequeued.
+     */
+    private void onDequeued(OpContext opContext) {
+        if (opContext.getSink() instanceof StrideResultBuffer) {
+            recycle((StrideResultBuffer) opContext.getSink());
+        }
+    }
+
+    private void recycle(StrideResultBuffer buffer) {
+        if (buffer.release() && recycleOps) {
+            strideBufferPool.offer(buffer);
+        }
+    }
+
+    /**
+     * Take a completed stride buffer from the pool, or create a new one if none
+     * is available. Buffers which were sized for a previous stride are discarded.
+     */
+    private StrideResultBuffer acquireStrideBuffer(long strideDelay, long initialCycle) {
+        StrideResultBuffer buffer = strideBufferPool.poll();
+        while (buffer != null && buffer.capacity() != stride) {
+            buffer = strideBufferPool.poll();
+        }
+        if (buffer == null) {
+            return new StrideResultBuffer(timeCycles ? cyclesTimer : null, strideDelay, initialCycle, this, stride);
+        }
+        return buffer.reset(strideDelay, initialCycle);
+    }
+
+    /**
+     * A buffer of completed ops for a single stride. When used in recycling mode,
+     * the buffer also owns one {@link OpContext} carrier per cycle in the stride,
+     * so that neither the buffer nor its carriers need to be allocated again once
+     * the stride has been handled and each of its ops has been dequeued.
+     */
     public static class StrideResultBuffer extends OpResultBuffer<OpContext> {
 
-        private final Timer cycleTimer;
+        private final Timer cycleTimer; // null when cycles are not timed
+        private final OpContext[] carriers;
+        private int nextCarrier = 0;
+        private final AtomicInteger pendingReleases = new AtomicInteger();
 
         public StrideResultBuffer(Timer cycleTimer, long strideDelay, long initialCycle, OpResultBuffer.Sink<OpContext> sink, int size) {
             super(new OpContext(null, initialCycle, strideDelay), sink, OpContext[].class, size);
             this.cycleTimer = cycleTimer;
+            this.carriers = new OpContext[size];
+            this.pendingReleases.set(size + 1);
+        }
+
+        /**
+         * Release this buffer once for each of its ops which is dequeued, and once when
+         * the full stride is handled.
+         * @return true, if this was the last release, and the buffer may be reused
+         */
+        public boolean release() {
+            return pendingReleases.decrementAndGet() == 0;
+        }
+
+        /**
+         * Prepare this buffer to be used for another stride.
+         * @param strideDelay The scheduling delay of the new stride
+         * @param initialCycle The first cycle of the new stride
+         * @return this StrideResultBuffer, for method chaining
+         */
+        public StrideResultBuffer reset(long strideDelay, long initialCycle) {
+            clear();
+            getContext().reset(null, initialCycle, strideDelay);
+            nextCarrier = 0;
+            pendingReleases.set(carriers.length + 1);
+            return this;
+        }
+
+        /**
+         * Get the next op carrier owned by this stride, initialized for the given cycle.
+         * @param cycle The cycle number
+         * @param cycleDelay The scheduling delay for the cycle
+         * @return a recycled or newly created {@link OpContext}
+         */
+        public OpContext nextOpContext(long cycle, long cycleDelay) {
+            if (nextCarrier >= carriers.length) {
+                return new OpContext(this, cycle, cycleDelay);
+            }
+            OpContext carrier = carriers[nextCarrier];
+            if (carrier == null) {
+                carrier = new OpContext(this, cycle, cycleDelay);
+                carriers[nextCarrier] = carrier;
+            } else {
+                carrier.reset(this, cycle, cycleDelay);
+            }
+            nextCarrier++;
+            return carrier;
         }
 
         @Override
         public void handle(OpContext opContext) {
-            cycleTimer.update(opContext.getTotalLatency(), TimeUnit.NANOSECONDS);
+            if (cycleTimer != null) {
+                cycleTimer.update(opContext.getTotalLatency(), TimeUnit.NANOSECONDS);
+            }
             super.handle(opContext);
         }
     }
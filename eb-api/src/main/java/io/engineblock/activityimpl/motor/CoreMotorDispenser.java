@@ -27,7 +27,9 @@ import java.util.function.IntPredicate;
 
 /**
  * Produce index ActivityMotor instances with an input and action,
- * given the input and an action factory.
+ * given the input and an action factory. Actions which complete their
+ * ops by callback, as {@link CallbackAsyncAction}s, are run by an
+ * {@link EventLoopMotor}.
  */
 public class CoreMotorDispenser implements MotorDispenser {
 
@@ -56,6 +58,9 @@ public class CoreMotorDispenser implements MotorDispenser {
             output = outputDispenser.getOutput(slotId);
         }
         IntPredicate resultFilter = null;
+        if (action instanceof CallbackAsyncAction) {
+            return new EventLoopMotor(activity, slotId, input, action, output);
+        }
         Motor am = new CoreMotor(activity, slotId, input, action, output);
         return am;
     }
@@ -0,0 +1,453 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityimpl.motor;
+
+import com.codahale.metrics.Timer;
+import io.engineblock.activityapi.core.*;
+import io.engineblock.activityapi.cyclelog.buffers.cycles.CycleSegment;
+import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultSegmentBuffer;
+import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsSegment;
+import io.engineblock.activityapi.input.Input;
+import io.engineblock.activityapi.output.Output;
+import io.engineblock.activityapi.rates.RateLimiter;
+import io.engineblock.activityimpl.ActivityDef;
+import io.engineblock.activityimpl.SlotStateTracker;
+import io.engineblock.metrics.ActivityMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static io.engineblock.activityapi.core.RunState.*;
+
+/**
+ * <p>An event loop motor runs a {@link CallbackAsyncAction}, keeping up to <em>maxasync</em>
+ * operations in flight in a single thread. Each op context is submitted to the action without
+ * blocking. When the action sets the result of an op, from whatever thread, the op is added to a
+ * lock-free completion queue. The motor thread takes completed ops from the queue in the order
+ * they completed, so one slow op does not hold back the handling of others.</p>
+ *
+ * <p>Completed ops are timed, buffered with the results of their stride, and reused for later
+ * cycles, all in the motor thread. The results of a stride are passed to the output as one segment
+ * when its last op completes. When the maximum number of ops are in flight, the motor parks until
+ * one of them completes. Strides are timed from the start of the stride until its last op completes.
+ * The cycles and strides timers are selected with the <em>instrument</em> parameter as in
+ * {@link CoreMotor}. Phases are not supported by this motor.</p>
+ */
+public class EventLoopMotor implements ActivityDefObserver, Motor, Stoppable, OpContext.Sink {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventLoopMotor.class);
+
+    /**
+     * The default limit of ops in flight for each motor.
+     */
+    public final static int DEFAULT_MAX_ASYNC = 1000;
+
+    /**
+     * The longest time that the motor parks while waiting for a completion, in case a wakeup is missed.
+     */
+    private final static long MAX_PARK_NANOS = 1_000_000L;
+
+    Timer cyclesTimer;
+    Timer stridesTimer;
+    Timer inputTimer;
+    private long slotId;
+    private Input input;
+    private Action action;
+    private Activity activity;
+    private SlotStateTracker slotStateTracker;
+    private AtomicReference<RunState> slotState;
+    private int stride = 1;
+    private int maxAsync = DEFAULT_MAX_ASYNC;
+    private boolean reserveStrides = false;
+    private Output output;
+    private RateLimiter strideRateLimiter;
+    private RateLimiter cycleRateLimiter;
+    private InstrumentationLevel instrumentation = InstrumentationLevel.phase;
+
+    private final Queue<OpContext> completions = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<StrideOp> freeOps = new ArrayDeque<>();
+    private final ArrayDeque<StrideOps> freeStrides = new ArrayDeque<>();
+    private volatile Thread motorThread;
+    private volatile boolean parked = false;
+    private int inFlight = 0;
+    private boolean timeCycles;
+    private boolean timeStrides;
+
+    public EventLoopMotor(Activity activity, long slotId, Input input, Action action, Output output) {
+        this.activity = activity;
+        this.slotId = slotId;
+        setInput(input);
+        setAction(action);
+        this.output = output;
+        slotStateTracker = new SlotStateTracker(slotId);
+        slotState = slotStateTracker.getAtomicSlotState();
+        onActivityDefUpdate(activity.getActivityDef());
+    }
+
+    @Override
+    public Motor setInput(Input input) {
+        this.input = input;
+        return this;
+    }
+
+    @Override
+    public Input getInput() {
+        return input;
+    }
+
+    @Override
+    public Motor setAction(Action action) {
+        if (!(action instanceof CallbackAsyncAction)) {
+            throw new RuntimeException("The event loop motor requires a " + CallbackAsyncAction.class.getSimpleName()
+                    + ", not " + action);
+        }
+        this.action = action;
+        return this;
+    }
+
+    @Override
+    public Action getAction() {
+        return action;
+    }
+
+    @Override
+    public long getSlotId() {
+        return slotId;
+    }
+
+    @Override
+    public SlotStateTracker getSlotStateTracker() {
+        return slotStateTracker;
+    }
+
+    @Override
+    public void run() {
+        try {
+            cyclesTimer = ActivityMetrics.timer(activity.getActivityDef(), "cycles");
+            stridesTimer = ActivityMetrics.timer(activity.getActivityDef(), "strides");
+            inputTimer = ActivityMetrics.timer(activity.getActivityDef(), "read_input");
+
+            strideRateLimiter = activity.getStrideLimiter();
+            cycleRateLimiter = activity.getCycleLimiter();
+
+            if (slotState.get() == Finished) {
+                logger.warn("Input was already exhausted for slot " + slotId + ", remaining in finished state.");
+            }
+
+            slotStateTracker.enterState(Running);
+            motorThread = Thread.currentThread();
+
+            CallbackAsyncAction callbacks = (CallbackAsyncAction) action;
+            action.init();
+
+            if (input instanceof Startable) {
+                ((Startable) input).start();
+            }
+
+            if (strideRateLimiter != null) {
+                strideRateLimiter.start();
+            }
+
+            boolean reserveCycleStrides = reserveStrides && cycleRateLimiter != null && cycleRateLimiter.isEvenlySpaced();
+            long cycleSchedule = 0L;
+            long cycleOpNanos = 0L;
+            int reservedPermits = 0;
+            long strideDelay = 0L;
+            long cycleDelay = 0L;
+
+            InstrumentationLevel instrumentation = this.instrumentation;
+            boolean timeInput = instrumentation.includes(InstrumentationLevel.cycle);
+            timeCycles = instrumentation.includes(InstrumentationLevel.cycle);
+            timeStrides = instrumentation.includes(InstrumentationLevel.stride);
+
+            CycleSegment cycleSegment = null;
+            StrideOps strideOps = null;
+            boolean exhausted = false;
+
+            while (slotState.get() == Running && !exhausted) {
+
+                handleCompletions();
+
+                if (inFlight >= maxAsync) {
+                    awaitCompletions();
+                    continue;
+                }
+
+                if (cycleSegment == null || cycleSegment.isExhausted()) {
+                    if (strideOps != null) {
+                        strideOps.allSubmitted = true;
+                        completeStrideIfDone(strideOps);
+                    }
+
+                    if (reservedPermits > 0) {
+                        // return the schedule of cycles which the segment did not have
+                        cycleRateLimiter.release(cycleSchedule, reservedPermits);
+                        reservedPermits = 0;
+                    }
+
+                    if (timeInput) {
+                        long inputStart = System.nanoTime();
+                        cycleSegment = input.getInputSegment(stride);
+                        inputTimer.update(System.nanoTime() - inputStart, TimeUnit.NANOSECONDS);
+                    } else {
+                        cycleSegment = input.getInputSegment(stride);
+                    }
+
+                    if (cycleSegment == null) {
+                        logger.debug("input exhausted (input " + input + ") via null segment, stopping motor thread " + slotId);
+                        strideOps = null;
+                        exhausted = true;
+                        continue;
+                    }
+
+                    if (strideRateLimiter != null) {
+                        strideDelay = strideRateLimiter.acquire();
+                    }
+
+                    if (reserveCycleStrides) {
+                        reservedPermits = Math.min(stride, cycleSegment.getRemainingCycles());
+                        cycleSchedule = cycleRateLimiter.reserve(reservedPermits);
+                        cycleOpNanos = cycleRateLimiter.getOpNanos();
+                    }
+
+                    strideOps = acquireStrideOps(strideDelay);
+                }
+
+                long cyclenum = cycleSegment.nextCycle();
+                if (cyclenum < 0) {
+                    if (cycleSegment.isExhausted()) {
+                        logger.trace("input exhausted (input " + input + ") via negative read, stopping motor thread " + slotId);
+                        strideOps.allSubmitted = true;
+                        completeStrideIfDone(strideOps);
+                        strideOps = null;
+                        exhausted = true;
+                    }
+                    continue;
+                }
+
+                if (reserveCycleStrides) {
+                    cycleDelay = cycleRateLimiter.awaitSchedule(cycleSchedule);
+                    cycleSchedule += cycleOpNanos;
+                    reservedPermits--;
+                } else if (cycleRateLimiter != null) {
+                    cycleDelay = cycleRateLimiter.acquire();
+                }
+
+                StrideOp op = acquireOp(strideOps, cyclenum, cycleDelay);
+                inFlight++;
+                strideOps.submitted++;
+                try {
+                    callbacks.submit(op);
+                } catch (Exception t) {
+                    logger.error("Error while submitting async cycle " + cyclenum + ", error:" + t);
+                    throw t;
+                }
+            }
+
+            if (strideOps != null) {
+                strideOps.allSubmitted = true;
+                completeStrideIfDone(strideOps);
+            }
+
+            if (reservedPermits > 0) {
+                // return the schedule of cycles which were not submitted, as when stopped
+                cycleRateLimiter.release(cycleSchedule, reservedPermits);
+            }
+
+            while (inFlight > 0) {
+                handleCompletions();
+                if (inFlight > 0) {
+                    awaitCompletions();
+                    if (Thread.currentThread().isInterrupted()) {
+                        logger.warn("interrupted with " + inFlight + " ops in flight, stopping motor thread " + slotId);
+                        break;
+                    }
+                }
+            }
+
+            if (exhausted && slotState.get() == Running) {
+                slotStateTracker.enterState(Finished);
+            } else if (slotState.get() == Stopping) {
+                slotStateTracker.enterState(Stopped);
+            }
+
+        } catch (Throwable t) {
+            logger.error("Error in event loop motor:" + t, t);
+            throw t;
+        }
+    }
+
+    /**
+     * Add a completed op to the completion queue, and wake the motor thread if it is waiting.
+     * This is called by the action, from any thread.
+     */
+    @Override
+    public void handle(OpContext opContext) {
+        completions.offer(opContext);
+        if (parked) {
+            LockSupport.unpark(motorThread);
+        }
+    }
+
+    private void handleCompletions() {
+        OpContext completed;
+        while ((completed = completions.poll()) != null) {
+            StrideOp op = (StrideOp) completed;
+            inFlight--;
+            if (timeCycles) {
+                cyclesTimer.update(op.getTotalLatency(), TimeUnit.NANOSECONDS);
+            }
+            StrideOps strideOps = op.strideOps;
+            if (output != null) {
+                strideOps.results.append(op.getCycle(), op.getResult());
+            }
+            strideOps.completed++;
+            completeStrideIfDone(strideOps);
+            op.strideOps = null;
+            freeOps.push(op);
+        }
+    }
+
+    private void awaitCompletions() {
+        parked = true;
+        if (completions.isEmpty()) {
+            LockSupport.parkNanos(this, MAX_PARK_NANOS);
+        }
+        parked = false;
+    }
+
+    private void completeStrideIfDone(StrideOps strideOps) {
+        if (!strideOps.allSubmitted || strideOps.completed < strideOps.submitted) {
+            return;
+        }
+        if (timeStrides) {
+            stridesTimer.update((System.nanoTime() - strideOps.startedAtNanos) + strideOps.delayNanos, TimeUnit.NANOSECONDS);
+        }
+        if (output != null && strideOps.completed > 0) {
+            CycleResultsSegment outputBuffer = strideOps.results.flipReader();
+            try {
+                output.onCycleResultSegment(outputBuffer);
+            } catch (Exception t) {
+                logger.error("Error while feeding result segment " + outputBuffer + " to output '" + output + "', error:" + t);
+                throw t;
+            }
+        }
+        freeStrides.push(strideOps);
+    }
+
+    private StrideOps acquireStrideOps(long strideDelay) {
+        StrideOps strideOps = freeStrides.poll();
+        if (strideOps == null) {
+            strideOps = new StrideOps();
+        }
+        return strideOps.reset(strideDelay, stride);
+    }
+
+    private StrideOp acquireOp(StrideOps strideOps, long cycle, long cycleDelay) {
+        StrideOp op = freeOps.poll();
+        if (op == null) {
+            op = new StrideOp(this, cycle, cycleDelay);
+        } else {
+            op.reset(this, cycle, cycleDelay);
+        }
+        op.strideOps = strideOps;
+        return op;
+    }
+
+    @Override
+    public String toString() {
+        return "slot:" + this.slotId + "; state:" + slotState.get() + "; inflight:" + inFlight;
+    }
+
+    @Override
+    public void onActivityDefUpdate(ActivityDef activityDef) {
+        for (Object component : (new Object[]{input, action, output})) {
+            if (component != null && component instanceof ActivityDefObserver) {
+                ((ActivityDefObserver) component).onActivityDefUpdate(activityDef);
+            }
+        }
+
+        this.stride = activityDef.getParams().getOptionalInteger("stride").orElse(1);
+        this.maxAsync = activityDef.getParams().getOptionalInteger("maxasync").orElse(DEFAULT_MAX_ASYNC);
+        if (maxAsync < 1) {
+            throw new RuntimeException("maxasync=" + maxAsync + " must be at least 1.");
+        }
+        this.reserveStrides = activityDef.getParams().getOptionalBoolean("reservestrides").orElse(false);
+        this.instrumentation = activityDef.getParams().getOptionalString("instrument")
+                .map(InstrumentationLevel::forParam).orElse(InstrumentationLevel.phase);
+    }
+
+    @Override
+    public synchronized void requestStop() {
+        if (slotState.get() == Running) {
+            if (input instanceof Stoppable) {
+                ((Stoppable) input).requestStop();
+            }
+            if (action instanceof Stoppable) {
+                ((Stoppable) action).requestStop();
+            }
+            slotStateTracker.enterState(RunState.Stopping);
+        } else {
+            if (slotState.get() != Stopped && slotState.get() != Stopping) {
+                logger.warn("attempted to stop motor " + this.getSlotId() + ": from non Running state:" + slotState.get());
+            }
+        }
+    }
+
+    /**
+     * An op context which knows the stride it was submitted in.
+     */
+    private static class StrideOp extends OpContext {
+        private StrideOps strideOps;
+
+        StrideOp(Sink sink, long cycle, long delayNanos) {
+            super(sink, cycle, delayNanos);
+        }
+    }
+
+    /**
+     * The timing, the count of submitted and completed ops, and the results of one stride.
+     */
+    private static class StrideOps {
+        private long delayNanos;
+        private long startedAtNanos;
+        private int submitted;
+        private int completed;
+        private boolean allSubmitted;
+        private CycleResultSegmentBuffer results;
+
+        StrideOps reset(long delayNanos, int stride) {
+            if (results == null || results.getResultCapacity() != stride) {
+                results = new CycleResultSegmentBuffer(stride);
+            } else {
+                results.clear();
+            }
+            this.delayNanos = delayNanos;
+            this.startedAtNanos = System.nanoTime();
+            this.submitted = 0;
+            this.completed = 0;
+            this.allSubmitted = false;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityimpl.motor;
+
+/**
+ * How much of the motor loop is timed, as set by the <em>instrument</em> activity parameter.
+ * Each level includes the timers of the levels before it. Levels below {@link #cycle} use
+ * a motor loop which does not read the clock for each cycle at all.
+ */
+public enum InstrumentationLevel {
+
+    /**
+     * No motor timers are updated.
+     */
+    none,
+
+    /**
+     * Only the strides timer is updated, once per stride.
+     */
+    stride,
+
+    /**
+     * The cycles and read_input timers are updated as well.
+     */
+    cycle,
+
+    /**
+     * The phases timer is updated as well. This is the default.
+     */
+    phase;
+
+    public static InstrumentationLevel forParam(String level) {
+        try {
+            return InstrumentationLevel.valueOf(level);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("instrument=" + level + " is not valid, use one of none, stride, cycle or phase");
+        }
+    }
+
+    public boolean includes(InstrumentationLevel level) {
+        return this.compareTo(level) >= 0;
+    }
+}
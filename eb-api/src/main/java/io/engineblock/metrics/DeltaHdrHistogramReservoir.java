@@ -25,6 +25,8 @@ import org.HdrHistogram.Recorder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * A custom wrapping of snapshotting logic on the HdrHistogram. This histogram will always report the last histogram
  * since it was most recently asked for with the getDeltaSnapshot(...) method.
@@ -34,11 +36,23 @@ import org.slf4j.LoggerFactory;
  * <p>This implementation also supports attaching a single log writer. If a log writer is attached, each
  * time an interval is snapshotted internally, the data will also be written to an hdr log via the writer.</p>
  *
+ * <p>Values are recorded into one of a fixed number of recorder stripes, chosen by the id of the recording
+ * thread, so that threads which record values at the same time seldom contend on the same histogram state.
+ * The stripes are only merged when a snapshot is taken. Each stripe holds two full histograms, so it is
+ * only created when a thread first records into it. A reservoir which is recorded by one thread costs
+ * the same as an unstriped one, and no reservoir grows beyond its stripe count, however many threads
+ * record into it. There are {@link #DEFAULT_STRIPES} stripes unless more are asked for.</p>
  */
 public final class DeltaHdrHistogramReservoir implements Reservoir {
     private final static Logger logger = LoggerFactory.getLogger(DeltaHdrHistogramReservoir.class);
 
-    private final Recorder recorder;
+    public final static int DEFAULT_STRIPES = 4;
+    public final static int MAX_STRIPES = 64;
+
+    private final int significantDigits;
+    private final AtomicReferenceArray<Recorder> stripes;
+    private final int stripeMask;
+    private final Histogram stripeInterval;
     private Histogram lastHistogram;
 
     private Histogram intervalHistogram;
@@ -53,18 +67,28 @@ public final class DeltaHdrHistogramReservoir implements Reservoir {
      * @param significantDigits how many significant digits to track in the reservoir
      */
     public DeltaHdrHistogramReservoir(String name, int significantDigits) {
+        this(name, significantDigits, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Create a reservoir with the given number of recorder stripes.
+     *
+     * @param name the name to give to the reservoir, for logging purposes
+     * @param significantDigits how many significant digits to track in the reservoir
+     * @param stripes the number of recorders which values are spread over, which is rounded up to a power of two
+     */
+    public DeltaHdrHistogramReservoir(String name, int significantDigits, int stripes) {
+        if (stripes < 1 || stripes > MAX_STRIPES) {
+            throw new RuntimeException("The number of histogram stripes must be between 1 and " + MAX_STRIPES + ", not " + stripes);
+        }
         this.metricName = name;
-        this.recorder = new Recorder(significantDigits);
-
-        /*
-         * Start by flipping the recorder's interval histogram.
-         * - it starts our counting at zero. Arguably this might be a bad thing if you wanted to feed in
-         *   a recorder that already had some measurements? But that seems crazy.
-         * - intervalHistogram can be nonnull.
-         * - it lets us figure out the number of significant digits to use in runningTotals.
-         */
-        intervalHistogram = recorder.getIntervalHistogram();
-        lastHistogram = new Histogram(intervalHistogram.getNumberOfSignificantValueDigits());
+        this.significantDigits = significantDigits;
+        int stripeCount = Integer.highestOneBit(stripes * 2 - 1);
+        this.stripes = new AtomicReferenceArray<>(stripeCount);
+        this.stripeMask = stripeCount - 1;
+        this.stripeInterval = new Histogram(significantDigits);
+        intervalHistogram = new Histogram(significantDigits);
+        lastHistogram = new Histogram(significantDigits);
     }
 
     @Override
@@ -75,9 +99,21 @@ public final class DeltaHdrHistogramReservoir implements Reservoir {
 
     @Override
     public void update(long value) {
+        // spread sequential thread ids over the stripes
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        int stripe = (int) (id >>> 32) & stripeMask;
+        Recorder recorder = stripes.get(stripe);
+        if (recorder == null) {
+            recorder = createStripe(stripe);
+        }
         recorder.recordValue(value);
     }
 
+    private Recorder createStripe(int stripe) {
+        stripes.compareAndSet(stripe, null, new Recorder(significantDigits));
+        return stripes.get(stripe);
+    }
+
     /**
      * @return the data accumulated since the reservoir was created, or since the last call to this method
      */
@@ -103,7 +139,14 @@ public final class DeltaHdrHistogramReservoir implements Reservoir {
      * @return a copy of the accumulated state since the reservoir last had a snapshot
      */
     private synchronized Histogram getDataSinceLastSnapshotAndUpdate() {
-        intervalHistogram = recorder.getIntervalHistogram(intervalHistogram);
+        intervalHistogram.reset();
+        for (int i = 0; i < stripes.length(); i++) {
+            Recorder recorder = stripes.get(i);
+            if (recorder != null) {
+                recorder.getIntervalHistogramInto(stripeInterval);
+                intervalHistogram.add(stripeInterval);
+            }
+        }
         long intervalHistogramStartTime = intervalHistogramEndTime;
         intervalHistogramEndTime = System.currentTimeMillis();
 
@@ -129,7 +172,7 @@ public final class DeltaHdrHistogramReservoir implements Reservoir {
     }
 
     public DeltaHdrHistogramReservoir copySettings() {
-        return new DeltaHdrHistogramReservoir(this.metricName, intervalHistogram.getNumberOfSignificantValueDigits());
+        return new DeltaHdrHistogramReservoir(this.metricName, significantDigits, stripes.length());
     }
 
     public void attachLogWriter(HistogramLogWriter logWriter) {
@@ -139,4 +182,17 @@ public final class DeltaHdrHistogramReservoir implements Reservoir {
     public Histogram getLastHistogram() {
         return lastHistogram;
     }
+
+    /**
+     * @return the number of stripes which have been recorded into, and so hold histograms
+     */
+    int getStripesInUse() {
+        int inUse = 0;
+        for (int i = 0; i < stripes.length(); i++) {
+            if (stripes.get(i) != null) {
+                inUse++;
+            }
+        }
+        return inUse;
+    }
 }
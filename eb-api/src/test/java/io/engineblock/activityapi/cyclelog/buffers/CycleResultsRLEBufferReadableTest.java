@@ -21,6 +21,7 @@ import io.engineblock.activityapi.cyclelog.buffers.results.CycleResult;
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsSegment;
 import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLEBufferReadable;
 import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLEBufferTarget;
+import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLECompactCodec;
 import org.testng.annotations.Test;
 
 import java.nio.ByteBuffer;
@@ -112,4 +113,26 @@ public class CycleResultsRLEBufferReadableTest {
 //
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void testCompactBlocksDecode() {
+        ByteBuffer bb = ByteBuffer.allocate(3 * (Long.BYTES + Long.BYTES + Byte.BYTES));
+        bb.putLong(31L).putLong(32L).put((byte) 127);
+        bb.putLong(41L).putLong(43L).put((byte) 53);
+        bb.putLong(12L).putLong(15L).put((byte) 27);
+        bb.flip();
+
+        ByteBuffer blocks = ByteBuffer.allocate(2 * CycleResultsRLECompactCodec.maxBlockBytes(3));
+        CycleResultsRLECompactCodec.encode(bb.duplicate(), CycleResultsRLECompactCodec.VARINT, blocks);
+        CycleResultsRLECompactCodec.encode(bb.duplicate(), CycleResultsRLECompactCodec.DEFLATE, blocks);
+        blocks.flip();
+        CycleResultsRLEBufferReadable crb = CycleResultsRLEBufferReadable.decode(blocks);
+
+        ArrayList<CycleResult> cycles = new ArrayList<>();
+        crb.getCycleResultIterable().iterator().forEachRemaining(cycles::add);
+        long[] cycleValues = cycles.stream().mapToLong(CycleResult::getCycle).toArray();
+        assertThat(cycleValues).containsExactly(31L, 41L, 42L, 12L, 13L, 14L, 31L, 41L, 42L, 12L, 13L, 14L);
+        int[] resultValues = cycles.stream().mapToInt(CycleResult::getResult).toArray();
+        assertThat(resultValues).containsExactly(127, 53, 53, 27, 27, 27, 127, 53, 53, 27, 27, 27);
+    }
+}
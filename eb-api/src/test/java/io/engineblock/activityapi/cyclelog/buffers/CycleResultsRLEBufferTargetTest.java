@@ -102,4 +102,23 @@ public class CycleResultsRLEBufferTargetTest {
 
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void testCycleSpansAreCompacted() {
+        CycleResultsRLEBufferTarget tb = new CycleResultsRLEBufferTarget(10);
+        tb.onCycleSpan(0L,10L,1);
+        tb.onCycleSpan(10L,20L,1);
+        tb.onCycleResult(20L,1);
+        tb.onCycleSpan(21L,30L,2);
+        tb.onCycleSpan(40L,50L,2);
+        assertThat(tb.getRecordCount()).isEqualTo(2);
+
+        CycleResultsRLEBufferReadable r = tb.toSegmentsReadable();
+        ArrayList<CycleResult> cycles = new ArrayList<>();
+        r.getCycleResultIterable().iterator().forEachRemaining(cycles::add);
+        assertThat(cycles).hasSize(40);
+        assertThat(cycles.get(20).getResult()).isEqualTo(1);
+        assertThat(cycles.get(21).getResult()).isEqualTo(2);
+        assertThat(cycles.get(30).getCycle()).isEqualTo(40L);
+    }
+}
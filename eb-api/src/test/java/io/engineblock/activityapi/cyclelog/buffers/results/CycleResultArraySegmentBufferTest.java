@@ -43,4 +43,27 @@ public class CycleResultArraySegmentBufferTest {
 
     }
 
+    @Test
+    public void testReusedBuffering() {
+        CycleResultSegmentBuffer buf = new CycleResultSegmentBuffer(3);
+        buf.append(1L,1);
+        buf.append(2L,2);
+        buf.append(3L,3);
+        CycleResultsSegment first = buf.flipReader();
+        CycleResultArray copy = new CycleResultArray(first);
+        assertThat(first.getCount()).isEqualTo(3);
+
+        buf.clear();
+        buf.append(4L,5);
+        CycleResultsSegment second = buf.flipReader();
+        assertThat((Object) second).isSameAs(first);
+        long[] cycles = StreamSupport.stream(second.spliterator(), false)
+                .mapToLong(CycleResult::getCycle).toArray();
+        assertThat(cycles).containsExactly(4L);
+
+        long[] copiedCycles = StreamSupport.stream(copy.spliterator(), false)
+                .mapToLong(CycleResult::getCycle).toArray();
+        assertThat(copiedCycles).containsExactly(1L,2L,3L);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,232 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityapi.cyclelog.inputs.cyclelog;
+
+import io.engineblock.activityapi.cyclelog.buffers.cycles.CycleSegment;
+import io.engineblock.activityapi.cyclelog.outputs.cyclelog.CycleLogOutput;
+import io.engineblock.activityapi.input.Input;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class CycleLogFileTest {
+
+    /**
+     * Write cycles 0..1000 in runs of 3 cycles with the same result, skipping every 10th cycle,
+     * in extents of 10 spans.
+     */
+    private File writeLog(int version) {
+        return writeLog(version, false);
+    }
+
+    private File writeLog(int version, boolean async) {
+        try {
+            File cyclefile = File.createTempFile("cycle-log-file-test", ".cyclelog");
+            cyclefile.deleteOnExit();
+            CycleLogOutput out = async ? new CycleLogOutput(cyclefile, 10, version, 2, 1000L)
+                    : new CycleLogOutput(cyclefile, 10, version);
+            for (long cycle = 0; cycle < 1000; cycle++) {
+                if (cycle % 10 != 9) {
+                    out.onCycleResult(cycle, (int) (cycle / 3) % 2);
+                }
+            }
+            out.close();
+            return cyclefile;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void testVersion2Index() {
+        CycleLogFile logFile = new CycleLogFile(writeLog(2));
+        assertThat(logFile.getVersion()).isEqualTo(2);
+        assertThat(logFile.isOrdered()).isTrue();
+        assertThat(logFile.getExtentCount()).isGreaterThan(1);
+        logFile.verify();
+        assertThat(logFile.getMinCycle(0)).isEqualTo(0L);
+        assertThat(logFile.getNextMinCycle(logFile.getSpanCount() - 1)).isEqualTo(999L);
+    }
+
+    @Test
+    public void testVersion1HasNoIndex() {
+        CycleLogFile logFile = new CycleLogFile(writeLog(1));
+        assertThat(logFile.getVersion()).isEqualTo(1);
+        assertThat(logFile.isOrdered()).isFalse();
+        assertThat(logFile.getExtentCount()).isEqualTo(0);
+        assertThat(logFile.getSpanCount()).isEqualTo(new CycleLogFile(writeLog(2)).getSpanCount());
+    }
+
+    @Test
+    public void testBothVersionsReadTheSame() {
+        assertThat(readAll(new CycleLogInput(writeLog(1).getPath())))
+                .isEqualTo(readAll(new CycleLogInput(writeLog(2).getPath())));
+    }
+
+    @Test
+    public void testCompactVersionReadsTheSame() {
+        File compact = writeLog(CycleLogFile.VERSION_COMPACT);
+        CycleLogFile logFile = new CycleLogFile(compact);
+        assertThat(logFile.getVersion()).isEqualTo(CycleLogFile.VERSION_COMPACT);
+        assertThat(logFile.isOrdered()).isTrue();
+        assertThat(logFile.findSpan(500L)).isEqualTo(new CycleLogFile(writeLog(2)).findSpan(500L));
+        List<Long> expected = readAll(new CycleLogInput(writeLog(2).getPath()));
+        assertThat(readAll(new CycleLogInput(compact.getPath()))).isEqualTo(expected);
+        assertThat(readAll(new ParallelCycleLogInput(compact.getPath()))).isEqualTo(expected);
+    }
+
+    @Test
+    public void testCompactVersionSpansMatch() {
+        CycleLogFile fixed = new CycleLogFile(writeLog(2));
+        CycleLogFile compact = new CycleLogFile(writeLog(CycleLogFile.VERSION_COMPACT));
+        compact.verify();
+        assertThat(compact.getSpanCount()).isEqualTo(fixed.getSpanCount());
+        // read backwards, so that each span is in another block than the one read before it
+        for (int span = compact.getSpanCount() - 1; span >= 0; span -= 7) {
+            assertThat(compact.getMinCycle(span)).isEqualTo(fixed.getMinCycle(span));
+            assertThat(compact.getNextMinCycle(span)).isEqualTo(fixed.getNextMinCycle(span));
+            assertThat(compact.getResult(span)).isEqualTo(fixed.getResult(span));
+        }
+        int firstSpan = compact.findSpan(500L);
+        Iterator<ByteBuffer> buffers = compact.getSpanBuffers(firstSpan);
+        ByteBuffer first = buffers.next();
+        assertThat(first.getLong(first.position())).isEqualTo(fixed.getMinCycle(firstSpan));
+        int spanBytes = first.remaining();
+        int blocks = 1;
+        while (buffers.hasNext()) {
+            spanBytes += buffers.next().remaining();
+            blocks++;
+        }
+        assertThat(blocks).isGreaterThan(1);
+        assertThat(spanBytes).isEqualTo((compact.getSpanCount() - firstSpan) * CycleLogFile.SPAN_BYTES);
+    }
+
+    @Test
+    public void testFindSpan() {
+        CycleLogFile logFile = new CycleLogFile(writeLog(2));
+        for (long cycle = -1; cycle <= 1000; cycle++) {
+            int span = logFile.findSpan(cycle);
+            if (span < logFile.getSpanCount()) {
+                assertThat(logFile.getNextMinCycle(span)).isGreaterThan(cycle);
+            }
+            if (span > 0) {
+                assertThat(logFile.getNextMinCycle(span - 1)).isLessThanOrEqualTo(cycle);
+            }
+        }
+        assertThat(logFile.findSpan(1000L)).isEqualTo(logFile.getSpanCount());
+    }
+
+    @Test
+    public void testCycleRange() {
+        File logFile = writeLog(2);
+        List<Long> expected = new ArrayList<>();
+        for (Long cycle : readAll(new CycleLogInput(logFile.getPath()))) {
+            if (cycle >= 500 && cycle < 620) {
+                expected.add(cycle);
+            }
+        }
+        assertThat(expected).contains(500L, 618L).doesNotContain(509L, 619L);
+        assertThat(readAll(new CycleLogInput(logFile.getPath(), 500L, 620L))).isEqualTo(expected);
+        assertThat(readAll(new ParallelCycleLogInput(logFile.getPath(), 500L, 620L))).isEqualTo(expected);
+        assertThat(readAll(new CycleLogInput(writeLog(1).getPath(), 500L, 620L))).isEqualTo(expected);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = "CRC mismatch in extent 2.*")
+    public void testCorruptExtent() throws Exception {
+        File cyclefile = writeLog(2);
+        try (RandomAccessFile raf = new RandomAccessFile(cyclefile, "rw")) {
+            long offset = CycleLogFile.HEADER_BYTES + 25 * CycleLogFile.SPAN_BYTES + Long.BYTES + Long.BYTES;
+            raf.seek(offset);
+            int result = raf.read();
+            raf.seek(offset);
+            raf.write(result ^ 1);
+        }
+        new CycleLogFile(cyclefile).verify();
+    }
+
+    @Test
+    public void testUnclosedVersion2() throws Exception {
+        File cyclefile = writeLog(2);
+        CycleLogFile closed = new CycleLogFile(cyclefile);
+        int spanCount = closed.getSpanCount();
+        int span = closed.findSpan(500L);
+        closed.close();
+        try (RandomAccessFile raf = new RandomAccessFile(cyclefile, "rw")) {
+            raf.setLength(CycleLogFile.HEADER_BYTES + spanCount * CycleLogFile.SPAN_BYTES + 5);
+        }
+        CycleLogFile unclosed = new CycleLogFile(cyclefile);
+        assertThat(unclosed.getSpanCount()).isEqualTo(spanCount);
+        assertThat(unclosed.isOrdered()).isFalse();
+        assertThat(unclosed.findSpan(500L)).isEqualTo(span);
+    }
+
+    @Test
+    public void testAsyncWriterMatchesSync() {
+        File sync = writeLog(2);
+        File async = writeLog(2, true);
+        assertThat(async.length()).isEqualTo(sync.length());
+        CycleLogFile logFile = new CycleLogFile(async);
+        logFile.verify();
+        assertThat(logFile.isOrdered()).isTrue();
+        assertThat(readAll(new CycleLogInput(async.getPath())))
+                .isEqualTo(readAll(new CycleLogInput(sync.getPath())));
+    }
+
+    @Test
+    public void testClosedFileIsTruncated() {
+        File cyclefile = writeLog(2);
+        CycleLogFile logFile = new CycleLogFile(cyclefile);
+        assertThat(cyclefile.length()).isEqualTo(CycleLogFile.HEADER_BYTES
+                + logFile.getSpanCount() * CycleLogFile.SPAN_BYTES
+                + logFile.getExtentCount() * CycleLogFile.EXTENT_BYTES
+                + CycleLogFile.TRAILER_BYTES);
+    }
+
+    @Test
+    public void testUnclosedPreallocatedVersion2() throws Exception {
+        File cyclefile = writeLog(2);
+        CycleLogFile closed = new CycleLogFile(cyclefile);
+        int spanCount = closed.getSpanCount();
+        closed.close();
+        try (RandomAccessFile raf = new RandomAccessFile(cyclefile, "rw")) {
+            raf.setLength(CycleLogFile.HEADER_BYTES + spanCount * CycleLogFile.SPAN_BYTES);
+            raf.setLength(CycleLogOutput.DEFAULT_CHUNK_SIZE);
+        }
+        CycleLogFile unclosed = new CycleLogFile(cyclefile);
+        assertThat(unclosed.getSpanCount()).isEqualTo(spanCount);
+        assertThat(unclosed.getNextMinCycle(spanCount - 1)).isEqualTo(999L);
+    }
+
+    private List<Long> readAll(Input input) {
+        List<Long> cycles = new ArrayList<>();
+        CycleSegment segment;
+        while ((segment = input.getInputSegment(7)) != null) {
+            while (!segment.isExhausted()) {
+                cycles.add(segment.nextCycle());
+            }
+        }
+        return cycles;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityapi.cyclelog.inputs.cyclelog;
+
+import io.engineblock.activityapi.cyclelog.buffers.cycles.CycleSegment;
+import io.engineblock.activityapi.cyclelog.buffers.results.ResultReadable;
+import io.engineblock.activityapi.cyclelog.outputs.cyclelog.CycleLogOutput;
+import io.engineblock.activityapi.input.Input;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class ParallelCycleLogInputTest {
+
+    private final static String filepath = "parallel-cycle-log-reader-test";
+    private File cyclefile;
+
+    /**
+     * Write runs of 1 to 9 cycles with results 0, 1, 2, 0, 1, 2, ..., with a gap after
+     * every 10th run, so that there are many spans over many checkpoints.
+     */
+    @BeforeClass
+    public void createTempFile() {
+        try {
+            cyclefile = File.createTempFile(filepath, "cyclelog");
+            cyclefile.deleteOnExit();
+
+            CycleLogOutput out = new CycleLogOutput(cyclefile, 100);
+            long cycle = 0L;
+            for (int run = 0; run < 1000; run++) {
+                for (int i = 0; i < (run % 9) + 1; i++) {
+                    out.onCycleResult(cycle++, run % 3);
+                }
+                if (run % 10 == 9) {
+                    cycle += 5;
+                }
+            }
+            out.close();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        assertThat(cyclefile).exists();
+    }
+
+    @Test
+    public void testSameCyclesAsCycleLogInput() {
+        for (int segmentLength : new int[]{1, 3, 7, 100}) {
+            assertThat(readAll(new ParallelCycleLogInput(cyclefile.getPath()), segmentLength))
+                    .isEqualTo(readAll(new CycleLogInput(cyclefile.getPath()), segmentLength));
+        }
+    }
+
+    @Test
+    public void testFilteredCyclesAsCycleLogInput() {
+        Predicate<ResultReadable> filter = r -> r.getResult() != 1;
+        for (int segmentLength : new int[]{1, 3, 7, 100}) {
+            ParallelCycleLogInput parallel = new ParallelCycleLogInput(cyclefile.getPath());
+            parallel.setFilter(filter);
+            CycleLogInput serial = new CycleLogInput(cyclefile.getPath());
+            serial.setFilter(filter);
+            List<Long> cycles = readAll(parallel, segmentLength);
+            assertThat(cycles).isEqualTo(readAll(serial, segmentLength));
+            assertThat(cycles).doesNotContain(1L, 2L);
+        }
+    }
+
+    @Test
+    public void testCycleCountsMatchProvidedCycles() {
+        Predicate<ResultReadable> filter = r -> r.getResult() != 1;
+        ParallelCycleLogInput parallel = new ParallelCycleLogInput(cyclefile.getPath());
+        parallel.setFilter(filter);
+        CycleLogInput serial = new CycleLogInput(cyclefile.getPath());
+        serial.setFilter(filter);
+        CycleLogInput reader = new CycleLogInput(cyclefile.getPath());
+        reader.setFilter(filter);
+        List<Long> cycles = readAll(reader, 10);
+        long last = cycles.get(cycles.size() - 1);
+        for (long min = 0L; min <= last; min += 37) {
+            long nextMin = min + 37;
+            long expected = 0L;
+            for (Long cycle : cycles) {
+                if (cycle >= min && cycle < nextMin) {
+                    expected++;
+                }
+            }
+            assertThat(parallel.getCycleCount(min, nextMin)).isEqualTo(expected);
+            assertThat(serial.getCycleCount(min, nextMin)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testContiguousSegmentsAreReused() {
+        ParallelCycleLogInput input = new ParallelCycleLogInput(cyclefile.getPath());
+        CycleSegment first = input.getInputSegment(1);
+        CycleSegment second = input.getInputSegment(1, first);
+        assertThat(second).isSameAs(first);
+        assertThat(second.nextCycle()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testConcurrentReadersProvideEachCycleOnce() throws Exception {
+        List<Long> expected = readAll(new CycleLogInput(cyclefile.getPath()), 1);
+        ParallelCycleLogInput input = new ParallelCycleLogInput(cyclefile.getPath());
+
+        int threads = 4;
+        BitSet[] seen = new BitSet[threads];
+        Thread[] readers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            BitSet readerSeen = seen[t] = new BitSet();
+            readers[t] = new Thread(() -> {
+                CycleSegment segment = null;
+                while ((segment = input.getInputSegment(5, segment)) != null) {
+                    while (!segment.isExhausted()) {
+                        readerSeen.set((int) segment.nextCycle());
+                    }
+                }
+            });
+            readers[t].start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        BitSet all = new BitSet();
+        int total = 0;
+        for (BitSet readerSeen : seen) {
+            total += readerSeen.cardinality();
+            all.or(readerSeen);
+        }
+        assertThat(total).isEqualTo(expected.size());
+        assertThat(all.cardinality()).isEqualTo(expected.size());
+        for (Long cycle : expected) {
+            assertThat(all.get(cycle.intValue())).isTrue();
+        }
+    }
+
+    private List<Long> readAll(Input input, int segmentLength) {
+        List<Long> cycles = new ArrayList<>();
+        CycleSegment segment;
+        while ((segment = input.getInputSegment(segmentLength)) != null) {
+            while (!segment.isExhausted()) {
+                cycles.add(segment.nextCycle());
+            }
+        }
+        return cycles;
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityapi.cyclelog.outputs;
+
+import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsIntervalSegment;
+import io.engineblock.activityapi.output.Output;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class ReorderingWindowResultBufferTest {
+
+    private static class RecordingOutput implements Output {
+        private final List<Long> cycles = new ArrayList<>();
+        private final AtomicInteger callers = new AtomicInteger();
+        private volatile boolean overlapped = false;
+        private boolean closed = false;
+
+        @Override
+        public boolean onCycleResult(long completedCycle, int result) {
+            if (callers.incrementAndGet() > 1) {
+                overlapped = true;
+            }
+            cycles.add(completedCycle);
+            callers.decrementAndGet();
+            return true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private CycleResultsIntervalSegment segment(long cycle, int count) {
+        return CycleResultsIntervalSegment.forData(cycle, new byte[count]);
+    }
+
+    @Test
+    public void testEmitsWhenGapIsFilled() throws Exception {
+        RecordingOutput downstream = new RecordingOutput();
+        ReorderingWindowResultBuffer buffer = new ReorderingWindowResultBuffer(downstream, 1000, 0L);
+        buffer.onCycleResultSegment(segment(3L, 3));
+        buffer.onCycleResultSegment(segment(6L, 2));
+        assertThat(downstream.cycles).isEmpty();
+        buffer.onCycleResultSegment(segment(0L, 3));
+        assertThat(downstream.cycles).containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L);
+        buffer.onCycleResultSegment(segment(8L, 1));
+        assertThat(downstream.cycles).hasSize(9);
+        buffer.close();
+        assertThat(downstream.closed).isTrue();
+    }
+
+    @Test
+    public void testEmitsPastGapAtThreshold() throws Exception {
+        RecordingOutput downstream = new RecordingOutput();
+        ReorderingWindowResultBuffer buffer = new ReorderingWindowResultBuffer(downstream, 10, 0L);
+        buffer.onCycleResultSegment(segment(20L, 5));
+        buffer.onCycleResultSegment(segment(10L, 4));
+        assertThat(downstream.cycles).isEmpty();
+        buffer.onCycleResultSegment(segment(30L, 1));
+        assertThat(downstream.cycles).containsExactly(10L, 11L, 12L, 13L);
+        buffer.onCycleResultSegment(segment(14L, 6));
+        assertThat(downstream.cycles).hasSize(15);
+        assertThat(downstream.cycles.get(14)).isEqualTo(24L);
+        buffer.close();
+        assertThat(downstream.cycles).hasSize(16);
+    }
+
+    @Test
+    public void testConcurrentProducersAreOrdered() throws Exception {
+        RecordingOutput downstream = new RecordingOutput();
+        ReorderingWindowResultBuffer buffer = new ReorderingWindowResultBuffer(downstream, 1_000_000, 0L);
+        int threads = 4;
+        int segments = 2500;
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int slot = t;
+            producers.add(new Thread(() -> {
+                for (int s = 0; s < segments; s++) {
+                    buffer.onCycleResultSegment(segment((s * threads + slot) * 10L, 10));
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        buffer.close();
+
+        assertThat(downstream.overlapped).isFalse();
+        assertThat(downstream.cycles).hasSize(threads * segments * 10);
+        for (int i = 0; i < downstream.cycles.size(); i++) {
+            assertThat(downstream.cycles.get(i)).isEqualTo((long) i);
+        }
+    }
+}
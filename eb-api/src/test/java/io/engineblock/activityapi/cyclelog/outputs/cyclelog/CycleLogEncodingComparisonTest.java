@@ -0,0 +1,128 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityapi.cyclelog.outputs.cyclelog;
+
+import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLECompactCodec;
+import io.engineblock.activityapi.cyclelog.inputs.cyclelog.CycleLogFile;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the size and the write and read times of the cyclelog encodings, for a log where
+ * most spans are a single cycle, with a few gaps.
+ */
+@Test
+public class CycleLogEncodingComparisonTest {
+
+    private final static long CYCLES = 1_000_000L;
+
+    private File write(int version, int encoding) throws Exception {
+        File cyclefile = File.createTempFile("cycle-log-encoding-test", ".cyclelog");
+        cyclefile.deleteOnExit();
+        CycleLogOutput out = new CycleLogOutput(cyclefile, 1000, version, encoding);
+        for (long cycle = 0; cycle < CYCLES; cycle++) {
+            if (cycle % 100 != 99) {
+                out.onCycleResult(cycle, (int) ((cycle * 7919L) % 13L));
+            }
+        }
+        out.close();
+        return cyclefile;
+    }
+
+    private long checksum(CycleLogFile logFile) {
+        long sum = 0L;
+        for (int span = 0; span < logFile.getSpanCount(); span++) {
+            sum = sum * 31 + logFile.getMinCycle(span) + logFile.getNextMinCycle(span) * 7 + logFile.getResult(span);
+        }
+        return sum;
+    }
+
+    @Test
+    public void testEncodingSizesAndThroughput() throws Exception {
+        int[][] variants = {
+                {CycleLogFile.VERSION, CycleResultsRLECompactCodec.FIXED},
+                {CycleLogFile.VERSION_COMPACT, CycleResultsRLECompactCodec.VARINT},
+                {CycleLogFile.VERSION_COMPACT, CycleResultsRLECompactCodec.DEFLATE}
+        };
+        String[] names = {"fixed", "varint", "deflate"};
+        long[] sizes = new long[variants.length];
+        long[] checksums = new long[variants.length];
+        int spanCount = -1;
+
+        for (int i = 0; i < variants.length; i++) {
+            long writeStart = System.nanoTime();
+            File cyclefile = write(variants[i][0], variants[i][1]);
+            long writeNanos = System.nanoTime() - writeStart;
+
+            long readStart = System.nanoTime();
+            CycleLogFile logFile = new CycleLogFile(cyclefile);
+            logFile.verify();
+            checksums[i] = checksum(logFile);
+            long readNanos = System.nanoTime() - readStart;
+
+            sizes[i] = cyclefile.length();
+            if (spanCount < 0) {
+                spanCount = logFile.getSpanCount();
+            }
+            assertThat(logFile.getSpanCount()).isEqualTo(spanCount);
+            logFile.close();
+            System.out.println(String.format("%-8s %10d bytes, %6.2f bytes/span, write %6.1fms, read %6.1fms",
+                    names[i], sizes[i], (double) sizes[i] / spanCount, writeNanos / 1E6, readNanos / 1E6));
+        }
+
+        assertThat(checksums[1]).isEqualTo(checksums[0]);
+        assertThat(checksums[2]).isEqualTo(checksums[0]);
+        assertThat(sizes[1]).isLessThan(sizes[0] / 4);
+        assertThat(sizes[2]).isLessThan(sizes[1]);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = "CRC mismatch in extent 0.*")
+    public void testCorruptCompactExtent() throws Exception {
+        File cyclefile = write(CycleLogFile.VERSION_COMPACT, CycleResultsRLECompactCodec.VARINT);
+        try (RandomAccessFile raf = new RandomAccessFile(cyclefile, "rw")) {
+            long offset = CycleLogFile.HEADER_BYTES + CycleResultsRLECompactCodec.BLOCK_HEADER_BYTES + 10;
+            raf.seek(offset);
+            int value = raf.read();
+            raf.seek(offset);
+            raf.write(value ^ 1);
+        }
+        new CycleLogFile(cyclefile).verify();
+    }
+
+    @Test
+    public void testUnclosedCompactFile() throws Exception {
+        File cyclefile = write(CycleLogFile.VERSION_COMPACT, CycleResultsRLECompactCodec.DEFLATE);
+        CycleLogFile closed = new CycleLogFile(cyclefile);
+        int spanCount = closed.getSpanCount();
+        long checksum = checksum(closed);
+        int footerBytes = closed.getExtentCount() * CycleLogFile.EXTENT_BYTES + CycleLogFile.TRAILER_BYTES;
+        closed.close();
+        try (RandomAccessFile raf = new RandomAccessFile(cyclefile, "rw")) {
+            raf.setLength(raf.length() - footerBytes);
+            raf.setLength(CycleLogOutput.DEFAULT_CHUNK_SIZE);
+        }
+        CycleLogFile unclosed = new CycleLogFile(cyclefile);
+        assertThat(unclosed.getSpanCount()).isEqualTo(spanCount);
+        assertThat(checksum(unclosed)).isEqualTo(checksum);
+        assertThat(unclosed.isOrdered()).isFalse();
+        unclosed.close();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityapi.cyclelog.outputs.cyclelog;
+
+import io.engineblock.activityapi.cyclelog.inputs.cyclelog.CycleLogFile;
+import io.engineblock.activityapi.output.Output;
+import io.engineblock.activityimpl.SimpleActivity;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class CycleLogMergerUtilityTest {
+
+    private File tempFile(String name) throws Exception {
+        File file = File.createTempFile(name, ".cyclelog");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Two slots each record alternating chunks of 10 cycles, so the merged spans should
+     * compact into runs of 3 cycles with the same result.
+     */
+    @Test
+    public void testMergeInterleavedSlots() throws Exception {
+        File slot0 = tempFile("merger-test-slot0");
+        File slot1 = tempFile("merger-test-slot1");
+        CycleLogOutput out0 = new CycleLogOutput(slot0, 10);
+        CycleLogOutput out1 = new CycleLogOutput(slot1, 10);
+        for (long cycle = 0; cycle < 999; cycle++) {
+            CycleLogOutput out = (cycle / 10) % 2 == 0 ? out0 : out1;
+            out.onCycleResult(cycle, (int) (cycle / 3) % 2);
+        }
+        out0.close();
+        out1.close();
+
+        File merged = tempFile("merger-test-merged");
+        int spans = CycleLogMergerUtility.merge(Arrays.asList(slot0, slot1), merged);
+        assertThat(spans).isEqualTo(333);
+
+        CycleLogFile logFile = new CycleLogFile(merged);
+        logFile.verify();
+        assertThat(logFile.isOrdered()).isTrue();
+        for (int span = 0; span < logFile.getSpanCount(); span++) {
+            assertThat(logFile.getMinCycle(span)).isEqualTo(span * 3L);
+            assertThat(logFile.getNextMinCycle(span)).isEqualTo(span * 3L + 3L);
+            assertThat(logFile.getResult(span)).isEqualTo(span % 2);
+        }
+        logFile.close();
+    }
+
+    @Test
+    public void testMergeUnorderedInput() throws Exception {
+        File unordered = tempFile("merger-test-unordered");
+        CycleLogOutput out = new CycleLogOutput(unordered, 10);
+        for (long cycle = 90; cycle >= 0; cycle -= 10) {
+            out.onCycleResult(cycle, 1);
+        }
+        out.close();
+        assertThat(new CycleLogFile(unordered).isOrdered()).isFalse();
+
+        File merged = tempFile("merger-test-merged");
+        CycleLogMergerUtility.merge(Arrays.asList(unordered), merged);
+        CycleLogFile logFile = new CycleLogFile(merged);
+        assertThat(logFile.isOrdered()).isTrue();
+        List<Long> cycles = new ArrayList<>();
+        for (int span = 0; span < logFile.getSpanCount(); span++) {
+            cycles.add(logFile.getMinCycle(span));
+        }
+        assertThat(cycles).containsExactly(0L, 10L, 20L, 30L, 40L, 50L, 60L, 70L, 80L, 90L);
+        logFile.close();
+    }
+
+    @Test
+    public void testPerSlotDispenser() throws Exception {
+        File merged = tempFile("merger-test-perslot");
+        String file = merged.getPath().substring(0, merged.getPath().length() - ".cyclelog".length());
+        SimpleActivity activity = new SimpleActivity("alias=perslot;output=type:cyclelog,file:" + file + ",perslot:true");
+        CycleLogOutputType.PerSlotDispenser dispenser =
+                (CycleLogOutputType.PerSlotDispenser) new CycleLogOutputType().getOutputDispenser(activity);
+
+        Output slot0 = dispenser.getOutput(0L);
+        Output slot1 = dispenser.getOutput(1L);
+        assertThat(slot0).isNotSameAs(slot1);
+        for (long cycle = 0; cycle < 100; cycle++) {
+            (cycle % 2 == 0 ? slot0 : slot1).onCycleResult(cycle, 0);
+        }
+        File slotFile = CycleLogOutputType.PerSlotDispenser.getSlotFile(merged, 0L);
+        activity.closeAutoCloseables();
+
+        assertThat(slotFile.exists()).isFalse();
+        CycleLogFile logFile = new CycleLogFile(merged);
+        assertThat(logFile.getSpanCount()).isEqualTo(1);
+        assertThat(logFile.getMinCycle(0)).isEqualTo(0L);
+        assertThat(logFile.getNextMinCycle(0)).isEqualTo(100L);
+        logFile.close();
+    }
+
+    @Test
+    public void testPerSlotDispenserKeepsEncoding() throws Exception {
+        File merged = tempFile("merger-test-perslot-varint");
+        String file = merged.getPath().substring(0, merged.getPath().length() - ".cyclelog".length());
+        SimpleActivity activity = new SimpleActivity("alias=perslot;output=type:cyclelog,file:" + file + ",perslot:true,encoding:varint");
+        CycleLogOutputType.PerSlotDispenser dispenser =
+                (CycleLogOutputType.PerSlotDispenser) new CycleLogOutputType().getOutputDispenser(activity);
+
+        Output slot0 = dispenser.getOutput(0L);
+        Output slot1 = dispenser.getOutput(1L);
+        for (long cycle = 0; cycle < 100; cycle++) {
+            (cycle % 2 == 0 ? slot0 : slot1).onCycleResult(cycle, (int) (cycle / 10) % 2);
+        }
+        activity.closeAutoCloseables();
+
+        CycleLogFile logFile = new CycleLogFile(merged);
+        logFile.verify();
+        assertThat(logFile.getVersion()).isEqualTo(CycleLogFile.VERSION_COMPACT);
+        assertThat(logFile.getSpanCount()).isEqualTo(10);
+        assertThat(logFile.getNextMinCycle(9)).isEqualTo(100L);
+        logFile.close();
+    }
+}
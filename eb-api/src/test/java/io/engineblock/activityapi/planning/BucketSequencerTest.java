@@ -0,0 +1,55 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityapi.planning;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class BucketSequencerTest {
+
+    private final static ElementSequencer<String> seqr = new BucketSequencer<>();
+
+    @Test
+    public void testRoundRobinBuckets() {
+        List<String> elems = Arrays.asList("A", "B", "C", "D");
+        assertThat(seqr.sequenceSummary(elems, e -> 4 - elems.indexOf(e), "")).isEqualTo("ABCDABCABA");
+        assertThat(seqr.sequenceSummary(elems, e -> 1 + elems.indexOf(e), "")).isEqualTo("ABCDBCDCDD");
+    }
+
+    @Test
+    public void testEmptyBucketIsSkipped() {
+        int[] seq = seqr.seqIndexesByRatios(new long[]{4, 0, 1});
+        assertThat(seq).containsExactly(0, 2, 0, 0, 0);
+    }
+
+    @Test
+    public void testNegativeRatio() {
+        try {
+            seqr.seqIndexesByRatios(new long[]{1, -1});
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage()).contains("must not be negative");
+            return;
+        }
+        throw new RuntimeException("A negative ratio should not be allowed.");
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityapi.planning;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class SequencePlannerTest {
+
+    @Test
+    public void testMaskedSequence() {
+        SequencePlanner<String> planner = new SequencePlanner<>(SequencerType.bucket);
+        planner.addOp("a", 4);
+        planner.addOp("b", 2);
+        planner.addOp("c", 2);
+        SequencePlanner.Sequence<String> seq = (SequencePlanner.Sequence<String>) planner.resolve();
+        assertThat(seq.isMasked()).isTrue();
+        assertThat(seq.getSequence()).containsExactly(0, 1, 2, 0, 1, 2, 0, 0);
+        StringBuilder sb = new StringBuilder();
+        for (long cycle = 0; cycle < 16; cycle++) {
+            sb.append(seq.get(cycle));
+        }
+        assertThat(sb.toString()).isEqualTo("abcabcaaabcabcaa");
+    }
+
+    @Test
+    public void testModuloSequence() {
+        SequencePlanner<String> planner = new SequencePlanner<>(SequencerType.concat);
+        planner.addOp("a", 2);
+        planner.addOp("b", 1);
+        SequencePlanner.Sequence<String> seq = (SequencePlanner.Sequence<String>) planner.resolve();
+        assertThat(seq.isMasked()).isFalse();
+        StringBuilder sb = new StringBuilder();
+        for (long cycle = 0; cycle < 7; cycle++) {
+            sb.append(seq.get(cycle));
+        }
+        assertThat(sb.toString()).isEqualTo("aabaaba");
+        assertThat(seq.get(3_000_000_001L)).isEqualTo("a");
+    }
+
+    @Test
+    public void testTransformKeepsSequence() {
+        SequencePlanner<String> planner = new SequencePlanner<>(SequencerType.interval);
+        planner.addOp("o", 4);
+        planner.addOp("i", 3);
+        OpSequence<String> seq = planner.resolve().transform(String::toUpperCase);
+        StringBuilder sb = new StringBuilder();
+        for (long cycle = 0; cycle < 7; cycle++) {
+            sb.append(seq.get(cycle));
+        }
+        assertThat(sb.toString()).isEqualTo("OIOIOIO");
+    }
+
+    @Test
+    public void testManyOps() {
+        SequencePlanner<Integer> planner = new SequencePlanner<>(SequencerType.interval);
+        long total = 0L;
+        for (int i = 0; i < 2000; i++) {
+            planner.addOp(i, (i % 7) + 1);
+            total += (i % 7) + 1;
+        }
+        OpSequence<Integer> seq = planner.resolve();
+        assertThat(seq.getOps()).hasSize(2000);
+        assertThat((long) seq.getSequence().length).isEqualTo(total);
+        int[] counts = new int[2000];
+        for (int index : seq.getSequence()) {
+            counts[index]++;
+        }
+        for (int i = 0; i < 2000; i++) {
+            assertThat(counts[i]).isEqualTo((i % 7) + 1);
+        }
+    }
+}
@@ -17,12 +17,14 @@
 
 package io.engineblock.activityapi.rates;
 
+import io.engineblock.activityapi.rates.testtypes.RateLimiterProvider;
 import io.engineblock.activityapi.rates.testtypes.TestableAverageRateLimiter;
 import io.engineblock.activityapi.rates.testtypes.TestableRateLimiterProvider;
 import io.engineblock.activityimpl.ActivityDef;
 import org.testng.annotations.Test;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -137,4 +139,86 @@ public class RateLimiterAccuracyTestMethods {
 
     }
 
-}
\ No newline at end of file
+    /**
+     * A batch reservation should advance the schedule by the whole batch at once, with each
+     * permit reporting its delay relative to its own slot in the batch.
+     */
+    static void testBatchReservation(TestableRateLimiterProvider provider) {
+        AtomicLong clock = new AtomicLong(0L);
+        TestableRateLimiter l = provider.getRateLimiter("alias=testing", "1000,0.0,true", clock);
+        l.start();
+        long opNanos = l.getOpNanos();                                  // 1ms at 1000 ops/s
+
+        long schedule = l.reserve(4);
+        assertThat(schedule).isEqualTo(0L);
+        assertThat(l.getTicksTime()).isEqualTo(4 * opNanos);
+
+        clock.set(5 * opNanos);                                         // 5ms, all 4 permits are due
+        assertThat(l.awaitSchedule(schedule)).isEqualTo(5 * opNanos);
+        assertThat(l.awaitSchedule(schedule + opNanos)).isEqualTo(4 * opNanos);
+        assertThat(l.awaitSchedule(schedule + 3 * opNanos)).isEqualTo(2 * opNanos);
+
+        assertThat(l.reserve(2)).isEqualTo(4 * opNanos);                // next batch starts after the last
+        clock.set(7 * opNanos);                                         // 7ms
+        assertThat(l.acquire()).isEqualTo(opNanos);                     // the 6ms slot is 1ms late
+        assertThat(l.getTicksTime()).isEqualTo(7 * opNanos);
+
+        long partial = l.reserve(3);                                    // a batch of 3, of which only 1 is used
+        assertThat(l.awaitSchedule(partial)).isEqualTo(0L);
+        l.release(partial + opNanos, 2);
+        assertThat(l.getTicksTime()).isEqualTo(8 * opNanos);            // the 2 unused slots are returned
+
+        long first = l.reserve(3);                                      // 8ms..11ms, of which only 1 is used
+        long second = l.reserve(2);                                     // 11ms..13ms, reserved after it
+        l.release(first + opNanos, 2);
+        assertThat(l.getTicksTime()).isEqualTo(13 * opNanos);           // not at the end, so not returned
+        l.release(second, 2);
+        assertThat(l.getTicksTime()).isEqualTo(11 * opNanos);           // at the end, so returned
+    }
+
+    /**
+     * When many threads reserve the schedule in batches, as motors do for a stride, a thread
+     * which stalls part way through its batch must be able to catch up, even though other
+     * threads are awaiting their own batches far ahead of it. The ops after each stall are
+     * delayed by up to the stall time, but no op should be held back until the schedule
+     * of another thread's batch.
+     */
+    static void testContendedBatchDelay(RateLimiterProvider provider) {
+        int threads = 8;
+        int batchSize = 32;
+        int batchesPerThread = 8;
+        RateLimiter rl = provider.getRateLimiter("alias=testing", "4000,1.1,true");
+        long opNanos = rl.getOpNanos();
+        long stallNanos = opNanos * 8; // each batch stalls half way through, and falls behind
+
+        AtomicLong totalDelay = new AtomicLong(0L);
+        Thread[] acquirers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            acquirers[t] = new Thread(() -> {
+                for (int b = 0; b < batchesPerThread; b++) {
+                    long schedule = rl.reserve(batchSize);
+                    for (int i = 0; i < batchSize; i++) {
+                        totalDelay.addAndGet(rl.awaitSchedule(schedule));
+                        schedule += opNanos;
+                        if (i == batchSize / 2) {
+                            LockSupport.parkNanos(stallNanos);
+                        }
+                    }
+                }
+            });
+            acquirers[t].start();
+        }
+        for (Thread acquirer : acquirers) {
+            try {
+                acquirer.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        double meanDelayOps = (double) totalDelay.get() / (threads * batchSize * batchesPerThread) / opNanos;
+        System.out.format("mean reported delay with %d threads in batches of %d: %.3f ops%n", threads, batchSize, meanDelayOps);
+        assertThat(meanDelayOps).isLessThan(16.0D);
+    }
+
+}
@@ -231,6 +231,57 @@ public class RateLimiterPerformanceTestMethods {
         System.out.println(String.format("effective concurrent nanos/op: %f", (1_000_000_000D/ concurrentOpRate)));
     }
 
+    /**
+     * This test checks that a number of threads can sustain the configured rate of the rate limiter
+     * together, and that the achieved schedule is within the allowed error of the ideal schedule.
+     * The rate limiter should be created just before calling this method, since its schedule starts
+     * when it is created.
+     */
+    static void testSustainedContendedRate(RateLimiter rl, long iterations, int threadCount, double maxError) {
+        testSustainedContendedRate(rl, iterations, threadCount, maxError, 1);
+    }
+
+    /**
+     * As with {@link #testSustainedContendedRate(RateLimiter, long, int, double)}, except that each
+     * thread reserves its schedule in batches of the given size, as motors do for a stride.
+     */
+    static void testSustainedContendedRate(RateLimiter rl, long iterations, int threadCount, double maxError, int batchSize) {
+        double rate = rl.getRate();
+        ExecutorService tp = Executors.newFixedThreadPool(threadCount);
+        BasicAcquirer[] threads = new BasicAcquirer[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new BasicAcquirer(rl,iterations/threadCount, batchSize);
+        }
+        long totalGrants = (iterations / threadCount) * threadCount;
+
+        System.out.format("Running %d iterations split over %d threads at rate %.3f\n", totalGrants, threadCount, rate);
+        long startAt = System.nanoTime();
+        for (int i = 0; i < threadCount; i++) {
+            tp.submit(threads[i]);
+        }
+        try {
+            tp.shutdown();
+            if (!tp.awaitTermination(1000, TimeUnit.SECONDS)) {
+                throw new RuntimeException("Failed to shutdown thread pool.");
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        long endAt = Arrays.stream(threads).mapToLong(t -> t.endNanos).max().orElse(System.nanoTime());
+        System.out.println("limiter stats:" + rl);
+
+        double durationSecs = (double) (endAt - startAt) / 1_000_000_000d;
+        double idealSecs = (double) totalGrants / rate;
+        double achievedRate = totalGrants / durationSecs;
+        double scheduleError = (durationSecs - idealSecs) / idealSecs;
+        System.out.format("duration (actual,ideal): (%.3fs,%.3fs)\n", durationSecs, idealSecs);
+        System.out.format("achieved acquires/s: %.3f\n", achievedRate);
+        System.out.format("schedule error: %.3f%%\n", scheduleError * 100.0d);
+
+        assertThat(achievedRate).isGreaterThanOrEqualTo(rate * (1.0d - maxError));
+        // the schedule starts when the rate limiter is created, slightly before the threads do
+        assertThat(Math.abs(scheduleError)).isLessThanOrEqualTo(maxError);
+    }
 
     private static class Acquirer implements Callable<AckResult>, Runnable {
         private final RateLimiter limiter;
@@ -265,19 +316,36 @@ public class RateLimiterPerformanceTestMethods {
 
         public final RateLimiter rl;
         public final long cycles;
+        public final int batchSize;
         public long startNanos;
         public long endNanos;
 
         public BasicAcquirer(RateLimiter rl, long cycles) {
+            this(rl, cycles, 1);
+        }
+
+        public BasicAcquirer(RateLimiter rl, long cycles, int batchSize) {
             this.rl = rl;
             this.cycles = cycles;
+            this.batchSize = batchSize;
         }
 
         @Override
         public void run() {
             startNanos=System.nanoTime();
-            for (int i = 0; i < cycles; i++) {
-                rl.acquire();
+            if (batchSize == 1) {
+                for (int i = 0; i < cycles; i++) {
+                    rl.acquire();
+                }
+            } else {
+                long opNanos = rl.getOpNanos();
+                for (long i = 0; i < cycles; i += batchSize) {
+                    long schedule = rl.reserve(batchSize);
+                    for (int j = 0; j < batchSize; j++) {
+                        rl.awaitSchedule(schedule);
+                        schedule += opNanos;
+                    }
+                }
             }
             endNanos=System.nanoTime();
         }
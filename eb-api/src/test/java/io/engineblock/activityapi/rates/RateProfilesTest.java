@@ -0,0 +1,87 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityapi.rates;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.Offset.offset;
+
+@Test
+public class RateProfilesTest {
+
+    public void testRamp() {
+        RateProfile p = RateProfiles.parse("ramp(100,1000,60)");
+        assertThat(p.rateAt(0.0D)).isEqualTo(100.0D);
+        assertThat(p.rateAt(30.0D)).isEqualTo(550.0D);
+        assertThat(p.rateAt(60.0D)).isEqualTo(1000.0D);
+        assertThat(p.rateAt(600.0D)).isEqualTo(1000.0D);
+    }
+
+    public void testStep() {
+        RateProfile p = RateProfiles.parse("step(0,100, 10,500, 20,200)");
+        assertThat(p.rateAt(0.0D)).isEqualTo(100.0D);
+        assertThat(p.rateAt(9.99D)).isEqualTo(100.0D);
+        assertThat(p.rateAt(10.0D)).isEqualTo(500.0D);
+        assertThat(p.rateAt(25.0D)).isEqualTo(200.0D);
+    }
+
+    public void testLinear() {
+        RateProfile p = RateProfiles.parse("linear(10,100,20,300,40,100)");
+        assertThat(p.rateAt(0.0D)).isEqualTo(100.0D);
+        assertThat(p.rateAt(15.0D)).isEqualTo(200.0D);
+        assertThat(p.rateAt(30.0D)).isEqualTo(200.0D);
+        assertThat(p.rateAt(50.0D)).isEqualTo(100.0D);
+    }
+
+    public void testSine() {
+        RateProfile p = RateProfiles.parse("sine(1000,200,4)");
+        assertThat(p.rateAt(0.0D)).isCloseTo(1000.0D, offset(0.000001D));
+        assertThat(p.rateAt(1.0D)).isCloseTo(1200.0D, offset(0.000001D));
+        assertThat(p.rateAt(3.0D)).isCloseTo(800.0D, offset(0.000001D));
+    }
+
+    public void testCsv() throws IOException {
+        File profile = File.createTempFile("profile", ".csv");
+        profile.deleteOnExit();
+        Files.write(profile.toPath(), Arrays.asList("# seconds,rate", "0,100", "10,200", "", "20,200"));
+
+        RateProfile p = RateProfiles.parse("csv(" + profile.getPath() + ")");
+        assertThat(p.rateAt(5.0D)).isEqualTo(150.0D);
+        assertThat(p.rateAt(15.0D)).isEqualTo(200.0D);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ".*pairs of time and rate.*")
+    public void testUnpairedPoints() {
+        RateProfiles.parse("step(0,100,10)");
+    }
+
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ".*in order.*")
+    public void testUnorderedPoints() {
+        RateProfiles.parse("linear(10,100,5,200)");
+    }
+
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = "Unknown rate profile.*")
+    public void testUnknownProfile() {
+        RateProfiles.parse("square(1,2,3)");
+    }
+}
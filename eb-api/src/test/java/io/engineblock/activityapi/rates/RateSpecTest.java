@@ -29,6 +29,7 @@ public class RateSpecTest {
         assertThat(r.opsPerSec).isEqualTo(523.0d);
         assertThat(r.burstRatio).isEqualTo(1.1d);
         assertThat(r.reportCoDelay).isFalse();
+        assertThat(r.type).isEqualTo(RateLimiterType.average);
     }
 
     public void testBurstRatioPattern() {
@@ -45,4 +46,28 @@ public class RateSpecTest {
         assertThat(r.reportCoDelay).isTrue();
     }
 
-}
\ No newline at end of file
+    public void testTypePattern() {
+        RateSpec r = new RateSpec("12345,1.3,false,cached");
+        assertThat(r.opsPerSec).isEqualTo(12345.0d);
+        assertThat(r.burstRatio).isEqualTo(1.3d);
+        assertThat(r.reportCoDelay).isFalse();
+        assertThat(r.type).isEqualTo(RateLimiterType.cached);
+        assertThat(r.withOpsPerSecond(100.0d).type).isEqualTo(RateLimiterType.cached);
+    }
+
+    public void testTypeOptionPattern() {
+        RateSpec r = new RateSpec("100,0.0,false,replay,http://localhost:8080/arrivals.txt");
+        assertThat(r.opsPerSec).isEqualTo(100.0d);
+        assertThat(r.type).isEqualTo(RateLimiterType.replay);
+        assertThat(r.typeOption).isEqualTo("http://localhost:8080/arrivals.txt");
+        assertThat(r.withOpsPerSecond(200.0d).typeOption).isEqualTo("http://localhost:8080/arrivals.txt");
+    }
+
+    public void testSpecRoundTrip() {
+        RateSpec r = new RateSpec("5000.0:1.0");
+        assertThat(new RateSpec(r.toSpec())).isEqualTo(r);
+        RateSpec replay = new RateSpec("100;0.0;co;replay;http://localhost:8080/arrivals.txt").withOpsPerSecond(200.0d);
+        assertThat(new RateSpec(replay.toSpec())).isEqualTo(replay);
+    }
+
+}
@@ -67,6 +67,16 @@ public class TestAverageRateLimiter implements RateLimiterProvider, TestableRate
         RateLimiterAccuracyTestMethods.testCOBurstReportingAccuracy(this);
     }
 
+    @Test
+    public void testBatchReservation() {
+        RateLimiterAccuracyTestMethods.testBatchReservation(this);
+    }
+
+    @Test
+    public void testContendedBatchDelay() {
+        RateLimiterAccuracyTestMethods.testContendedBatchDelay(this);
+    }
+
 
 
 }
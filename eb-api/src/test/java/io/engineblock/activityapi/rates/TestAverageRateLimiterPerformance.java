@@ -130,7 +130,7 @@ public class TestAverageRateLimiterPerformance implements RateLimiterProvider, T
 
     @Test(groups="perftest",enabled=false)
     public void testBurstFeatureCost() {
-        RateLimiter rl = new AverageRateLimiter(ActivityDef.parseActivityDef("bursting=120"),"bursting",new RateSpec(100_000_000,1.2,true));
+        RateLimiter rl = new BurstRateLimiter(ActivityDef.parseActivityDef("bursting=120"),"bursting",new RateSpec(100_000_000,1.2,true));
         RateLimiterPerformanceTestMethods.testUncontendedSingleThreadedPerformance(rl,1_000_000_000);
     }
 
@@ -155,5 +155,15 @@ public class TestAverageRateLimiterPerformance implements RateLimiterProvider, T
         RateLimiter rl = new AverageRateLimiter(ActivityDef.parseActivityDef("bursting=120"),"bursting",new RateSpec(100_000_000,1.2,true));
         RateLimiterPerformanceTestMethods.testContendedMultiThreadedPerformance(rl,500_000_000, 100);
     }
-}
 
+    /**
+     * 64 threads reserving their schedule 64 ops at a time, as motors do with stride=64,
+     * should sustain a 50M grants/s limit within 5% of the ideal schedule.
+     */
+    @Test(groups="perftest",enabled=false)
+    public void testAverageRateLimiterBatchedContendedRate() {
+        RateLimiter rl = new AverageRateLimiter(ActivityDef.parseActivityDef("alias=testing"),"averagetest",new RateSpec("50000000"));
+        RateLimiterPerformanceTestMethods.testSustainedContendedRate(rl, 1_000_000_000L, 64, 0.05d, 64);
+    }
+
+}
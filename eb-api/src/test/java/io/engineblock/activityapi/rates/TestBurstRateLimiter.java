@@ -0,0 +1,118 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityapi.rates;
+
+import io.engineblock.activityapi.rates.testtypes.RateLimiterProvider;
+import io.engineblock.activityapi.rates.testtypes.TestableBurstRateLimiter;
+import io.engineblock.activityapi.rates.testtypes.TestableRateLimiterProvider;
+import io.engineblock.activityimpl.ActivityDef;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class TestBurstRateLimiter implements RateLimiterProvider, TestableRateLimiterProvider {
+
+    @Override
+    public RateLimiter getRateLimiter(String paramSpec, String rateSpec) {
+        return new BurstRateLimiter(ActivityDef.parseActivityDef(paramSpec),"bursttest",new RateSpec(rateSpec));
+    }
+
+    @Override
+    public TestableRateLimiter getRateLimiter(String def, String spec, AtomicLong initialClock) {
+        return new TestableBurstRateLimiter(initialClock, new RateSpec(spec), ActivityDef.parseActivityDef(def));
+    }
+
+    @Test
+    public void testReportedCODelayFastPath() {
+        RateLimiterAccuracyTestMethods.testReportedCoDelayFastPath(this);
+    }
+
+    @Test
+    public void testDisabledCODelayFastPath() {
+        RateLimiterAccuracyTestMethods.testDisabledCoDelayFastPath(this);
+    }
+
+    @Test
+    public void testCOReportingAccuracy() {
+        RateLimiterAccuracyTestMethods.testCOReportingAccuracy(this);
+    }
+
+    @Test
+    public void testBurstCOReportingAccuracy() {
+        RateLimiterAccuracyTestMethods.testCOBurstReportingAccuracy(this);
+    }
+
+    @Test
+    public void testBatchReservation() {
+        RateLimiterAccuracyTestMethods.testBatchReservation(this);
+    }
+
+    @Test
+    public void testContendedBatchDelay() {
+        RateLimiterAccuracyTestMethods.testContendedBatchDelay(this);
+    }
+
+    @Test
+    public void testBurstRatioIsConfiguredByConstructor() {
+        BurstRateLimiter rl = (BurstRateLimiter) getRateLimiter("alias=testing", "1000,1.25");
+        assertThat(rl.getBurstRate()).isEqualTo(1250.0D);
+    }
+
+    /**
+     * After a stall, callers should catch up to the average schedule no faster than
+     * the burst rate, and then proceed at the average rate.
+     */
+    @Test
+    public void testCatchUpIsLimitedByBurstRatio() {
+        AtomicLong clock = new AtomicLong(0L);
+        TestableBurstRateLimiter rl = new TestableBurstRateLimiter(
+                clock, new RateSpec(1000D, 1.25D, true), ActivityDef.parseActivityDef("alias=testing")
+        );
+        long opNanos = rl.getOpNanos();                       // 1ms at 1000 ops/s
+        long burstNanos = 800_000L;                            // 0.8ms at 1250 ops/s
+        assertThat(rl.getBurstRate()).isEqualTo(1250.0D);
+
+        clock.set(10 * opNanos);                               // stall for 10 ops
+        assertThat(rl.getEffectiveBurstRate()).isEqualTo(1250.0D);
+        assertThat(rl.acquire()).isEqualTo(10 * opNanos);     // released at once, 10ms late
+        assertThat(rl.getBurstTime()).isEqualTo(10 * opNanos + burstNanos);
+
+        // each op is released one burst interval after the last, gaining 0.2ms on the schedule
+        long expectedDelay = 10 * opNanos;
+        for (int i = 1; i < 50; i++) {
+            clock.set(rl.getBurstTime());
+            expectedDelay -= (opNanos - burstNanos);
+            assertThat(rl.acquire()).isEqualTo(expectedDelay);
+        }
+        assertThat(expectedDelay).isEqualTo(200_000L);
+
+        // caught up with the op at 50ms, so the average schedule applies again
+        clock.set(rl.getBurstTime());
+        assertThat(clock.get()).isEqualTo(50 * opNanos);
+        assertThat(rl.acquire()).isEqualTo(0L);
+        assertThat(rl.getBurstTime()).isEqualTo(50 * opNanos);  // on schedule, so the burst time is not moved
+        clock.set(52 * opNanos);                               // the op at 51ms is now 1ms late
+        assertThat(rl.acquire()).isEqualTo(opNanos);
+        assertThat(rl.getBurstTime()).isEqualTo(52 * opNanos + burstNanos);
+        assertThat(rl.getEffectiveBurstRate()).isEqualTo(1000.0D);
+    }
+
+}
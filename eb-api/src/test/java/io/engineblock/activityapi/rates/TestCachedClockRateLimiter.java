@@ -0,0 +1,95 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityapi.rates;
+
+import io.engineblock.activityapi.rates.testtypes.RateLimiterProvider;
+import io.engineblock.activityapi.rates.testtypes.TestableCachedClockRateLimiter;
+import io.engineblock.activityapi.rates.testtypes.TestableRateLimiterProvider;
+import io.engineblock.activityimpl.ActivityDef;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class TestCachedClockRateLimiter implements RateLimiterProvider, TestableRateLimiterProvider {
+
+    @Override
+    public RateLimiter getRateLimiter(String paramSpec, String rateSpec) {
+        return new CachedClockRateLimiter(ActivityDef.parseActivityDef(paramSpec),"cachedtest",new RateSpec(rateSpec));
+    }
+
+    @Override
+    public TestableRateLimiter getRateLimiter(String def, String spec, AtomicLong initialClock) {
+        return new TestableCachedClockRateLimiter(initialClock, new RateSpec(spec), ActivityDef.parseActivityDef(def));
+    }
+
+    @Test
+    public void testReportedCODelayFastPath() {
+        RateLimiterAccuracyTestMethods.testReportedCoDelayFastPath(this);
+    }
+
+    @Test
+    public void testDisabledCODelayFastPath() {
+        RateLimiterAccuracyTestMethods.testDisabledCoDelayFastPath(this);
+    }
+
+    @Test
+    public void testCOReportingAccuracy() {
+        RateLimiterAccuracyTestMethods.testCOReportingAccuracy(this);
+    }
+
+    @Test
+    public void testBurstCOReportingAccuracy() {
+        RateLimiterAccuracyTestMethods.testCOBurstReportingAccuracy(this);
+    }
+
+    @Test
+    public void testBatchReservation() {
+        RateLimiterAccuracyTestMethods.testBatchReservation(this);
+    }
+
+    /**
+     * Callers which are already unblocked by the last-seen nanotime should not read the clock.
+     */
+    @Test
+    public void testCachedClockFastPath() {
+        AtomicLong clock = new AtomicLong(0L);
+        TestableCachedClockRateLimiter rl = new TestableCachedClockRateLimiter(
+                clock, new RateSpec(1000D, 0.0, false), ActivityDef.parseActivityDef("alias=testing")
+        );
+        clock.set(10_000_000L);                             // 10 grants at 1ms each are now due
+        long reads = rl.getClockReads();
+
+        assertThat(rl.acquire()).isEqualTo(0L);              // first grant refreshes the last-seen time
+        assertThat(rl.getClockReads()).isEqualTo(reads + 1);
+        assertThat(rl.getLastSeenNanoTime()).isEqualTo(10_000_000L);
+
+        for (int i = 0; i < 10; i++) {                       // scheduled at 1ms..10ms, all covered by last-seen time
+            assertThat(rl.acquire()).isEqualTo(0L);
+        }
+        assertThat(rl.getClockReads()).isEqualTo(reads + 1);
+
+        clock.set(20_000_000L);
+        assertThat(rl.acquire()).isEqualTo(0L);              // scheduled at 11ms, past the last-seen time
+        assertThat(rl.getClockReads()).isEqualTo(reads + 2);
+        assertThat(rl.getLastSeenNanoTime()).isEqualTo(20_000_000L);
+    }
+
+}
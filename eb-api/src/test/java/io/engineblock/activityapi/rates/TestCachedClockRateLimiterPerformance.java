@@ -0,0 +1,85 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityapi.rates;
+
+import io.engineblock.activityapi.rates.testtypes.RateLimiterProvider;
+import io.engineblock.activityimpl.ActivityDef;
+import org.testng.annotations.Test;
+
+/**
+ * These tests run the rate limiter micro benches with the cached clock rate limiter.
+ */
+@Test(groups={"perftest"},enabled=false)
+public class TestCachedClockRateLimiterPerformance implements RateLimiterProvider {
+
+    @Override
+    public RateLimiter getRateLimiter(String paramSpec, String rateSpec) {
+        return new CachedClockRateLimiter(ActivityDef.parseActivityDef(paramSpec),"cachedtest",new RateSpec(rateSpec));
+    }
+
+    @Test(enabled=false)
+    public void testCachedClockRateLimiterFastEnough() {
+        RateLimiterPerformanceTestMethods.testCallerFastEnough(this);
+    }
+
+    @Test(enabled=false)
+    public void testCachedClockRateLimiterCallerToSlowNanoLoop() {
+        RateLimiterPerformanceTestMethods.testCallerTooSlowNanoLoop(this);
+    }
+
+    @Test(enabled=false)
+    public void testCachedClockRateLimiterBlockingCostUnder() {
+        RateLimiterPerformanceTestMethods.testBlockingCostUnder(this);
+    }
+
+    @Test(enabled=false)
+    public void testCachedClockRateLimiterBlockingCostOver() {
+        RateLimiterPerformanceTestMethods.testBlockingCostOver(this);
+    }
+
+    @Test(groups="perftest",enabled=false)
+    public void testCachedClockRateLimiterUncontendedSingleThreadedPerformance() {
+        RateLimiterPerformanceTestMethods.testUncontendedSingleThreadedPerformance(this,1000000000L);
+    }
+
+    @Test(groups="perftest",enabled=false)
+    public void testCachedClockRateLimiterContendedMultiThreadedPerformance() {
+        RateLimiterPerformanceTestMethods.testContendedMultiThreadedPerformance(this,500_000_000, 100);
+    }
+
+    /**
+     * 32 threads should sustain a 50M grants/s limit, finishing within 5% of the ideal
+     * schedule.
+     */
+    @Test(groups="perftest",enabled=false)
+    public void testCachedClockRateLimiterSustainedContendedRate() {
+        RateLimiter rl = getRateLimiter("alias=testing", "50000000");
+        RateLimiterPerformanceTestMethods.testSustainedContendedRate(rl, 1_000_000_000L, 32, 0.05d);
+    }
+
+    /**
+     * 64 threads reserving their schedule 64 ops at a time, as motors do with stride=64,
+     * should sustain a 50M grants/s limit within 5% of the ideal schedule.
+     */
+    @Test(groups="perftest",enabled=false)
+    public void testCachedClockRateLimiterBatchedContendedRate() {
+        RateLimiter rl = getRateLimiter("alias=testing", "50000000");
+        RateLimiterPerformanceTestMethods.testSustainedContendedRate(rl, 1_000_000_000L, 64, 0.05d, 64);
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityapi.rates;
+
+import io.engineblock.activityapi.rates.testtypes.RateLimiterProvider;
+import io.engineblock.activityapi.rates.testtypes.TestableOpenModelRateLimiter;
+import io.engineblock.activityapi.rates.testtypes.TestableRateLimiterProvider;
+import io.engineblock.activityimpl.ActivityDef;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class TestOpenModelRateLimiter implements RateLimiterProvider, TestableRateLimiterProvider {
+
+    @Override
+    public RateLimiter getRateLimiter(String paramSpec, String rateSpec) {
+        return new OpenModelRateLimiter(ActivityDef.parseActivityDef(paramSpec),"openmodeltest",
+                new RateSpec(rateSpec).withType(RateLimiterType.poisson));
+    }
+
+    @Override
+    public TestableRateLimiter getRateLimiter(String def, String spec, AtomicLong initialClock) {
+        return new TestableOpenModelRateLimiter(initialClock, new RateSpec(spec).withType(RateLimiterType.poisson),
+                ActivityDef.parseActivityDef(def));
+    }
+
+    @Test
+    public void testReportedCODelayFastPath() {
+        RateLimiterAccuracyTestMethods.testReportedCoDelayFastPath(this);
+    }
+
+    @Test
+    public void testDisabledCODelayFastPath() {
+        RateLimiterAccuracyTestMethods.testDisabledCoDelayFastPath(this);
+    }
+
+    @Test
+    public void testCOReportingAccuracy() {
+        RateLimiterAccuracyTestMethods.testCOReportingAccuracy(this);
+    }
+
+    @Test
+    public void testBurstCOReportingAccuracy() {
+        RateLimiterAccuracyTestMethods.testCOBurstReportingAccuracy(this);
+    }
+
+    @Test
+    public void testPoissonArrivals() {
+        long[] gaps = sampleGaps("1000,0.0,false,poisson", 100_000);
+        double mean = Arrays.stream(gaps).average().orElse(0.0D);
+        double stddev = Math.sqrt(Arrays.stream(gaps).mapToDouble(g -> (g - mean) * (g - mean)).sum() / gaps.length);
+
+        // exponential gaps have a standard deviation equal to their mean
+        assertThat(mean).isBetween(980_000.0D, 1_020_000.0D);
+        assertThat(stddev / mean).isBetween(0.97D, 1.03D);
+    }
+
+    @Test
+    public void testUniformArrivals() {
+        long[] gaps = sampleGaps("1000,0.0,false,uniform,0.5", 100_000);
+        assertThat(Arrays.stream(gaps).average().orElse(0.0D)).isBetween(990_000.0D, 1_010_000.0D);
+        assertThat(Arrays.stream(gaps).min().orElse(0L)).isGreaterThanOrEqualTo(500_000L);
+        assertThat(Arrays.stream(gaps).max().orElse(0L)).isLessThanOrEqualTo(1_500_000L);
+    }
+
+    @Test
+    public void testReplayedArrivals() throws IOException {
+        File arrivals = File.createTempFile("arrivals", ".txt");
+        arrivals.deleteOnExit();
+        Files.write(arrivals.toPath(), Arrays.asList("# arrival times in ms", "10", "11", "13", "", "16"));
+
+        // gaps of 1, 2 and 3ms, then the 2ms average gap, scaled from a 2ms to a 1ms average
+        long[] gaps = sampleGaps("1000,0.0,false,replay," + arrivals.getPath(), 8);
+        assertThat(gaps).containsExactly(500_000L, 1_000_000L, 1_500_000L, 1_000_000L,
+                500_000L, 1_000_000L, 1_500_000L, 1_000_000L);
+    }
+
+    @Test
+    public void testNotEvenlySpaced() {
+        RateLimiter rl = getRateLimiter("alias=testing", "1000");
+        assertThat(rl.isEvenlySpaced()).isFalse();
+    }
+
+    /**
+     * Acquire from a rate limiter whose clock is always far ahead of schedule, recording
+     * the gap that each acquire consumes on the ticks timeline.
+     */
+    private long[] sampleGaps(String spec, int count) {
+        AtomicLong clock = new AtomicLong(0L);
+        TestableOpenModelRateLimiter rl = new TestableOpenModelRateLimiter(
+                clock, new RateSpec(spec), ActivityDef.parseActivityDef("alias=testing")
+        );
+        clock.set(Long.MAX_VALUE / 2);
+        long[] gaps = new long[count];
+        long last = rl.getTicksTime();
+        for (int i = 0; i < count; i++) {
+            rl.acquire();
+            long ticks = rl.getTicksTime();
+            gaps[i] = ticks - last;
+            last = ticks;
+        }
+        return gaps;
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityapi.rates;
+
+import io.engineblock.activityapi.rates.testtypes.TestableProfileRateLimiter;
+import io.engineblock.activityimpl.ActivityDef;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class TestProfileRateLimiter {
+
+    @Test
+    public void testStepSchedule() {
+        long[] gaps = sampleGaps("1,0.0,false,profile,step(0,1000,1,2000)", 3000);
+
+        // the first second of the timeline is at 1000 ops/s, the rest at 2000 ops/s.
+        // The first op in each interval triggers the evaluation, so it still takes the prior op time.
+        for (int i = 0; i <= 1000; i++) {
+            assertThat(gaps[i]).isEqualTo(1_000_000L);
+        }
+        for (int i = 1001; i < 3000; i++) {
+            assertThat(gaps[i]).isEqualTo(500_000L);
+        }
+    }
+
+    @Test
+    public void testRampSchedule() {
+        long[] gaps = sampleGaps("1,0.0,false,profile,ramp(1000,2000,1)", 2000);
+
+        // the op time is set from the profile at the start of each 1ms timeline interval,
+        // and applies from the op after the one which first reaches that interval
+        assertThat(gaps[0]).isEqualTo(1_000_000L);
+        long elapsed = 0L;
+        long evaluatedAt = 0L;
+        for (long gap : gaps) {
+            double rate = 1000.0D + Math.min(1.0D, (evaluatedAt / 1_000_000L) / 1000.0D) * 1000.0D;
+            assertThat(gap).isEqualTo((long) (1_000_000_000D / rate));
+            evaluatedAt = elapsed - (elapsed % 1_000_000L);
+            elapsed += gap;
+        }
+        assertThat(gaps[gaps.length - 1]).isEqualTo(500_000L);
+    }
+
+    @Test
+    public void testScheduleIsReproducible() {
+        String spec = "1,0.0,false,profile,sine(1000,500,0.5)";
+        assertThat(sampleGaps(spec, 5000)).containsExactly(sampleGaps(spec, 5000));
+    }
+
+    @Test
+    public void testRateFollowsProfile() {
+        AtomicLong clock = new AtomicLong(0L);
+        TestableProfileRateLimiter rl = new TestableProfileRateLimiter(
+                clock, new RateSpec("1,0.0,false,profile,step(0,100,0.5,400)"), ActivityDef.parseActivityDef("alias=testing")
+        );
+        clock.set(Long.MAX_VALUE / 2);
+        assertThat(rl.getRate()).isEqualTo(100.0D);
+        assertThat(rl.getOpNanos()).isEqualTo(10_000_000L);
+        for (int i = 0; i < 51; i++) {
+            rl.acquire();
+        }
+        assertThat(rl.getRate()).isEqualTo(400.0D);
+        assertThat(rl.getOpNanos()).isEqualTo(2_500_000L);
+    }
+
+    @Test
+    public void testRatesBelowOneAreClamped() {
+        long[] gaps = sampleGaps("1,0.0,false,profile,step(0,0)", 2);
+        assertThat(gaps).containsExactly(1_000_000_000L, 1_000_000_000L);
+    }
+
+    @Test
+    public void testNotEvenlySpaced() {
+        RateLimiter rl = RateLimiters.createOrUpdate(ActivityDef.parseActivityDef("alias=testing"), "profiletest",
+                null, new RateSpec("1,0.0,false,profile,ramp(10,100,10)"));
+        assertThat(rl).isInstanceOf(ProfileRateLimiter.class);
+        assertThat(rl.isEvenlySpaced()).isFalse();
+    }
+
+    /**
+     * Acquire from a rate limiter whose clock is always far ahead of schedule, recording
+     * the gap that each acquire consumes on the ticks timeline.
+     */
+    private long[] sampleGaps(String spec, int count) {
+        AtomicLong clock = new AtomicLong(0L);
+        TestableProfileRateLimiter rl = new TestableProfileRateLimiter(
+                clock, new RateSpec(spec), ActivityDef.parseActivityDef("alias=testing")
+        );
+        clock.set(Long.MAX_VALUE / 2);
+        long[] gaps = new long[count];
+        long last = rl.getTicksTime();
+        for (int i = 0; i < count; i++) {
+            rl.acquire();
+            long ticks = rl.getTicksTime();
+            gaps[i] = ticks - last;
+            last = ticks;
+        }
+        return gaps;
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityimpl;
+
+import io.engineblock.activityapi.core.RunState;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class SlotStateTrackerTest {
+
+    @Test
+    public void testAwaitCurrentState() {
+        SlotStateTracker tracker = new SlotStateTracker(1L);
+        assertThat(tracker.awaitSlotState(0L, RunState.Stopped, RunState.Uninitialized)).isTrue();
+    }
+
+    @Test
+    public void testAwaitTimesOut() {
+        SlotStateTracker tracker = new SlotStateTracker(1L);
+        long startedAt = System.currentTimeMillis();
+        assertThat(tracker.awaitSlotState(100L, RunState.Finished)).isFalse();
+        assertThat(System.currentTimeMillis() - startedAt).isGreaterThanOrEqualTo(100L);
+    }
+
+    @Test
+    public void testAwaitIsNotifiedOfTransition() throws InterruptedException {
+        SlotStateTracker tracker = new SlotStateTracker(1L);
+        tracker.enterState(RunState.Starting);
+        Thread motor = new Thread(() -> {
+            try {
+                Thread.sleep(20L);
+            } catch (InterruptedException ignored) {
+            }
+            tracker.enterState(RunState.Running);
+            tracker.enterState(RunState.Finished);
+        });
+        long startedAt = System.currentTimeMillis();
+        motor.start();
+        assertThat(tracker.awaitSlotState(10000L, RunState.Finished, RunState.Stopped)).isTrue();
+        assertThat(System.currentTimeMillis() - startedAt).isLessThan(5000L);
+        assertThat(tracker.getSlotState()).isEqualTo(RunState.Finished);
+        motor.join();
+    }
+}
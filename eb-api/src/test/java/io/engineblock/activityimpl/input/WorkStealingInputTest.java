@@ -0,0 +1,165 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityimpl.input;
+
+import io.engineblock.activityapi.cyclelog.buffers.cycles.CycleSegment;
+import io.engineblock.activityapi.input.CanCountCycles;
+import io.engineblock.activityapi.input.Input;
+import io.engineblock.activityimpl.ActivityDef;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class WorkStealingInputTest {
+
+    @Test
+    public void testSlotsStartWithTheirOwnRange() {
+        WorkStealingInput wsi = new WorkStealingInput(ActivityDef.parseActivityDef("alias=foo;cycles=0..100;threads=4;stride=5"));
+        assertThat(wsi.forSlot(0).getInputSegment(5).peekNextCycle()).isEqualTo(0L);
+        assertThat(wsi.forSlot(1).getInputSegment(5).peekNextCycle()).isEqualTo(25L);
+        assertThat(wsi.forSlot(2).getInputSegment(5).peekNextCycle()).isEqualTo(50L);
+        assertThat(wsi.forSlot(3).getInputSegment(5).peekNextCycle()).isEqualTo(75L);
+    }
+
+    @Test
+    public void testIdleSlotStealsUpperHalf() {
+        WorkStealingInput wsi = new WorkStealingInput(ActivityDef.parseActivityDef("alias=foo;cycles=0..80;threads=2;stride=10"));
+        Input slot0 = wsi.forSlot(0);
+        Input slot1 = wsi.forSlot(1);
+
+        List<Long> slot1Starts = new ArrayList<>();
+        CycleSegment segment;
+        while ((segment = slot1.getInputSegment(10)) != null) {
+            slot1Starts.add(segment.peekNextCycle());
+        }
+        // 40..80 is its own, then half of slot 0 at a time, and the last segment whole
+        assertThat(slot1Starts).containsExactly(40L, 50L, 60L, 70L, 20L, 30L, 10L, 0L);
+        assertThat(slot0.getInputSegment(10)).isNull();
+    }
+
+    @Test
+    public void testLastSegmentIsClippedToEndCycle() {
+        WorkStealingInput wsi = new WorkStealingInput(ActivityDef.parseActivityDef("alias=foo;cycles=0..7;threads=1;stride=3"));
+        Input slot0 = wsi.forSlot(0);
+        slot0.getInputSegment(3);
+        slot0.getInputSegment(3);
+        CycleSegment last = slot0.getInputSegment(3);
+        assertThat(last.nextCycle()).isEqualTo(6L);
+        assertThat(last.isExhausted()).isTrue();
+        assertThat(slot0.getInputSegment(3)).isNull();
+    }
+
+    @Test
+    public void testExtraSlotsStealWork() {
+        WorkStealingInput wsi = new WorkStealingInput(ActivityDef.parseActivityDef("alias=foo;cycles=0..10;threads=1"));
+        assertThat(wsi.forSlot(1).getInputSegment(1).peekNextCycle()).isEqualTo(5L);
+    }
+
+    @Test
+    public void testConcurrentSlotsProvideEachCycleOnce() throws Exception {
+        int threads = 8;
+        int cycles = 1_000_000;
+        WorkStealingInput wsi = new WorkStealingInput(
+                ActivityDef.parseActivityDef("alias=foo;cycles=0.." + cycles + ";stride=3;threads=" + threads));
+        BitSet[] seen = new BitSet[threads];
+        AtomicInteger duplicates = new AtomicInteger(0);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int slot = t;
+            Input input = wsi.forSlot(slot);
+            seen[slot] = new BitSet(cycles);
+            workers[t] = new Thread(() -> {
+                CycleSegment segment = null;
+                // make the early slots slow, so that the others run out and steal from them
+                while ((segment = input.getInputSegment(3, segment)) != null) {
+                    while (!segment.isExhausted()) {
+                        int cycle = (int) segment.nextCycle();
+                        if (seen[slot].get(cycle)) {
+                            duplicates.incrementAndGet();
+                        }
+                        seen[slot].set(cycle);
+                    }
+                    if (slot < 2) {
+                        Thread.yield();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        BitSet all = new BitSet(cycles);
+        int total = 0;
+        for (BitSet slotSeen : seen) {
+            total += slotSeen.cardinality();
+            all.or(slotSeen);
+        }
+        assertThat(duplicates.get()).isEqualTo(0);
+        assertThat(total).isEqualTo(cycles);
+        assertThat(all.cardinality()).isEqualTo(cycles);
+        assertThat(wsi.getProgress()).isEqualTo(wsi.getTotal());
+    }
+
+    @Test
+    public void testCountsCyclesInRange() {
+        WorkStealingInput wsi = new WorkStealingInput(ActivityDef.parseActivityDef("alias=foo;cycles=10..100;threads=4"));
+        assertThat(wsi.getCycleCount(0L, 50L)).isEqualTo(40L);
+        assertThat(wsi.getCycleCount(50L, 200L)).isEqualTo(50L);
+        assertThat(wsi.getCycleCount(100L, 200L)).isEqualTo(0L);
+        assertThat(wsi.forSlot(2)).isInstanceOf(CanCountCycles.class);
+        assertThat(((CanCountCycles) wsi.forSlot(2)).getCycleCount(20L, 30L)).isEqualTo(10L);
+        assertThat(wsi.getExpectedCycles(90L, 110L).cardinality()).isEqualTo(10);
+        assertThat(wsi.getExpectedCycles(90L, 110L).nextClearBit(0)).isEqualTo(10);
+    }
+
+    @Test
+    public void testNoSlotFinishesWhileCyclesRemain() throws Exception {
+        int threads = 16;
+        int cycles = 200_000;
+        WorkStealingInput wsi = new WorkStealingInput(
+                ActivityDef.parseActivityDef("alias=foo;cycles=0.." + cycles + ";threads=" + threads));
+        AtomicInteger earlyFinishes = new AtomicInteger(0);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            Input input = wsi.forSlot(t);
+            workers[t] = new Thread(() -> {
+                CycleSegment segment = null;
+                while ((segment = input.getInputSegment(1, segment)) != null) {
+                    segment.nextCycle();
+                }
+                // every cycle must have been handed out by the time any slot runs out
+                if (wsi.getProgress() != wsi.getTotal()) {
+                    earlyFinishes.incrementAndGet();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertThat(earlyFinishes.get()).isEqualTo(0);
+    }
+
+}
@@ -20,10 +20,13 @@ package io.engineblock.activityimpl.marker;
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResult;
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultSegmentBuffer;
 import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsSegment;
+import io.engineblock.activityapi.input.CanCountCycles;
 import io.engineblock.activityapi.output.Output;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.stream.StreamSupport;
 
@@ -51,6 +54,172 @@ public class CoreOutputTest {
         assertThat(results).containsExactly(0,1,2,3);
     }
 
+    @Test
+    public void testUnevenLastExtent() throws Exception {
+        ContiguousOutputChunker ct = new ContiguousOutputChunker(0, 10, 4, 2, true);
+        TestReader r = new TestReader();
+        ct.addExtentReader(r);
+        for (int cycle = 9; cycle >= 0; cycle--) {
+            ct.onCycleResult(cycle, cycle % 3);
+        }
+        assertThat(r.segments).hasSize(3);
+        assertThat(r.segments.get(0).getMinCycle()).isEqualTo(0L);
+        assertThat(r.segments.get(1).getMinCycle()).isEqualTo(4L);
+        assertThat(r.segments.get(2).getMinCycle()).isEqualTo(8L);
+        assertThat(r.segments.get(2).getCount()).isEqualTo(2L);
+        ct.close();
+        assertThat(r.segments).hasSize(3);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ".*past the end of the range.*")
+    public void testPastEndOfRange() {
+        ContiguousOutputChunker ct = new ContiguousOutputChunker(0, 10, 4, 1, true);
+        ct.onCycleResult(10, 0);
+    }
+
+    @Test
+    public void testConcurrentMarking() throws Exception {
+        int threads = 4;
+        int cycles = 100_000;
+        ContiguousOutputChunker ct = new ContiguousOutputChunker(0, cycles, 1000, 3, true);
+        TestReader r = new TestReader();
+        ct.addExtentReader(r);
+        List<Thread> markers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int slot = t;
+            markers.add(new Thread(() -> {
+                for (int cycle = slot; cycle < cycles; cycle += threads) {
+                    ct.onCycleResult(cycle, 1);
+                }
+            }));
+        }
+        markers.forEach(Thread::start);
+        for (Thread marker : markers) {
+            marker.join();
+        }
+        assertThat(r.segments).hasSize(100);
+        for (int i = 0; i < r.segments.size(); i++) {
+            assertThat(r.segments.get(i).getMinCycle()).isEqualTo(i * 1000L);
+            assertThat(r.segments.get(i).getCount()).isEqualTo(1000L);
+        }
+    }
+
+    @Test
+    public void testExtentSizeNeedNotDivideCycles() {
+        assertThat(ContiguousOutputChunker.calculateExtentSize(1234, 1)).isEqualTo(1234);
+        assertThat(ContiguousOutputChunker.calculateExtentSize(10_000_019L, 1)).isEqualTo(ContiguousOutputChunker.DEFAULT_EXTENT_SIZE);
+        assertThat(ContiguousOutputChunker.calculateExtentSize(10_000_019L * 7, 7) % 7).isEqualTo(0);
+    }
+
+    @Test
+    public void testSparseExtents() throws Exception {
+        long[] provided = {0, 1, 2, 10, 11, 25};
+        ContiguousOutputChunker ct = new ContiguousOutputChunker(0, 30, 4, 8, sparseCounter(provided));
+        TestReader r = new TestReader();
+        ct.addExtentReader(r);
+        for (int i = provided.length - 1; i >= 0; i--) {
+            ct.onCycleResult(provided[i], (int) provided[i] % 5);
+        }
+        assertThat(r.segments).hasSize(3);
+        long[] cycles = r.segments.stream()
+                .flatMap(s -> StreamSupport.stream(s.spliterator(), false))
+                .mapToLong(CycleResult::getCycle).toArray();
+        int[] results = r.segments.stream()
+                .flatMap(s -> StreamSupport.stream(s.spliterator(), false))
+                .mapToInt(CycleResult::getResult).toArray();
+        assertThat(cycles).containsExactly(provided);
+        assertThat(results).containsExactly(0, 1, 2, 0, 1, 0);
+        ct.close();
+        assertThat(r.segments).hasSize(3);
+    }
+
+    @Test
+    public void testLeadingEmptyExtentsAreHandedOff() {
+        ContiguousOutputChunker ct = new ContiguousOutputChunker(0, 100, 10, 1, sparseCounter(new long[]{55, 57}));
+        TestReader r = new TestReader();
+        ct.addExtentReader(r);
+        ct.onCycleResult(57, 1);
+        ct.onCycleResult(55, 1);
+        assertThat(r.segments).hasSize(1);
+        assertThat(r.segments.get(0).getMinCycle()).isEqualTo(55L);
+        assertThat(r.segments.get(0).getCount()).isEqualTo(2L);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ".*expected cycles.*")
+    public void testUnexpectedSparseCycle() {
+        ContiguousOutputChunker ct = new ContiguousOutputChunker(0, 10, 10, 1, sparseCounter(new long[]{3}));
+        ct.onCycleResult(4, 0);
+        ct.onCycleResult(3, 0);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ".*already marked.*")
+    public void testDuplicateSparseCycle() {
+        ContiguousOutputChunker ct = new ContiguousOutputChunker(0, 10, 10, 1, sparseCounter(new long[]{3, 4}));
+        ct.onCycleResult(3, 0);
+        ct.onCycleResult(3, 0);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ".*provide their cycles in order.*")
+    public void testUnorderedSparseInput() {
+        CanCountCycles provided = sparseCounter(new long[]{3, 4});
+        new ContiguousOutputChunker(0, 10, 10, 1, new CanCountCycles() {
+            @Override
+            public long getCycleCount(long min, long nextMin) {
+                return provided.getCycleCount(min, nextMin);
+            }
+
+            @Override
+            public boolean isInCycleOrder() {
+                return false;
+            }
+        });
+    }
+
+    @Test
+    public void testConcurrentSparseMarking() throws Exception {
+        int threads = 4;
+        long[] provided = new long[30_000];
+        for (int i = 0; i < provided.length; i++) {
+            provided[i] = i * 3L + (i % 2);
+        }
+        ContiguousOutputChunker ct = new ContiguousOutputChunker(0, provided[provided.length - 1] + 1, 1000, 3, sparseCounter(provided));
+        TestReader r = new TestReader();
+        ct.addExtentReader(r);
+        List<Thread> markers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int slot = t;
+            markers.add(new Thread(() -> {
+                for (int i = slot; i < provided.length; i += threads) {
+                    ct.onCycleResult(provided[i], 1);
+                }
+            }));
+        }
+        markers.forEach(Thread::start);
+        for (Thread marker : markers) {
+            marker.join();
+        }
+        long[] cycles = r.segments.stream()
+                .flatMap(s -> StreamSupport.stream(s.spliterator(), false))
+                .mapToLong(CycleResult::getCycle).toArray();
+        assertThat(cycles).containsExactly(provided);
+    }
+
+    private static CanCountCycles sparseCounter(long[] provided) {
+        return new CanCountCycles() {
+            @Override
+            public long getCycleCount(long min, long nextMin) {
+                return Arrays.stream(provided).filter(c -> c >= min && c < nextMin).count();
+            }
+
+            @Override
+            public BitSet getExpectedCycles(long min, long nextMin) {
+                BitSet expected = new BitSet();
+                Arrays.stream(provided).filter(c -> c >= min && c < nextMin).forEach(c -> expected.set((int) (c - min)));
+                return expected;
+            }
+        };
+    }
+
     private static class TestReader implements Output {
         List<CycleResultsSegment> segments = new ArrayList<>();
 
@@ -0,0 +1,118 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityimpl.motor;
+
+import io.engineblock.activityapi.core.Activity;
+import io.engineblock.activityapi.core.AsyncAction;
+import io.engineblock.activityapi.core.OpContext;
+import io.engineblock.activityapi.core.RunState;
+import io.engineblock.activityapi.core.SyncAction;
+import io.engineblock.activityimpl.SimpleActivity;
+import io.engineblock.activityimpl.input.AtomicInput;
+import io.engineblock.metrics.ActivityMetrics;
+import org.testng.annotations.Test;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class CoreMotorInstrumentationTest {
+
+    @Test
+    public void testInstrumentationLevelsSelectTimers() {
+        for (InstrumentationLevel level : InstrumentationLevel.values()) {
+            AtomicLong total = new AtomicLong();
+            Activity activity = runMotor("instrument_" + level, level, 1000, total);
+            assertThat(total.get()).isEqualTo(999L * 1000L / 2L);
+            assertThat(timerCount(activity, "strides")).isEqualTo(level.includes(InstrumentationLevel.stride) ? 100L : 0L);
+            assertThat(timerCount(activity, "cycles")).isEqualTo(level.includes(InstrumentationLevel.cycle) ? 1000L : 0L);
+            assertThat(timerCount(activity, "phases")).isEqualTo(level.includes(InstrumentationLevel.phase) ? 1000L : 0L);
+        }
+    }
+
+    @Test
+    public void testAsyncInstrumentationLevelsSelectTimers() {
+        for (InstrumentationLevel level : InstrumentationLevel.values()) {
+            Activity activity = new SimpleActivity("alias=async_instrument_" + level + ";cycles=0..1000;stride=10;instrument=" + level);
+            CoreMotor motor = new CoreMotor(activity, 0L, new AtomicInput(activity.getActivityDef()));
+            ArrayDeque<OpContext> completed = new ArrayDeque<>();
+            motor.setAction(new AsyncAction() {
+                @Override
+                public boolean enqueue(OpContext op) {
+                    op.setResult(0);
+                    completed.add(op);
+                    return true;
+                }
+
+                @Override
+                public OpContext dequeue() {
+                    return completed.poll();
+                }
+            });
+            motor.getSlotStateTracker().enterState(RunState.Starting);
+            motor.run();
+            assertThat(timerCount(activity, "strides")).isEqualTo(level.includes(InstrumentationLevel.stride) ? 100L : 0L);
+            assertThat(timerCount(activity, "cycles")).isEqualTo(level.includes(InstrumentationLevel.cycle) ? 1000L : 0L);
+        }
+    }
+
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ".*instrument=all is not valid.*")
+    public void testInvalidLevel() {
+        InstrumentationLevel.forParam("all");
+    }
+
+    /**
+     * Run a trivial action through the motor at each level, to show the cost of the motor timers.
+     */
+    @Test(groups = "perftest", enabled = false)
+    public void testInstrumentationOverhead() {
+        int cycles = 20_000_000;
+        for (int round = 0; round < 3; round++) {
+            for (InstrumentationLevel level : InstrumentationLevel.values()) {
+                long start = System.nanoTime();
+                runMotor("overhead_" + round + "_" + level, level, cycles, new AtomicLong());
+                long nanos = System.nanoTime() - start;
+                System.out.format("instrument=%-6s %6.2f ns/cycle%n", level, (double) nanos / cycles);
+            }
+        }
+    }
+
+    private Activity runMotor(String alias, InstrumentationLevel level, int cycles, AtomicLong total) {
+        Activity activity = new SimpleActivity("alias=" + alias + ";cycles=0.." + cycles + ";stride=10;instrument=" + level);
+        CoreMotor motor = new CoreMotor(activity, 0L, new AtomicInput(activity.getActivityDef()));
+        motor.setAction(new SyncAction() {
+            private long sum;
+
+            @Override
+            public int runCycle(long value) {
+                sum += value;
+                total.lazySet(sum);
+                return 0;
+            }
+        });
+        motor.getSlotStateTracker().enterState(RunState.Starting);
+        motor.run();
+        return activity;
+    }
+
+    private long timerCount(Activity activity, String name) {
+        return ActivityMetrics.timer(activity.getActivityDef(), name).getCount();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityimpl.motor;
+
+import io.engineblock.activityapi.core.Activity;
+import io.engineblock.activityapi.core.AsyncAction;
+import io.engineblock.activityapi.core.OpContext;
+import io.engineblock.activityapi.core.RunState;
+import io.engineblock.activityimpl.SimpleActivity;
+import io.engineblock.activityimpl.input.AtomicInput;
+import org.testng.annotations.Test;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class CoreMotorRecycleTest {
+
+    /**
+     * An action which completes each op by callback as soon as it is enqueued, but which
+     * only gives it back to the motor from dequeue after many later ops have been enqueued.
+     * Every stride is full before its ops are dequeued, so a stride buffer which was reused
+     * as soon as it was full would reset carriers which are still in the completed queue.
+     */
+    @Test
+    public void testCarriersAreNotReusedBeforeDequeue() {
+        Activity activity = new SimpleActivity("alias=recycle_callbacks;cycles=0..1000;stride=10;async=true;recycleops=true");
+        CoreMotor motor = new CoreMotor(activity, 0L, new AtomicInput(activity.getActivityDef()));
+        CompletedQueueAction action = new CompletedQueueAction(25);
+        motor.setAction(action);
+        motor.getSlotStateTracker().enterState(RunState.Starting);
+        motor.run();
+
+        assertThat(action.dequeued).isEqualTo(1000);
+        assertThat(action.changedCycles).isEqualTo(0);
+        assertThat(action.duplicates).isEqualTo(0);
+    }
+
+    private static class CompletedQueueAction implements AsyncAction {
+        private final int depth;
+        private final ArrayDeque<OpContext> completed = new ArrayDeque<>();
+        private final ArrayDeque<Long> completedCycles = new ArrayDeque<>();
+        private final Set<OpContext> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+        private int dequeued;
+        private int changedCycles;
+        private int duplicates;
+
+        private CompletedQueueAction(int depth) {
+            this.depth = depth;
+        }
+
+        @Override
+        public boolean enqueue(OpContext op) {
+            if (!pending.add(op)) {
+                duplicates++;
+            }
+            completed.add(op);
+            completedCycles.add(op.getCycle());
+            op.setResult(0);
+            return completed.size() < depth;
+        }
+
+        @Override
+        public OpContext dequeue() {
+            OpContext op = completed.poll();
+            if (op == null) {
+                return null;
+            }
+            if (op.getCycle() != completedCycles.poll()) {
+                changedCycles++;
+            }
+            pending.remove(op);
+            dequeued++;
+            return op;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+package io.engineblock.activityimpl.motor;
+
+import io.engineblock.activityapi.core.Activity;
+import io.engineblock.activityapi.core.RunState;
+import io.engineblock.activityapi.core.SyncAction;
+import io.engineblock.activityapi.cyclelog.buffers.cycles.CycleArray;
+import io.engineblock.activityapi.input.Input;
+import io.engineblock.activityapi.rates.RateSpec;
+import io.engineblock.activityapi.rates.testtypes.TestableAverageRateLimiter;
+import io.engineblock.activityimpl.SimpleActivity;
+import io.engineblock.activityimpl.input.AtomicInput;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The cycle rate limiter schedule should only be used up by cycles which are run.
+ */
+@Test
+public class CoreMotorReservationTest {
+
+    @Test
+    public void testShortStrideReservesOnlyItsCycles() {
+        AtomicLong clock = new AtomicLong(1_000_000_000L);
+        Activity activity = new SimpleActivity("alias=short_stride;cycles=0..10;stride=4;reservestrides=true");
+        TestableAverageRateLimiter limiter = limiter(activity, clock);
+        long start = limiter.getTicksTime();
+
+        // An input which ends with a short segment, as sparse or replayed inputs may
+        Iterator<long[]> segments = Arrays.asList(new long[]{0, 1, 2, 3}, new long[]{4, 5, 6, 7}, new long[]{8, 9}).iterator();
+        Input input = segmentLength -> segments.hasNext() ? new CycleArray.ArraySegment(segments.next()) : null;
+
+        CoreMotor motor = new CoreMotor(activity, 0L, input);
+        motor.setAction(new SyncAction() {
+            @Override
+            public int runCycle(long cycle) {
+                return 0;
+            }
+        });
+        motor.getSlotStateTracker().enterState(RunState.Starting);
+        motor.run();
+
+        assertThat(limiter.getTicksTime() - start).isEqualTo(10 * limiter.getOpNanos());
+    }
+
+    @Test
+    public void testStoppedStrideReleasesUnusedCycles() {
+        AtomicLong clock = new AtomicLong(1_000_000_000L);
+        Activity activity = new SimpleActivity("alias=stopped_stride;cycles=0..100;stride=4;reservestrides=true");
+        TestableAverageRateLimiter limiter = limiter(activity, clock);
+        long start = limiter.getTicksTime();
+
+        CoreMotor motor = new CoreMotor(activity, 0L, new AtomicInput(activity.getActivityDef()));
+        motor.setAction(new SyncAction() {
+            @Override
+            public int runCycle(long cycle) {
+                if (cycle == 5) {
+                    motor.requestStop();
+                }
+                return 0;
+            }
+        });
+        motor.getSlotStateTracker().enterState(RunState.Starting);
+        motor.run();
+
+        assertThat(motor.getSlotStateTracker().getSlotState()).isEqualTo(RunState.Stopped);
+        assertThat(limiter.getTicksTime() - start).isEqualTo(6 * limiter.getOpNanos());
+    }
+
+    @Test
+    public void testCyclesAreAcquiredByDefault() {
+        AtomicLong clock = new AtomicLong(1_000_000_000L);
+        Activity activity = new SimpleActivity("alias=acquired_cycles;cycles=0..12;stride=4");
+        AtomicLong reserved = new AtomicLong();
+        TestableAverageRateLimiter limiter = new TestableAverageRateLimiter(
+                clock, new RateSpec(1000D, 1.1D, false), activity.getActivityDef()) {
+            @Override
+            public long reserve(int permits) {
+                reserved.addAndGet(permits);
+                return super.reserve(permits);
+            }
+        };
+        clock.set(Long.MAX_VALUE / 2);
+        activity.setCycleLimiter(limiter);
+        long start = limiter.getTicksTime();
+
+        CoreMotor motor = new CoreMotor(activity, 0L, new AtomicInput(activity.getActivityDef()));
+        motor.setAction(new SyncAction() {
+            @Override
+            public int runCycle(long cycle) {
+                return 0;
+            }
+        });
+        motor.getSlotStateTracker().enterState(RunState.Starting);
+        motor.run();
+
+        assertThat(reserved.get()).isEqualTo(0L);
+        assertThat(limiter.getTicksTime() - start).isEqualTo(12 * limiter.getOpNanos());
+    }
+
+    private TestableAverageRateLimiter limiter(Activity activity, AtomicLong clock) {
+        // The clock is never advanced, so every cycle is due when it is scheduled
+        TestableAverageRateLimiter limiter = new TestableAverageRateLimiter(
+                clock, new RateSpec(1000D, 1.1D, false), activity.getActivityDef());
+        clock.set(Long.MAX_VALUE / 2);
+        activity.setCycleLimiter(limiter);
+        return limiter;
+    }
+}
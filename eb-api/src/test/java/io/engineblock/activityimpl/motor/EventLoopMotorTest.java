@@ -0,0 +1,153 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.activityimpl.motor;
+
+import io.engineblock.activityapi.core.Activity;
+import io.engineblock.activityapi.core.CallbackAsyncAction;
+import io.engineblock.activityapi.core.OpContext;
+import io.engineblock.activityapi.core.RunState;
+import io.engineblock.activityapi.cyclelog.buffers.results.CycleResult;
+import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsSegment;
+import io.engineblock.activityapi.output.Output;
+import io.engineblock.activityimpl.SimpleActivity;
+import io.engineblock.activityimpl.input.AtomicInput;
+import io.engineblock.metrics.ActivityMetrics;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test
+public class EventLoopMotorTest {
+
+    @Test
+    public void testInlineCompletions() {
+        List<Long> marked = new ArrayList<>();
+        Activity activity = runMotor("eventloop_inline", "maxasync=4", op -> op.setResult(1), marked);
+        assertThat(marked).hasSize(1000);
+        assertThat(timerCount(activity, "cycles")).isEqualTo(1000L);
+        assertThat(timerCount(activity, "strides")).isEqualTo(100L);
+    }
+
+    @Test
+    public void testOutOfOrderCompletions() throws Exception {
+        ExecutorService completer = Executors.newFixedThreadPool(4);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        try {
+            List<Long> marked = new ArrayList<>();
+            Activity activity = runMotor("eventloop_callbacks", "maxasync=50", op -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                completer.submit(() -> {
+                    try {
+                        TimeUnit.MICROSECONDS.sleep(op.getCycle() % 7 * 10);
+                    } catch (InterruptedException ignored) {
+                    }
+                    inFlight.decrementAndGet();
+                    op.setResult(0);
+                });
+            }, marked);
+            assertThat(marked).hasSize(1000);
+            assertThat(marked.stream().distinct().count()).isEqualTo(1000L);
+            assertThat(maxInFlight.get()).isBetween(1, 50);
+            assertThat(timerCount(activity, "cycles")).isEqualTo(1000L);
+            assertThat(timerCount(activity, "strides")).isEqualTo(100L);
+        } finally {
+            completer.shutdownNow();
+        }
+    }
+
+    /**
+     * The first op is held until every other op has completed. With only a few ops allowed in
+     * flight, this can only finish if the later ops are handled around the first one.
+     */
+    @Test
+    public void testSlowOpDoesNotBlockOthers() {
+        ConcurrentLinkedQueue<OpContext> held = new ConcurrentLinkedQueue<>();
+        AtomicInteger completed = new AtomicInteger();
+        List<Long> marked = new ArrayList<>();
+        runMotor("eventloop_slowop", "maxasync=3", op -> {
+            if (op.getCycle() == 0L) {
+                held.add(op);
+            } else {
+                op.setResult(0);
+                if (completed.incrementAndGet() == 999) {
+                    held.poll().setResult(0);
+                }
+            }
+        }, marked);
+        assertThat(marked).hasSize(1000);
+        // the stride of the held op is output after the strides which completed around it
+        assertThat(marked.indexOf(0L)).isGreaterThan(marked.indexOf(989L));
+    }
+
+    @Test
+    public void testResultsAreOutputPerStride() {
+        Activity activity = new SimpleActivity("alias=eventloop_segments;cycles=0..1000;stride=10;maxasync=25");
+        List<Long> marked = new ArrayList<>();
+        AtomicInteger segments = new AtomicInteger();
+        Output output = new Output() {
+            @Override
+            public boolean onCycleResult(long completedCycle, int result) {
+                marked.add(completedCycle);
+                return true;
+            }
+
+            @Override
+            public void onCycleResultSegment(CycleResultsSegment segment) {
+                segments.incrementAndGet();
+                for (CycleResult cycleResult : segment) {
+                    onCycleResult(cycleResult.getCycle(), cycleResult.getResult());
+                }
+            }
+        };
+        EventLoopMotor motor = new EventLoopMotor(activity, 0L, new AtomicInput(activity.getActivityDef()),
+                (CallbackAsyncAction) op -> op.setResult(0), output);
+        motor.getSlotStateTracker().enterState(RunState.Starting);
+        motor.run();
+        assertThat(segments.get()).isEqualTo(100);
+        assertThat(marked).hasSize(1000);
+        assertThat(marked.stream().distinct().count()).isEqualTo(1000L);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ".*maxasync=0 must be at least 1.*")
+    public void testInvalidMaxAsync() {
+        runMotor("eventloop_invalid", "maxasync=0", op -> op.setResult(0), new ArrayList<>());
+    }
+
+    private Activity runMotor(String alias, String params, CallbackAsyncAction action, List<Long> marked) {
+        Activity activity = new SimpleActivity("alias=" + alias + ";cycles=0..1000;stride=10;" + params);
+        Output output = (cycle, result) -> marked.add(cycle);
+        EventLoopMotor motor = new EventLoopMotor(activity, 0L, new AtomicInput(activity.getActivityDef()), action, output);
+        motor.getSlotStateTracker().enterState(RunState.Starting);
+        motor.run();
+        assertThat(motor.getSlotStateTracker().getSlotState()).isEqualTo(RunState.Finished);
+        return activity;
+    }
+
+    private long timerCount(Activity activity, String name) {
+        return ActivityMetrics.timer(activity.getActivityDef(), name).getCount();
+    }
+}
@@ -1,11 +1,81 @@
 package io.engineblock.metrics;
 
 import com.codahale.metrics.Snapshot;
+import org.HdrHistogram.Histogram;
 import org.testng.annotations.Test;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 @Test
 public class DeltaHdrHistogramReservoirTest {
 
+    @Test
+    public void testStripesAreMerged() throws Exception {
+        DeltaHdrHistogramReservoir dhhr = new DeltaHdrHistogramReservoir("merged", 3);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long base = (t + 1) * 1000L;
+            threads[t] = new Thread(() -> {
+                for (long i = 0; i < 1000; i++) {
+                    dhhr.update(base + i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        dhhr.update(10L);
+
+        Histogram merged = dhhr.getNextHdrHistogram();
+        assertThat(merged.getTotalCount()).isEqualTo(4001L);
+        assertThat(merged.getMinValue()).isEqualTo(10L);
+        assertThat(merged.getMaxValue()).isBetween(4999L, 5010L);
+
+        dhhr.update(20L);
+        Histogram next = dhhr.getNextHdrHistogram();
+        assertThat(next.getTotalCount()).isEqualTo(1L);
+        assertThat(next.getMaxValue()).isEqualTo(20L);
+    }
+
+    @Test
+    public void testManyThreadsShareStripes() throws Exception {
+        DeltaHdrHistogramReservoir dhhr = new DeltaHdrHistogramReservoir("striped", 3, 3);
+        Thread[] threads = new Thread[64];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (long i = 1; i <= 100; i++) {
+                    dhhr.update(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Histogram merged = dhhr.getNextHdrHistogram();
+        assertThat(merged.getTotalCount()).isEqualTo(6400L);
+        assertThat(merged.getMaxValue()).isEqualTo(100L);
+        assertThat(dhhr.copySettings().getNextHdrHistogram().getTotalCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testStripesAreCreatedWhenRecorded() {
+        DeltaHdrHistogramReservoir dhhr = new DeltaHdrHistogramReservoir("lazy", 3, 8);
+        assertThat(dhhr.getStripesInUse()).isEqualTo(0);
+        assertThat(dhhr.getNextHdrHistogram().getTotalCount()).isEqualTo(0L);
+        for (long i = 1; i <= 100; i++) {
+            dhhr.update(i);
+        }
+        assertThat(dhhr.getStripesInUse()).isEqualTo(1);
+        assertThat(dhhr.getNextHdrHistogram().getTotalCount()).isEqualTo(100L);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testStripesAreBounded() {
+        new DeltaHdrHistogramReservoir("unbounded", 3, DeltaHdrHistogramReservoir.MAX_STRIPES + 1);
+    }
+
 //    @Test
 //    public void testStartAndEndTimes() throws IOException {
 ////        File tempFile = new File("/tmp/test.hdr");
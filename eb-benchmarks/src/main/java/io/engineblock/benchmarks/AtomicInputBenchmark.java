@@ -0,0 +1,65 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.benchmarks;
+
+import io.engineblock.activityapi.cyclelog.buffers.cycles.CycleSegment;
+import io.engineblock.activityimpl.ActivityDef;
+import io.engineblock.activityimpl.input.AtomicInput;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of claiming a stride of cycles from a shared {@link AtomicInput}, with each thread
+ * reusing its own segment, as motors do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtomicInputBenchmark {
+
+    @Param({"1", "100"})
+    public int stride;
+
+    private AtomicInput input;
+
+    @State(Scope.Thread)
+    public static class Reusable {
+        CycleSegment segment;
+    }
+
+    @Setup
+    public void setup() {
+        input = new AtomicInput(ActivityDef.parseActivityDef("alias=inputbench;cycles=0.." + Long.MAX_VALUE / 2));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public CycleSegment getInputSegment1Thread(Reusable reusable) {
+        return reusable.segment = input.getInputSegment(stride, reusable.segment);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CycleSegment getInputSegment4Threads(Reusable reusable) {
+        return reusable.segment = input.getInputSegment(stride, reusable.segment);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.benchmarks;
+
+import io.engineblock.activities.diag.AsyncDiagAction;
+import io.engineblock.activities.diag.DiagAction;
+import io.engineblock.activities.diag.DiagActivity;
+import io.engineblock.activityapi.core.RunState;
+import io.engineblock.activityimpl.ActivityDef;
+import io.engineblock.activityimpl.input.AtomicInput;
+import io.engineblock.activityimpl.motor.CoreMotor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost per cycle of the motor loop around a diag action, which does almost nothing by itself.
+ * Each invocation runs one motor over a fresh input until the input is exhausted, for each
+ * instrumentation level and for both the sync and async motor loops.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoreMotorBenchmark {
+
+    private final static int CYCLES = 1_000_000;
+
+    @Param({"none", "stride", "cycle", "phase"})
+    public String instrument;
+
+    @Param({"1", "100"})
+    public int stride;
+
+    private DiagActivity activity;
+
+    @Setup
+    public void setup() {
+        activity = new DiagActivity(ActivityDef.parseActivityDef("alias=motorbench_" + instrument + "_" + stride
+                + ";type=diag;cycles=0.." + CYCLES + ";interval=0;modulo=" + Long.MAX_VALUE
+                + ";stride=" + stride + ";instrument=" + instrument + ";async=true;maxasync=" + stride));
+        activity.initActivity();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public void syncDiag() {
+        CoreMotor motor = newMotor();
+        motor.setAction(new DiagAction(0, activity.getActivityDef(), activity));
+        motor.run();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public void asyncDiag() {
+        CoreMotor motor = newMotor();
+        motor.setAction(new AsyncDiagAction(0, activity.getActivityDef(), activity));
+        motor.run();
+    }
+
+    private CoreMotor newMotor() {
+        CoreMotor motor = new CoreMotor(activity, 0L, new AtomicInput(activity.getActivityDef()));
+        motor.getSlotStateTracker().enterState(RunState.Starting);
+        return motor;
+    }
+}
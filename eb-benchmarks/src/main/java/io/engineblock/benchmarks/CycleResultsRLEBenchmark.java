@@ -0,0 +1,117 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.benchmarks;
+
+import io.engineblock.activityapi.cyclelog.buffers.results.CycleResult;
+import io.engineblock.activityapi.cyclelog.buffers.results.CycleResultsSegment;
+import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLEBufferReadable;
+import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLEBufferTarget;
+import io.engineblock.activityapi.cyclelog.buffers.results_rle.CycleResultsRLECompactCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost per cycle of encoding cycle results into RLE spans, as cyclelog outputs do, and of
+ * reading them back, as cyclelog inputs do. The compact encodings of cyclelog version 3 are
+ * measured per cycle as well, over the same spans.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CycleResultsRLEBenchmark {
+
+    private final static int CYCLES = 100_000;
+
+    /**
+     * The number of cycles in each run of the same result
+     */
+    @Param({"1", "4", "64"})
+    public int runLength;
+
+    private ByteBuffer spans;
+    private ByteBuffer varintBlock;
+    private ByteBuffer deflateBlock;
+    private ByteBuffer decoded;
+
+    @Setup
+    public void setup() {
+        spans = encode();
+        int spanCount = spans.remaining() / CycleResultsRLEBufferReadable.BYTES;
+        varintBlock = ByteBuffer.allocate(CycleResultsRLECompactCodec.maxBlockBytes(spanCount));
+        CycleResultsRLECompactCodec.encode(spans.duplicate(), CycleResultsRLECompactCodec.VARINT, varintBlock);
+        varintBlock.flip();
+        deflateBlock = ByteBuffer.allocate(CycleResultsRLECompactCodec.maxBlockBytes(spanCount));
+        CycleResultsRLECompactCodec.encode(spans.duplicate(), CycleResultsRLECompactCodec.DEFLATE, deflateBlock);
+        deflateBlock.flip();
+        decoded = ByteBuffer.allocate(spanCount * CycleResultsRLEBufferReadable.BYTES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public ByteBuffer encodeFixed() {
+        return encode();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public long decodeFixed() {
+        long sum = 0L;
+        for (CycleResultsSegment segment : new CycleResultsRLEBufferReadable(spans.duplicate())) {
+            for (CycleResult cycleResult : segment) {
+                sum += cycleResult.getResult();
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public ByteBuffer encodeVarint() {
+        varintBlock.clear();
+        CycleResultsRLECompactCodec.encode(spans.duplicate(), CycleResultsRLECompactCodec.VARINT, varintBlock);
+        varintBlock.flip();
+        return varintBlock;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public int decodeVarint() {
+        decoded.clear();
+        return CycleResultsRLECompactCodec.decode(varintBlock.duplicate(), decoded);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public int decodeDeflate() {
+        decoded.clear();
+        return CycleResultsRLECompactCodec.decode(deflateBlock.duplicate(), decoded);
+    }
+
+    private ByteBuffer encode() {
+        CycleResultsRLEBufferTarget target = new CycleResultsRLEBufferTarget(CYCLES / runLength + 1);
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            target.onCycleResult(cycle, (cycle / runLength) % 3);
+        }
+        return target.toByteBuffer();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.benchmarks;
+
+import io.engineblock.metrics.DeltaHdrHistogramReservoir;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of recording a value in a shared {@link DeltaHdrHistogramReservoir}, as every motor does for
+ * each timed cycle, and of taking a snapshot while values are recorded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistogramReservoirBenchmark {
+
+    private DeltaHdrHistogramReservoir reservoir;
+
+    @State(Scope.Thread)
+    public static class Values {
+        long value = 1000L;
+
+        long next() {
+            value = (value * 31L + 17L) & 0xFFFFFL;
+            return value + 1000L;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        reservoir = new DeltaHdrHistogramReservoir("bench", 4);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void update1Thread(Values values) {
+        reservoir.update(values.next());
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void update2Threads(Values values) {
+        reservoir.update(values.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void update4Threads(Values values) {
+        reservoir.update(values.next());
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void updateMaxThreads(Values values) {
+        reservoir.update(values.next());
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(3)
+    public void updateWhileSnapshotting(Values values) {
+        reservoir.update(values.next());
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(1)
+    public Object snapshot() {
+        return reservoir.getSnapshot();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.benchmarks;
+
+import io.engineblock.activityapi.rates.AverageRateLimiter;
+import io.engineblock.activityapi.rates.RateSpec;
+import io.engineblock.activityimpl.ActivityDef;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of acquiring from a shared {@link AverageRateLimiter}, with a rate which is high enough
+ * that callers are always behind schedule, so that only the scheduling logic is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    private AverageRateLimiter rateLimiter;
+
+    @Setup
+    public void setup() {
+        rateLimiter = new AverageRateLimiter(ActivityDef.parseActivityDef("alias=ratelimiterbench"), "bench",
+                new RateSpec(1_000_000_000.0D, 0.0D));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long acquire1Thread() {
+        return rateLimiter.acquire();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long acquire4Threads() {
+        return rateLimiter.acquire();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long acquireMaxThreads() {
+        return rateLimiter.acquire();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ *
+ *    Copyright 2016 jshook
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ * /
+ */
+
+package io.engineblock.benchmarks;
+
+import io.engineblock.activityapi.planning.OpSequence;
+import io.engineblock.activityapi.planning.SequencePlanner;
+import io.engineblock.activityapi.planning.SequencerType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of selecting the op for a cycle from a planned {@link OpSequence}, and of
+ * planning the sequence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceBenchmark {
+
+    @Param({"bucket", "interval", "concat"})
+    public String sequencer;
+
+    @Param({"3", "17", "1000"})
+    public int ops;
+
+    private SequencePlanner<String> planner;
+    private OpSequence<String> sequence;
+    private long cycle;
+
+    @Setup
+    public void setup() {
+        planner = new SequencePlanner<>(SequencerType.valueOf(sequencer));
+        for (int i = 0; i < ops; i++) {
+            planner.addOp("op" + i, i + 1);
+        }
+        sequence = planner.resolve();
+    }
+
+    @Benchmark
+    public String get() {
+        return sequence.get(cycle++);
+    }
+
+    @Benchmark
+    public OpSequence<String> plan() {
+        return planner.resolve();
+    }
+}
@@ -0,0 +1,154 @@
+package io.engineblock.cli;
+
+import io.engineblock.activityapi.rates.RateSpec;
+import io.engineblock.activityimpl.ActivityDef;
+import io.engineblock.activityimpl.ParameterMap;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * A calibration runs the diag activity in place of a real activity, with the same threads,
+ * stride, rate limiters, outputs and instrumentation. Since diag does no work of its own,
+ * the rate it reaches is the rate of the engine alone.
+ * <p>
+ * The calibration is run first without rate limiters, to find the maximum rate of the engine
+ * and the time each thread spends per op. If the activity has a cycle or stride rate, it is
+ * then run again with the same rate limiters, to show whether the target rate can be sustained.
+ * Outputs which write to a named file write to a file named for the calibration instead.
+ * A warning is printed when the target rate is near the maximum rate, since results at that
+ * rate may be limited by the engine and not by the system under test.
+ */
+public class ActivityCalibration {
+
+    /**
+     * The fraction of the maximum engine rate above which a target rate is flagged.
+     */
+    public final static double NEAR_LIMIT_RATIO = 0.8D;
+
+    private final static List<String> keptParams = Arrays.asList(
+            "cycles", "threads", "stride", "phases", "async", "maxasync", "input", "output", "instrument"
+    );
+    private final static List<String> rateParams = Arrays.asList(
+            "cyclerate", "co_cyclerate", "targetrate", "co_targetrate",
+            "striderate", "co_striderate", "phaserate", "co_phaserate"
+    );
+
+    private final ActivityDef activityDef;
+    private final String aliasPrefix;
+
+    public ActivityCalibration(String activitySpec) {
+        this.activityDef = ActivityDef.parseActivityDef(activitySpec);
+        if (activityDef.getEndCycle() - activityDef.getStartCycle() <= 0) {
+            throw new RuntimeException("calibrate requires a cycles=... parameter, with at least one cycle.");
+        }
+        String alias = activityDef.getAlias();
+        this.aliasPrefix = alias.equals(ActivityDef.DEFAULT_ALIAS) ? "calibrate" : alias + "_calibrate";
+    }
+
+    /**
+     * @return The activity spec for the diag activity with the same engine parameters, but no rate limiters
+     */
+    public String getMaxRateSpec() {
+        return toSpec(calibrationParams(aliasPrefix + "_max", false));
+    }
+
+    /**
+     * @return The activity spec for the diag activity with the same engine parameters and rate limiters,
+     * or empty if the activity has no rate limiters
+     */
+    public Optional<String> getTargetRateSpec() {
+        if (rateParams.stream().noneMatch(p -> activityDef.getParams().containsKey(p))) {
+            return Optional.empty();
+        }
+        return Optional.of(toSpec(calibrationParams(aliasPrefix + "_rate", true)));
+    }
+
+    /**
+     * @return The target rate in cycles per second, from the cycle rate, or else from the stride rate,
+     * or empty if neither is set
+     */
+    public Optional<Double> getTargetCycleRate() {
+        ParameterMap params = activityDef.getParams();
+        Optional<Double> cycleRate = params.getOptionalNamedParameter("cyclerate", "co_cyclerate", "targetrate", "co_targetrate")
+                .map(RateSpec::new).map(s -> s.opsPerSec);
+        if (cycleRate.isPresent()) {
+            return cycleRate;
+        }
+        long stride = params.getOptionalLong("stride").orElse(1L);
+        return params.getOptionalNamedParameter("striderate", "co_striderate")
+                .map(RateSpec::new).map(s -> s.opsPerSec * stride);
+    }
+
+    /**
+     * @return script logic which runs the calibration and prints its results
+     */
+    public String getScript() {
+        long cycles = activityDef.getEndCycle() - activityDef.getStartCycle();
+        int threads = activityDef.getThreads();
+        String name = aliasPrefix.replaceAll("[^A-Za-z0-9_]", "_");
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(name).append("_started = java.lang.System.nanoTime();\n");
+        sb.append("scenario.run(\"").append(getMaxRateSpec()).append("\");\n");
+        sb.append(name).append("_nanos = java.lang.System.nanoTime() - ").append(name).append("_started;\n");
+        sb.append(name).append("_maxrate = ").append(cycles).append(" * 1000000000.0 / ").append(name).append("_nanos;\n");
+        sb.append("print(\"calibration for ").append(activityDef.getAlias()).append(": engine max rate \" + ")
+                .append(name).append("_maxrate.toFixed(1) + \" ops/s with ").append(threads)
+                .append(" threads, \" + (").append(threads).append(" * ").append(name).append("_nanos / ")
+                .append(cycles).append(").toFixed(1) + \" ns added per op\");\n");
+
+        getTargetRateSpec().ifPresent(spec -> {
+            sb.append(name).append("_started = java.lang.System.nanoTime();\n");
+            sb.append("scenario.run(\"").append(spec).append("\");\n");
+            sb.append(name).append("_nanos = java.lang.System.nanoTime() - ").append(name).append("_started;\n");
+            sb.append("print(\"calibration for ").append(activityDef.getAlias()).append(": engine rate with rate limiters \" + (")
+                    .append(cycles).append(" * 1000000000.0 / ").append(name).append("_nanos).toFixed(1) + \" ops/s\");\n");
+        });
+
+        getTargetCycleRate().ifPresent(target -> {
+            sb.append("if (").append(target).append(" > ").append(NEAR_LIMIT_RATIO).append(" * ").append(name).append("_maxrate) {\n");
+            sb.append("    print(\"WARNING: the target rate of ").append(target).append(" ops/s is \" + (100.0 * ")
+                    .append(target).append(" / ").append(name).append("_maxrate).toFixed(1)")
+                    .append(" + \"% of the engine max rate, so results at this rate may be limited by the engine.\");\n");
+            sb.append("}\n");
+        });
+
+        return sb.toString();
+    }
+
+    private Map<String, String> calibrationParams(String alias, boolean withRates) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("alias", alias);
+        params.put("type", "diag");
+        Map<String, String> original = activityDef.getParams().getStringStringMap();
+        keptParams.stream().filter(original::containsKey).forEach(p -> params.put(p, original.get(p)));
+        if (params.containsKey("output")) {
+            params.put("output", withoutFile(params.get("output")));
+        }
+        if (withRates) {
+            rateParams.stream().filter(original::containsKey).forEach(p -> params.put(p, original.get(p)));
+        }
+        return params;
+    }
+
+    /**
+     * Remove any file option from an output config, so that the calibration writes to a file
+     * named for its own alias, and not over the file of the real activity.
+     */
+    private static String withoutFile(String outputConfig) {
+        return Arrays.stream(outputConfig.split(","))
+                .filter(s -> !s.matches("file[:=].*"))
+                .collect(Collectors.joining(","));
+    }
+
+    private static String toSpec(Map<String, String> params) {
+        StringBuilder sb = new StringBuilder();
+        params.forEach((k, v) -> sb.append(k).append("=").append(v).append(";"));
+        return sb.toString();
+    }
+}
@@ -4,6 +4,7 @@ import io.engineblock.activityapi.core.ActivityType;
 import io.engineblock.activityapi.output.OutputType;
 import io.engineblock.activityapi.cyclelog.outputs.cyclelog.CycleLogDumperUtility;
 import io.engineblock.activityapi.cyclelog.outputs.cyclelog.CycleLogImporterUtility;
+import io.engineblock.activityapi.cyclelog.outputs.cyclelog.CycleLogMergerUtility;
 import io.engineblock.activityapi.input.InputType;
 import io.engineblock.core.MarkdownDocInfo;
 import io.engineblock.core.ScenarioLogger;
@@ -89,6 +90,11 @@ public class EBCLI {
             System.exit(0);
         }
 
+        if (options.wantsToMergeCycleLogs()) {
+            CycleLogMergerUtility.main(options.getCyclelogMergeOptions());
+            System.exit(0);
+        }
+
         if (options.wantsTopicalHelp()) {
             Optional<String> helpDoc = MarkdownDocInfo.forHelpTopic(options.wantsTopicalHelpFor());
             System.out.println(helpDoc.orElseThrow(
@@ -39,8 +39,10 @@ public class EBCLIOptions {
     private static final String STOP_ACTIVITY = "stop";
     private static final String AWAIT_ACTIVITY = "await";
     private static final String WAIT_MILLIS = "waitmillis";
+    private static final String CALIBRATE_ACTIVITY = "calibrate";
     private static final String DUMP_CYCLELOG = "--export-cycle-log";
     private static final String IMPORT_CYCLELOG = "--import-cycle-log";
+    private static final String MERGE_CYCLELOGS = "--merge-cycle-logs";
 
     // Execution Options
     private static final String SCRIPT = "script";
@@ -96,6 +98,7 @@ public class EBCLIOptions {
     private boolean wantsMarkerTypes=false;
     private String[] rleDumpOptions = new String[0];
     private String[] cyclelogImportOptions = new String[0];
+    private String[] cyclelogMergeOptions = new String[0];
     private String consoleLoggingPattern = DEFAULT_CONSOLE_LOGGING_PATTERN;
     private String logsLevel = "INFO";
     private Map<String,Level> logLevelsOverrides = new HashMap<>();
@@ -131,6 +134,7 @@ public class EBCLIOptions {
                     arglist.addFirst("run");
                 case START_ACTIVITY:
                 case RUN_ACTIVITY:
+                case CALIBRATE_ACTIVITY:
                     Cmd activity = parseActivityCmd(arglist);
                     cmdList.add(activity);
                     break;
@@ -219,6 +223,10 @@ public class EBCLIOptions {
                     arglist.removeFirst();
                     cyclelogImportOptions = readAllWords(arglist);
                     break;
+                case MERGE_CYCLELOGS:
+                    arglist.removeFirst();
+                    cyclelogMergeOptions = readAllWords(arglist);
+                    break;
                 case LOG_HISTO:
                     arglist.removeFirst();
                     String logto = arglist.removeFirst();
@@ -495,6 +503,12 @@ public class EBCLIOptions {
     public String[] getCyclelogImportOptions() {
         return cyclelogImportOptions;
     }
+    public boolean wantsToMergeCycleLogs() {
+        return cyclelogMergeOptions.length>0;
+    }
+    public String[] getCyclelogMergeOptions() {
+        return cyclelogMergeOptions;
+    }
     public String[] getCycleLogExporterOptions() {
         return rleDumpOptions;
     }
@@ -515,6 +529,7 @@ public class EBCLIOptions {
         script,
         fragment,
         waitmillis,
+        calibrate,
     }
 
     public static class Cmd {
@@ -47,6 +47,10 @@ public class EBCLIScriptAssembly {
                             .append(cmdSpec)
                             .append("\");\n");
                     break;
+                case calibrate: // run diag in place of the activity
+                    sb.append("// from CLI as ").append(cmd).append("\n")
+                            .append(new ActivityCalibration(cmdSpec).getScript());
+                    break;
                 case await: // await activity
                     sb.append("// from CLI as ").append(cmd).append("\n");
                     sb.append("scenario.awaitActivity(\"").append(cmdSpec).append("\");\n");
@@ -4,6 +4,7 @@ import org.testng.annotations.Test;
 
 import java.security.InvalidParameterException;
 import java.util.List;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -179,4 +180,35 @@ public class TestEBCLIOptions {
 
     }
 
+    @Test
+    public void shouldRecognizeCalibrateCmd() {
+        EBCLIOptions opts = new EBCLIOptions(new String[]{ "calibrate", "type=woot", "alias=foo", "cycles=1000",
+                "threads=4", "stride=10", "cyclerate=500", "woot=bar" });
+        List<EBCLIOptions.Cmd> cmds = opts.getCommands();
+        assertThat(cmds).hasSize(1);
+        assertThat(cmds.get(0).getCmdType()).isEqualTo(EBCLIOptions.CmdType.calibrate);
+
+        EBCLIScriptAssembly.ScriptData s = EBCLIScriptAssembly.assembleScript(opts);
+        assertThat(s.getScriptTextIgnoringParams())
+                .contains("scenario.run(\"alias=foo_calibrate_max;type=diag;cycles=1000;threads=4;stride=10;\");")
+                .contains("scenario.run(\"alias=foo_calibrate_rate;type=diag;cycles=1000;threads=4;stride=10;cyclerate=500;\");")
+                .contains("WARNING");
+    }
+
+    @Test
+    public void shouldCalibrateWithoutRatesOnce() {
+        ActivityCalibration calibration = new ActivityCalibration("type=woot;cycles=10;striderate=20;stride=5;");
+        assertThat(calibration.getMaxRateSpec()).isEqualTo("alias=calibrate_max;type=diag;cycles=10;stride=5;");
+        assertThat(calibration.getTargetCycleRate()).isEqualTo(Optional.of(100.0D));
+        calibration = new ActivityCalibration("type=woot;cycles=10;output=type:cyclelog,file:woot;");
+        assertThat(calibration.getMaxRateSpec()).isEqualTo("alias=calibrate_max;type=diag;cycles=10;output=type:cyclelog;");
+        assertThat(calibration.getTargetRateSpec()).isNotPresent();
+        assertThat(calibration.getScript().contains("WARNING")).isFalse();
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void shouldThrowErrorForCalibrateWithoutCycles() {
+        new ActivityCalibration("type=woot;threads=2;");
+    }
+
 }
\ No newline at end of file
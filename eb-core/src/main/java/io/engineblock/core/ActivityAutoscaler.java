@@ -0,0 +1,256 @@
+/*
+ *
+ *       Copyright 2015 Jonathan Shook
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package io.engineblock.core;
+
+import com.codahale.metrics.Timer;
+import io.engineblock.activityapi.core.RunState;
+import io.engineblock.activityapi.rates.RateSpec;
+import io.engineblock.activityimpl.ActivityDef;
+import io.engineblock.activityimpl.ParameterMap;
+import io.engineblock.activityimpl.motor.InstrumentationLevel;
+import io.engineblock.metrics.ActivityMetrics;
+import io.engineblock.metrics.HdrDeltaHistogramAttachment;
+import io.engineblock.metrics.HdrDeltaHistogramProvider;
+import io.engineblock.util.SimpleConfig;
+import io.engineblock.util.Unit;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Optional;
+
+/**
+ * <p>An activity autoscaler adjusts the threads or the cycle rate of a running activity, to find
+ * the highest throughput which keeps the latency of the cycles timer at the given percentile under
+ * a target. It is enabled with the <em>autoscale</em> activity parameter, as in</p>
+ * <pre>autoscale=latency:20ms,percentile:99,interval:10s,adjust:threads,min:1,max:1000,report:saturation.csv</pre>
+ *
+ * <p>Only latency is required. The latency is measured from a histogram which is attached to
+ * the cycles timer, so other readers of the timer are not affected. After each interval, the
+ * measured throughput and latency are given to a {@link SaturationSearch}, which chooses the next
+ * thread count or cycle rate. When the activity ends, each measured step is reported as a
+ * saturation curve, in the log, and in a CSV file if report is set.</p>
+ */
+public class ActivityAutoscaler implements Runnable {
+
+    private final static Logger logger = LoggerFactory.getLogger(ActivityAutoscaler.class);
+
+    private final ActivityExecutor executor;
+    private final ActivityDef activityDef;
+    private final long latencyNanos;
+    private final double percentile;
+    private final long intervalMillis;
+    private final boolean adjustRate;
+    private final String report;
+    private final SaturationSearch search;
+    private HdrDeltaHistogramProvider histograms;
+    private Thread thread;
+    private volatile boolean stopped = false;
+
+    public ActivityAutoscaler(ActivityExecutor executor, String autoscaleSpec) {
+        this.executor = executor;
+        this.activityDef = executor.getActivityDef();
+        SimpleConfig conf = new SimpleConfig(autoscaleSpec);
+
+        this.latencyNanos = conf.getString("latency").flatMap(Unit::nanosecondsFor).orElseThrow(
+                () -> new RuntimeException("autoscale requires a latency target, as in autoscale=latency:20ms"));
+        double percentile = conf.getDouble("percentile").orElse(99.0D);
+        this.percentile = (percentile <= 1.0D) ? percentile * 100.0D : percentile; // allow 0.99 for 99
+        this.intervalMillis = conf.getString("interval").flatMap(Unit::msFor).orElse(10000L);
+        this.report = conf.getString("report").orElse(null);
+
+        String adjust = conf.getString("adjust").orElse("threads");
+        long initialLevel;
+        switch (adjust) {
+            case "threads":
+                this.adjustRate = false;
+                initialLevel = activityDef.getThreads();
+                break;
+            case "rate":
+                this.adjustRate = true;
+                initialLevel = getCycleRate().map(r -> (long) r.spec.opsPerSec).orElseThrow(
+                        () -> new RuntimeException("autoscale with adjust:rate requires a starting cyclerate"));
+                break;
+            default:
+                throw new RuntimeException("autoscale adjust:" + adjust + " is not valid. Use threads or rate.");
+        }
+
+        InstrumentationLevel instrument = activityDef.getParams().getOptionalString("instrument")
+                .map(InstrumentationLevel::forParam).orElse(InstrumentationLevel.phase);
+        if (!instrument.includes(InstrumentationLevel.cycle)) {
+            throw new RuntimeException("autoscale requires the cycles timer, so instrument=" + instrument + " may not be used with it.");
+        }
+
+        long min = conf.getLong("min").orElse(1L);
+        long max = conf.getLong("max").orElse(adjustRate ? Long.MAX_VALUE / 2 : 1000L);
+        this.search = new SaturationSearch(initialLevel, min, max);
+    }
+
+    /**
+     * Attach to the cycles timer, and start adjusting the activity in a separate thread.
+     */
+    public synchronized void start() {
+        Timer cycles = ActivityMetrics.timer(activityDef, "cycles");
+        if (!(cycles instanceof HdrDeltaHistogramAttachment)) {
+            throw new RuntimeException("autoscale is not able to attach to the cycles timer " + cycles);
+        }
+        this.histograms = ((HdrDeltaHistogramAttachment) cycles).attachHdrDeltaHistogram();
+        apply(search.getLevel());
+        thread = new Thread(this, activityDef.getAlias() + "-autoscaler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop adjusting the activity. The saturation curve is reported by the autoscaler thread
+     * as it exits, so this does not wait for it. Use {@link #awaitReport()} to wait for it.
+     */
+    public void stop() {
+        stopped = true;
+        Thread autoscaler = getThread();
+        if (autoscaler != null && autoscaler != Thread.currentThread()) {
+            autoscaler.interrupt();
+        }
+    }
+
+    /**
+     * Wait for the autoscaler thread to report the saturation curve after it is stopped.
+     * This must not be called while holding the activity executor lock, since the autoscaler
+     * may be waiting for it to apply a change.
+     */
+    public void awaitReport() {
+        Thread autoscaler = getThread();
+        if (autoscaler != null && autoscaler != Thread.currentThread()) {
+            try {
+                autoscaler.join(intervalMillis);
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    private synchronized Thread getThread() {
+        return thread;
+    }
+
+    @Override
+    public void run() {
+        try {
+            histograms.getNextHdrDeltaHistogram(); // discard anything before the first interval
+            long lastSampleAt = System.nanoTime();
+            while (!stopped && executor.getActivity().getRunState() == RunState.Running) {
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (!executor.isRunning()) {
+                    break;
+                }
+                Histogram histogram = histograms.getNextHdrDeltaHistogram();
+                long now = System.nanoTime();
+                double seconds = (now - lastSampleAt) / 1_000_000_000.0D;
+                lastSampleAt = now;
+                if (search.isConverged() || histogram.getTotalCount() == 0) {
+                    continue;
+                }
+
+                long level = search.getLevel();
+                double opsPerSecond = histogram.getTotalCount() / seconds;
+                long latency = histogram.getValueAtPercentile(percentile);
+                long next = search.record(opsPerSecond, latency, latency <= latencyNanos);
+                logger.info("autoscale " + activityDef.getAlias() + ": " + describeLevel(level) + " gave "
+                        + String.format("%.1f", opsPerSecond) + " ops/s with p" + percentile + "="
+                        + String.format("%.3f", latency / 1_000_000.0D) + "ms, next " + describeLevel(next)
+                        + (search.isConverged() ? " (converged)" : ""));
+                if (next != level) {
+                    apply(next);
+                }
+                // The interval after a change includes the ramp to the new level, so it is not measured
+                histograms.getNextHdrDeltaHistogram();
+                lastSampleAt = System.nanoTime();
+            }
+        } finally {
+            report();
+        }
+    }
+
+    private void apply(long level) {
+        if (adjustRate) {
+            CycleRate rate = getCycleRate().orElseThrow(
+                    () -> new RuntimeException("autoscale with adjust:rate requires a cyclerate, but it was removed"));
+            activityDef.getParams().set(rate.name, rate.spec.withOpsPerSecond(level).toSpec());
+        } else if (activityDef.getThreads() != level) {
+            activityDef.setThreads((int) level);
+        }
+    }
+
+    /**
+     * @return the cycle rate, under whichever of its parameter names is set, since the rate
+     * must be written back under the same name
+     */
+    private Optional<CycleRate> getCycleRate() {
+        return activityDef.getParams().getOptionalNamedParameter("cyclerate", "co_cyclerate", "targetrate", "co_targetrate")
+                .map(CycleRate::new);
+    }
+
+    private static class CycleRate {
+        private final String name;
+        private final RateSpec spec;
+
+        private CycleRate(ParameterMap.NamedParameter param) {
+            this.name = param.name;
+            this.spec = new RateSpec(param);
+        }
+    }
+
+    private String describeLevel(long level) {
+        return (adjustRate ? "cyclerate=" : "threads=") + level;
+    }
+
+    private void report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("saturation curve for ").append(activityDef.getAlias()).append(", p").append(percentile)
+                .append(" target ").append(String.format("%.3f", latencyNanos / 1_000_000.0D)).append("ms:\n");
+        sb.append(String.format("%10s %14s %14s  %s%n", adjustRate ? "cyclerate" : "threads", "ops/s", "p" + percentile + "(ms)", "verdict"));
+        search.getSteps().forEach(s -> sb.append(s).append("\n"));
+        SaturationSearch.Step best = search.getBest();
+        sb.append(best != null
+                ? "best: " + describeLevel(best.level) + " at " + String.format("%.1f", best.opsPerSecond) + " ops/s"
+                : "no measured level met the latency target");
+        logger.info(sb.toString());
+
+        if (report != null) {
+            try (PrintWriter writer = new PrintWriter(new FileWriter(report))) {
+                writer.println((adjustRate ? "cyclerate" : "threads") + ",ops_per_second,latency_nanos,verdict");
+                for (SaturationSearch.Step step : search.getSteps()) {
+                    writer.println(step.level + "," + step.opsPerSecond + "," + step.latencyNanos + "," + step.verdict);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to write saturation report to " + report + ": " + e, e);
+            }
+        }
+    }
+
+    public SaturationSearch getSearch() {
+        return search;
+    }
+}
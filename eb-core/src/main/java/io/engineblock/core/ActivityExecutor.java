@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -42,6 +43,13 @@ import java.util.stream.Collectors;
  * scenario, but which is inactive. This can occur when an activity is paused by controlling logic,
  * or when the threads are set to zero.</p>
  *
+ * <p>Motors run on platform threads by default. With the <em>executor=virtual</em> activity
+ * parameter, they run on virtual threads instead, so that an activity with many threads that
+ * mostly wait, as with blocking clients or rate limiters, does not need an OS thread for each.</p>
+ *
+ * <p>With the <em>autoscale</em> activity parameter, an {@link ActivityAutoscaler} adjusts the
+ * threads or cycle rate while the activity runs, to find its saturation point under a latency target.</p>
+ *
  * <p>
  * Invariants:
  * </p>
@@ -57,6 +65,7 @@ public class ActivityExecutor implements ActivityController, ParameterMap.Listen
     private final ActivityDef activityDef;
     private ExecutorService executorService;
     private RuntimeException stoppingException;
+    private ActivityAutoscaler autoscaler;
 
     private final static int waitTime=10000;
 
@@ -69,13 +78,25 @@ public class ActivityExecutor implements ActivityController, ParameterMap.Listen
                 0, Integer.MAX_VALUE,
                 0L, TimeUnit.SECONDS,
                 new SynchronousQueue<>(),
-                new IndexedThreadFactory(activity.getAlias(), new ActivityExceptionHandler(this))
+                getMotorThreadFactory()
         );
         activity.getActivityDef().getParams().addListener(this);
         activity.setActivityController(this);
     }
 
 
+    private ThreadFactory getMotorThreadFactory() {
+        String executor = activityDef.getParams().getOptionalString("executor").orElse("platform");
+        switch (executor) {
+            case "platform":
+                return new IndexedThreadFactory(activity.getAlias(), new ActivityExceptionHandler(this));
+            case "virtual":
+                return new VirtualThreadFactory(activity.getAlias(), new ActivityExceptionHandler(this));
+            default:
+                throw new RuntimeException("executor=" + executor + " is not valid. Use platform or virtual.");
+        }
+    }
+
     // TODO: Doc how uninitialized activities do not propagate parameter map changes and how
     // TODO: this is different from preventing modification to uninitialized activities
 
@@ -93,6 +114,8 @@ public class ActivityExecutor implements ActivityController, ParameterMap.Listen
             activity.setRunState(RunState.Starting);
             activity.initActivity();
             activity.onActivityDefUpdate(activityDef);
+            autoscaler = activityDef.getParams().getOptionalString("autoscale")
+                    .map(spec -> new ActivityAutoscaler(this, spec)).orElse(null);
         } catch (Exception e) {
             this.stoppingException = new RuntimeException("Error initializing activity '" +
                     activity.getAlias() +"': " + e.getMessage(),e);
@@ -101,6 +124,9 @@ public class ActivityExecutor implements ActivityController, ParameterMap.Listen
         }
         adjustToActivityDef(activity.getActivityDef());
         activity.setRunState(RunState.Running);
+        if (autoscaler != null) {
+            autoscaler.start();
+        }
     }
 
     /**
@@ -108,9 +134,10 @@ public class ActivityExecutor implements ActivityController, ParameterMap.Listen
      */
     public synchronized void stopActivity() {
         activity.setRunState(RunState.Stopped);
+        stopAutoscaler();
         logger.info("stopping activity in progress: " + this.getActivityDef().getAlias());
         motors.forEach(Motor::requestStop);
-        motors.forEach(m -> awaitRequiredMotorState(m, 30000, 50, RunState.Stopped, RunState.Finished));
+        motors.forEach(m -> awaitRequiredMotorState(m, 30000, RunState.Stopped, RunState.Finished));
         activity.shutdownActivity();
         activity.closeAutoCloseables();
         logger.info("stopped: " + this.getActivityDef().getAlias() + " with " + motors.size() + " slots");
@@ -119,16 +146,17 @@ public class ActivityExecutor implements ActivityController, ParameterMap.Listen
     /**
      * Shutdown the activity executor, with a grace period for the motor threads.
      *
-     * @param initialMillisToWait milliseconds to wait after graceful shutdownActivity request, before forcing everything to stop
+     * @param initialMillisToWait milliseconds to wait at most after graceful shutdownActivity request, before forcing everything to stop
      */
     public synchronized void forceStopExecutor(int initialMillisToWait) {
         activity.setRunState(RunState.Stopped);
+        stopAutoscaler();
 
         executorService.shutdown();
         requestStopMotors();
 
         try {
-            Thread.sleep(initialMillisToWait);
+            executorService.awaitTermination(initialMillisToWait, TimeUnit.MILLISECONDS);
         } catch (InterruptedException ignored) {
         }
 
@@ -158,6 +186,10 @@ public class ActivityExecutor implements ActivityController, ParameterMap.Listen
             wasStopped = false;
             logger.warn("while waiting termination of activity " + activity.getAlias() + ", " + ie.getMessage());
         } finally {
+            ActivityAutoscaler stoppingAutoscaler = stopAutoscaler();
+            if (stoppingAutoscaler != null) {
+                stoppingAutoscaler.awaitReport();
+            }
             activity.shutdownActivity();
             activity.closeAutoCloseables();
         }
@@ -168,6 +200,15 @@ public class ActivityExecutor implements ActivityController, ParameterMap.Listen
         return wasStopped;
     }
 
+    private synchronized ActivityAutoscaler stopAutoscaler() {
+        ActivityAutoscaler stopping = autoscaler;
+        if (stopping != null) {
+            stopping.stop();
+            autoscaler = null;
+        }
+        return stopping;
+    }
+
 
     /**
      * Listens for changes to parameter maps, maps them to the activity instance, and notifies
@@ -204,7 +245,7 @@ public class ActivityExecutor implements ActivityController, ParameterMap.Listen
     }
 
     public boolean awaitFinish(int timeout) {
-        boolean awaited = awaitAllRequiredMotorState(timeout, 50, RunState.Finished, RunState.Stopped);
+        boolean awaited = awaitAllRequiredMotorState(timeout, RunState.Finished, RunState.Stopped);
         if (awaited) {
             awaited = awaitCompletion(timeout);
         }
@@ -288,15 +329,15 @@ public class ActivityExecutor implements ActivityController, ParameterMap.Listen
         switch (activity.getRunState()) {
             case Starting:
             case Running:
-                motors.forEach(m -> awaitRequiredMotorState(m, waitTime, 50, RunState.Running, RunState.Finished));
+                motors.forEach(m -> awaitRequiredMotorState(m, waitTime, RunState.Running, RunState.Finished));
                 break;
             case Stopped:
-                motors.forEach(m -> awaitRequiredMotorState(m, waitTime, 50, RunState.Stopped, RunState.Finished));
+                motors.forEach(m -> awaitRequiredMotorState(m, waitTime, RunState.Stopped, RunState.Finished));
                 break;
             case Uninitialized:
                 break;
             case Finished:
-                motors.forEach(m -> awaitRequiredMotorState(m, waitTime, 50, RunState.Finished));
+                motors.forEach(m -> awaitRequiredMotorState(m, waitTime, RunState.Finished));
                 break;
             case Stopping:
                 throw new RuntimeException("Invalid requested state in activity executor:" + activity.getRunState());
@@ -307,69 +348,32 @@ public class ActivityExecutor implements ActivityController, ParameterMap.Listen
     }
 
     /**
-     * Await a thread (aka motor/slot) entering a specific SlotState
+     * Await a thread (aka motor/slot) entering a specific SlotState. This returns as soon as
+     * the motor enters the state, since each slot state transition notifies waiters.
      *
      * @param m         motor instance
      * @param waitTime  milliseconds to wait, total
-     * @param pollTime  polling interval between state checks
      * @param runState any desired SlotState
      * @return true, if the desired SlotState was detected
      */
-    private boolean awaitMotorState(Motor m, int waitTime, int pollTime, RunState... runState) {
-        long startedAt = System.currentTimeMillis();
-        while (System.currentTimeMillis() < (startedAt + waitTime)) {
-            for (RunState state : runState) {
-                if (m.getSlotStateTracker().getSlotState() == state) {
-                    logger.trace(activityDef.getAlias() + "/Motor[" + m.getSlotId() + "] is now in state " + m.getSlotStateTracker().getSlotState());
-                    return true;
-                }
-            }
-            try {
-                Thread.sleep(pollTime);
-            } catch (InterruptedException ignored) {
-            }
-        }
+    private boolean awaitMotorState(Motor m, long waitTime, RunState... runState) {
+        boolean awaited = m.getSlotStateTracker().awaitSlotState(waitTime, runState);
         logger.trace(activityDef.getAlias() + "/Motor[" + m.getSlotId() + "] is now in state " + m.getSlotStateTracker().getSlotState());
-        return false;
-    }
-
-
-    private boolean awaitAllRequiredMotorState(int waitTime, int pollTime, RunState... awaitingState) {
-        long startedAt = System.currentTimeMillis();
-        boolean awaited = false;
-        while (!awaited && (System.currentTimeMillis() < (startedAt + waitTime))) {
-            awaited=true;
-            for (Motor motor : motors) {
-                awaited = awaitMotorState(motor, waitTime, pollTime, awaitingState);
-                if (!awaited) {
-                    logger.trace("failed awaiting motor " + motor.getSlotId() + " for state in " +
-                        Arrays.asList(awaitingState));
-                    break;
-                }
-            }
-        }
         return awaited;
     }
 
 
-    private boolean awaitAnyRequiredMotorState(int waitTime, int pollTime, RunState... awaitingState) {
-        long startedAt = System.currentTimeMillis();
-        while (System.currentTimeMillis() < (startedAt + waitTime)) {
-            for (Motor motor : motors) {
-                for (RunState state : awaitingState) {
-                    if (motor.getSlotStateTracker().getSlotState() == state) {
-                        logger.trace("at least one 'any' of " + activityDef.getAlias() + "/Motor[" + motor.getSlotId() + "] is now in state " + motor.getSlotStateTracker().getSlotState());
-                        return true;
-                    }
-                }
-            }
-            try {
-                Thread.sleep(pollTime);
-            } catch (InterruptedException ignored) {
+    private boolean awaitAllRequiredMotorState(int waitTime, RunState... awaitingState) {
+        long deadline = System.currentTimeMillis() + waitTime;
+        for (Motor motor : motors) {
+            boolean awaited = awaitMotorState(motor, Math.max(0L, deadline - System.currentTimeMillis()), awaitingState);
+            if (!awaited) {
+                logger.trace("failed awaiting motor " + motor.getSlotId() + " for state in " +
+                    Arrays.asList(awaitingState));
+                return false;
             }
         }
-        logger.trace("none of " + activityDef.getAlias() + "/Motor [" + motors.size() + "] is in states in " + Arrays.asList(awaitingState));
-        return false;
+        return true;
     }
 
 
@@ -378,13 +382,12 @@ public class ActivityExecutor implements ActivityController, ParameterMap.Listen
      *
      * @param m             motor instance
      * @param waitTime      milliseconds to wait, total
-     * @param pollTime      polling interval between state checks
      * @param awaitingState desired SlotState
      * @throws RuntimeException if the waitTime is used up and the desired state is not reached
      */
-    private void awaitRequiredMotorState(Motor m, int waitTime, int pollTime, RunState... awaitingState) {
+    private void awaitRequiredMotorState(Motor m, int waitTime, RunState... awaitingState) {
         RunState startingState = m.getSlotStateTracker().getSlotState();
-        boolean awaitedRequiredState = awaitMotorState(m, waitTime, pollTime, awaitingState);
+        boolean awaitedRequiredState = awaitMotorState(m, waitTime, awaitingState);
         if (!awaitedRequiredState) {
             String error = "Unable to await " + activityDef.getAlias() +
                     "/Motor[" + m.getSlotId() + "]: from state " + startingState + " to " + m.getSlotStateTracker().getSlotState()
@@ -0,0 +1,157 @@
+/*
+ *
+ *       Copyright 2015 Jonathan Shook
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package io.engineblock.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>A search for the highest level of load, like a thread count or an op rate, which
+ * still meets a latency objective and still adds throughput. Each measured step is
+ * either good, if it met the latency objective and added at least {@link #MIN_GAIN}
+ * throughput over the best good step, or bad otherwise.</p>
+ *
+ * <p>The level is doubled until a bad step is found, and then the search bisects between
+ * the highest good level and the lowest bad level, until they are adjacent. Then the
+ * search is converged, and the level stays at the highest good level, or at the minimum
+ * level if no level was good.</p>
+ */
+public class SaturationSearch {
+
+    /**
+     * The throughput gain over the best good step which a higher level must add to be good.
+     */
+    public final static double MIN_GAIN = 1.05D;
+
+    private final long minLevel;
+    private final long maxLevel;
+    private final List<Step> steps = new ArrayList<>();
+    private long good = -1L;
+    private double goodRate = -1.0D;
+    private long bad = -1L;
+    private long level;
+    private boolean converged = false;
+
+    public SaturationSearch(long initialLevel, long minLevel, long maxLevel) {
+        if (minLevel < 1 || maxLevel < minLevel) {
+            throw new RuntimeException("The search range [" + minLevel + "," + maxLevel + "] is not valid.");
+        }
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+        this.level = Math.max(minLevel, Math.min(maxLevel, initialLevel));
+    }
+
+    /**
+     * @return the level which should be measured next, or the chosen level once converged
+     */
+    public long getLevel() {
+        return level;
+    }
+
+    public boolean isConverged() {
+        return converged;
+    }
+
+    /**
+     * Record the measurement of the current level, and choose the next level.
+     *
+     * @param opsPerSecond The throughput at the current level
+     * @param latencyNanos The latency at the objective percentile, at the current level
+     * @param metObjective Whether the latency met the objective
+     * @return the next level
+     */
+    public long record(double opsPerSecond, long latencyNanos, boolean metObjective) {
+        if (converged) {
+            return level;
+        }
+        Verdict verdict;
+        if (!metObjective) {
+            verdict = Verdict.slo;
+        } else if (goodRate >= 0.0D && opsPerSecond < goodRate * MIN_GAIN) {
+            verdict = Verdict.saturated;
+        } else {
+            verdict = Verdict.good;
+        }
+        steps.add(new Step(level, opsPerSecond, latencyNanos, verdict));
+
+        if (verdict == Verdict.good) {
+            good = level;
+            goodRate = opsPerSecond;
+        } else if (bad < 0 || level < bad) {
+            bad = level;
+        }
+
+        long next;
+        if (bad < 0) {
+            next = Math.min(maxLevel, level * 2);
+        } else if (good < 0) {
+            next = Math.max(minLevel, bad / 2);
+        } else {
+            next = good + (bad - good) / 2;
+        }
+
+        if (next == good || next == bad || next == level) {
+            converged = true;
+            next = (good > 0) ? good : minLevel;
+        }
+        level = next;
+        return level;
+    }
+
+    /**
+     * @return the best good step, or null if no step was good
+     */
+    public Step getBest() {
+        return steps.stream().filter(s -> s.verdict == Verdict.good)
+                .max((a, b) -> Double.compare(a.opsPerSecond, b.opsPerSecond)).orElse(null);
+    }
+
+    /**
+     * @return every measured step, in the order measured
+     */
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    public enum Verdict {
+        good,
+        slo,
+        saturated
+    }
+
+    public static class Step {
+        public final long level;
+        public final double opsPerSecond;
+        public final long latencyNanos;
+        public final Verdict verdict;
+
+        public Step(long level, double opsPerSecond, long latencyNanos, Verdict verdict) {
+            this.level = level;
+            this.opsPerSecond = opsPerSecond;
+            this.latencyNanos = latencyNanos;
+            this.verdict = verdict;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%10d %14.1f %14.3f  %s", level, opsPerSecond, latencyNanos / 1_000_000.0D, verdict);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *
+ *       Copyright 2015 Jonathan Shook
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package io.engineblock.core;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A named and indexed thread factory like {@link IndexedThreadFactory}, but which makes
+ * virtual threads. Virtual threads are scheduled onto a small pool of carrier threads by
+ * the JVM, and are unmounted from their carrier whenever they block or park, as in
+ * {@link java.util.concurrent.locks.LockSupport#parkNanos(long)}. This allows an activity to
+ * have many more motors than the system could support as OS threads.
+ * <p>
+ * Virtual threads are only available on Java 21 or later. Since this project is built for
+ * Java 8, the virtual thread builder is looked up reflectively, once.
+ */
+public class VirtualThreadFactory implements ThreadFactory {
+
+    private final static ThreadFactory virtualThreads = lookupVirtualThreadFactory();
+
+    private final Thread.UncaughtExceptionHandler uncaughtExceptionHandler;
+    private final String name;
+    private final AtomicInteger threadIndexer = new AtomicInteger(0);
+
+    public VirtualThreadFactory(String name, Thread.UncaughtExceptionHandler exceptionHandler) {
+        if (virtualThreads == null) {
+            throw new RuntimeException("Virtual threads are not supported by this JVM (" +
+                    System.getProperty("java.version") + "). Java 21 or later is required for executor=virtual.");
+        }
+        this.name = name;
+        this.uncaughtExceptionHandler = exceptionHandler;
+    }
+
+    /**
+     * @return true if this JVM can create virtual threads
+     */
+    public static boolean isSupported() {
+        return virtualThreads != null;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        int threadIndex = threadIndexer.incrementAndGet();
+        Thread thread = virtualThreads.newThread(r);
+        thread.setName(name + String.format(":%03d", threadIndex));
+        if (uncaughtExceptionHandler != null) {
+            thread.setUncaughtExceptionHandler(uncaughtExceptionHandler);
+        }
+        return thread;
+    }
+
+    private static ThreadFactory lookupVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
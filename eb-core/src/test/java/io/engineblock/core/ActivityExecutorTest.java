@@ -97,6 +97,38 @@ public class ActivityExecutorTest {
 
     }
 
+    @Test
+    public void testVirtualThreadExecutor() {
+        ActivityDef ad = ActivityDef.parseActivityDef("type=diag;alias=test;cycles=1000;threads=100;executor=virtual;");
+        Activity a = new SimpleActivity(ad);
+        InputDispenser idisp = new CoreInputDispenser(a);
+        ActionDispenser adisp = new CoreActionDispenser(a);
+        MotorDispenser mdisp = new CoreMotorDispenser(a, idisp, adisp, null);
+        a.setActionDispenserDelegate(adisp);
+        a.setInputDispenserDelegate(idisp);
+        a.setMotorDispenserDelegate(mdisp);
+
+        if (!VirtualThreadFactory.isSupported()) {
+            try {
+                new ActivityExecutor(a);
+            } catch (RuntimeException e) {
+                assertThat(e.getMessage()).contains("Java 21");
+                return;
+            }
+            throw new RuntimeException("executor=virtual should not be allowed on this JVM");
+        }
+        ActivityExecutor ae = new ActivityExecutor(a);
+        ae.startActivity();
+        ae.awaitCompletion(15000);
+        assertThat(idisp.getInput(0).getInputSegment(1)).isNull();
+    }
+
+    @Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ".*executor=carrier.*")
+    public void testInvalidExecutor() {
+        ActivityDef ad = ActivityDef.parseActivityDef("type=diag;alias=test;cycles=1000;executor=carrier;");
+        new ActivityExecutor(new SimpleActivity(ad));
+    }
+
     private MotorDispenser getActivityMotorFactory(final ActivityDef ad, Action lc, final Input ls) {
         MotorDispenser cmf = new MotorDispenser() {
             @Override
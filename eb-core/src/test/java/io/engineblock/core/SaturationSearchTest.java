@@ -0,0 +1,88 @@
+package io.engineblock.core;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+*   Copyright 2015 jshook
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+*/
+@Test
+public class SaturationSearchTest {
+
+    /**
+     * A system which scales linearly at 100 ops/s per thread, and which exceeds the
+     * latency target above 20 threads.
+     */
+    private SaturationSearch runLatencyBound(SaturationSearch search) {
+        for (int i = 0; i < 100 && !search.isConverged(); i++) {
+            long level = search.getLevel();
+            search.record(level * 100.0D, level * 1_000_000L, level <= 20);
+        }
+        return search;
+    }
+
+    @Test
+    public void testConvergesOnLatencyLimit() {
+        SaturationSearch search = runLatencyBound(new SaturationSearch(1, 1, 1000));
+        assertThat(search.isConverged()).isTrue();
+        assertThat(search.getLevel()).isEqualTo(20L);
+        assertThat(search.getBest().level).isEqualTo(20L);
+        assertThat(search.getSteps().get(0).level).isEqualTo(1L);
+        assertThat(search.getSteps().get(5).level).isEqualTo(32L);
+        assertThat(search.getSteps().get(5).verdict).isEqualTo(SaturationSearch.Verdict.slo);
+    }
+
+    @Test
+    public void testConvergesOnThroughputPlateau() {
+        SaturationSearch search = new SaturationSearch(1, 1, 1000);
+        for (int i = 0; i < 100 && !search.isConverged(); i++) {
+            long level = search.getLevel();
+            search.record(Math.min(level, 8) * 100.0D, 1_000_000L, true);
+        }
+        assertThat(search.isConverged()).isTrue();
+        assertThat(search.getLevel()).isEqualTo(8L);
+        assertThat(search.getSteps().stream()
+                .filter(s -> s.verdict == SaturationSearch.Verdict.saturated).count()).isGreaterThan(0L);
+    }
+
+    @Test
+    public void testBoundedByMax() {
+        SaturationSearch search = runLatencyBound(new SaturationSearch(4, 1, 12));
+        assertThat(search.isConverged()).isTrue();
+        assertThat(search.getLevel()).isEqualTo(12L);
+    }
+
+    @Test
+    public void testNothingMeetsObjective() {
+        SaturationSearch search = new SaturationSearch(16, 2, 100);
+        for (int i = 0; i < 100 && !search.isConverged(); i++) {
+            search.record(100.0D, 100_000_000L, false);
+        }
+        assertThat(search.isConverged()).isTrue();
+        assertThat(search.getLevel()).isEqualTo(2L);
+        assertThat(search.getBest()).isNull();
+    }
+
+    @Test
+    public void testInvalidRange() {
+        try {
+            new SaturationSearch(1, 0, 10);
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage()).contains("not valid");
+            return;
+        }
+        throw new RuntimeException("An invalid search range should not be allowed.");
+    }
+}